@@ -0,0 +1,150 @@
+import common.TaskExecutor;
+import factorization.FactorizationDB;
+import factorization.FactorizationQueue;
+import factorization.Factorizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import primes.GoodPrimes;
+import primes.Primes;
+import scan.ScanBatcher;
+import scan.ScanSieve;
+import scan.Scanner;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Solves several equations base^n = target (mod n) in one process, so startup work isn't repeated for every equation:
+// primes are generated once up to the biggest bound needed by jobs, factorization DB file is read once, executor, factorizer
+// (with its precalculated tables), factorization queue and cost model are shared. Jobs are run in order of descending ceil,
+// so the first job needs the biggest bounds and all next ones reuse the same precalculation with already warmed up code.
+// Launch is created for every job by launchSupplier because it collects solutions, factorizer is taken from the first one
+public class BatchRunner {
+    private static final Logger log = LoggerFactory.getLogger(BatchRunner.class);
+
+    private final Supplier<Launch> launchSupplier;
+    private final int threadsNumber;
+    private final int primeTestCertainty;
+    private final Boolean qrSievePrecalculated;
+    private final int maxLengthPerTask;
+    private final int minParallelLength;
+    private final int scanBatchSize;
+    private final long maxBatchedScanLength;
+    private final int factorizationThreadsNumber;
+    private final long factorizationTimeBudget;
+    private final boolean useCostModel;
+    private final boolean loadFactorizationDB;
+    private final String journalDir;
+    private final long journalThreshold;
+    private final long scanLogThreshold;
+    private final boolean logSolutions;
+
+    public BatchRunner(Supplier<Launch> launchSupplier, int threadsNumber, int primeTestCertainty, Boolean qrSievePrecalculated,
+                       int maxLengthPerTask, int minParallelLength, int scanBatchSize, long maxBatchedScanLength,
+                       int factorizationThreadsNumber, long factorizationTimeBudget, boolean useCostModel, boolean loadFactorizationDB,
+                       String journalDir, long journalThreshold, long scanLogThreshold, boolean logSolutions)
+    {
+        this.launchSupplier = launchSupplier;
+        this.threadsNumber = threadsNumber;
+        this.primeTestCertainty = primeTestCertainty;
+        this.qrSievePrecalculated = qrSievePrecalculated;
+        this.maxLengthPerTask = maxLengthPerTask;
+        this.minParallelLength = minParallelLength;
+        this.scanBatchSize = scanBatchSize;
+        this.maxBatchedScanLength = maxBatchedScanLength;
+        this.factorizationThreadsNumber = factorizationThreadsNumber;
+        this.factorizationTimeBudget = factorizationTimeBudget;
+        this.useCostModel = useCostModel;
+        this.loadFactorizationDB = loadFactorizationDB;
+        this.journalDir = journalDir;
+        this.journalThreshold = journalThreshold;
+        this.scanLogThreshold = scanLogThreshold;
+        this.logSolutions = logSolutions;
+    }
+
+    // returns solutions of every equation, in order of jobs
+    public Map<Equation, List<BigInteger>> run(List<Equation> equations) {
+        long startTime = System.currentTimeMillis();
+        List<Equation> jobs = new ArrayList<>(equations);
+        jobs.sort(Comparator.comparing((Equation e) -> e.ceil).reversed().thenComparingLong(e -> e.base).thenComparingLong(e -> e.target));
+        Map<Equation, List<BigInteger>> result = new LinkedHashMap<>();
+        if (jobs.isEmpty()) {
+            return result;
+        }
+
+        Launch firstLaunch = launchSupplier.get();
+        long primesBound = firstLaunch.getPrimesBound();
+        for (Equation job : jobs) {
+            primesBound = Math.max(primesBound, firstLaunch.getGoodPrimesBound(job.ceil));
+        }
+        log.info("Start generating primes up to {} for {} equations...", primesBound, jobs.size());
+        Primes primes = new Primes(primesBound);
+        String[] dbLines = loadFactorizationDB ? FactorizationDB.readLines() : null;
+
+        TaskExecutor executor = TaskExecutor.create(threadsNumber);
+        Factorizer factorizer = firstLaunch.getFactorizer(primes);
+        FactorizationQueue factorizationQueue = ((factorizer != null) && (factorizationThreadsNumber > 0))
+                ? new FactorizationQueue(factorizer, factorizationThreadsNumber, factorizationTimeBudget) : null;
+        CostModel costModel = useCostModel ? new CostModel() : null;
+        log.info("Shared initialization finished in {}ms", System.currentTimeMillis() - startTime);
+
+        try {
+            for (Equation job : jobs) {
+                long jobStartTime = System.currentTimeMillis();
+                Launch launch = (result.isEmpty()) ? firstLaunch : launchSupplier.get();
+                BigInteger base = BigInteger.valueOf(job.base);
+                BigInteger target = BigInteger.valueOf(job.target);
+                FactorizationDB factorizationDB = (dbLines != null) ? FactorizationDB.initialize(base, target, primeTestCertainty, dbLines) : null;
+                GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(job.ceil), job.base, job.target, primes, executor);
+                ScanSieve scanSieve = new ScanSieve(base, target, primes, qrSievePrecalculated);
+                Scanner scanner = new Scanner(base, job.target, scanSieve, executor, maxLengthPerTask, minParallelLength);
+                ScanBatcher scanBatcher = (scanBatchSize > 0) ? new ScanBatcher(scanner, executor, scanBatchSize, maxBatchedScanLength) : null;
+                Journal journal = (journalDir != null)
+                        ? Journal.open(Path.of(journalDir, "journal_" + job.base + "_" + job.target + ".txt"), job.base, job.target, job.floor, job.ceil, journalThreshold) : null;
+
+                log.info("Start solving {}", job);
+                Solver solver = new Solver(job.base, job.target, job.floor, job.ceil, launch, executor, goodPrimes, factorizer, scanner,
+                        new Solver.Options().factorizationDB(factorizationDB).factorizationQueue(factorizationQueue).costModel(costModel)
+                        .scanBatcher(scanBatcher).journal(journal).scanLogThreshold(scanLogThreshold).logSolutions(logSolutions));
+                solver.solve();
+                if (journal != null) {
+                    journal.close();
+                }
+                launch.summarize(solver, primes, executor);
+                result.put(job, launch.getSolutions());
+                log.info("Solved {} in {}ms: {} solutions", job, System.currentTimeMillis() - jobStartTime, launch.getSolutions().size());
+            }
+        } finally {
+            if (factorizationQueue != null) {
+                factorizationQueue.shutdown();
+            }
+            executor.shutdown();
+        }
+        log.info("Batch of {} equations is finished in {}ms", jobs.size(), System.currentTimeMillis() - startTime);
+        return result;
+    }
+
+    public static class Equation {
+        private final long base;
+        private final long target;
+        private final BigInteger floor;
+        private final BigInteger ceil;
+
+        public Equation(long base, long target, BigInteger floor, BigInteger ceil) {
+            this.base = base;
+            this.target = target;
+            this.floor = floor;
+            this.ceil = ceil;
+        }
+
+        @Override
+        public String toString() {
+            return base + "^n = " + target + " (mod n) for n in (" + floor + "; " + ceil + "]";
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Splits one solve between worker processes through directory on shared file system:
+//   units/<id>     - unit of work: "subtree <key>" or "node <key> <from> <length>" (own work of node with scan of x in [from; from+length))
+//   leases/<id>    - unit is taken by worker whose id and lease generation are written in the file, worker touches the file
+//                    while it's alive
+//   journals/<id>.<generation> - journal of unit written by owner of lease generation, next owner starts from its copy
+//   done/<id>      - unit is finished by worker and lease generation written in the file
+// Units are units of Plan, node units with long pure scans are split into ranges. Leases which aren't touched for leaseTimeout
+// are deleted, so the units are taken by other workers. Solutions and factorizations of all units are merged into one journal
+public class Coordinator {
+    private static final Logger log = LoggerFactory.getLogger(Coordinator.class);
+
+    private final Path dir;
+    private final long leaseTimeoutMillis;
+
+    public Coordinator(Path dir, long leaseTimeoutMillis) {
+        this.dir = dir;
+        this.leaseTimeoutMillis = leaseTimeoutMillis;
+    }
+
+    // does nothing if units are already created by previous run of coordinator
+    public void createUnits(Plan plan, long rangeLength) {
+        assert rangeLength > 0;
+        Path units = dir.resolve("units");
+        if (Files.exists(units)) {
+            log.info("Units already exist in {}", units);
+            return;
+        }
+        List<String> lines = new ArrayList<>();
+        for (Plan.Unit unit : plan.getUnits()) {
+            if (unit.isSubtree()) {
+                lines.add("subtree " + unit.getKey());
+            } else if (!unit.getKey().equals("1") && (unit.getFactorizations() == 0) && (unit.getLength() > rangeLength)) {
+                // node's own work is scan only, so its parts can be done independently
+                for (long from = unit.getFrom(); from < unit.getFrom() + unit.getLength(); from += rangeLength) {
+                    lines.add("node " + unit.getKey() + " " + from + " " + Math.min(rangeLength, unit.getFrom() + unit.getLength() - from));
+                }
+            } else {
+                lines.add("node " + unit.getKey() + " " + unit.getFrom() + " " + unit.getLength());
+            }
+        }
+        try {
+            Path tmp = dir.resolve("units.tmp");
+            Files.createDirectories(tmp);
+            for (int i = 0; i < lines.size(); i++) {
+                Files.writeString(tmp.resolve(String.valueOf(i)), lines.get(i));
+            }
+            for (String sub : new String[] {"leases", "journals", "done"}) {
+                Files.createDirectories(dir.resolve(sub));
+            }
+            // workers start only when all units are written
+            Files.move(tmp, units, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot create units in " + dir, e);
+        }
+        log.info("Created {} units in {}", lines.size(), units);
+    }
+
+    // waits until all units are done, reassigning units of dead workers
+    public void await(long pollMillis) {
+        long lastLog = 0;
+        while (true) {
+            int total = count("units");
+            int done = count("done");
+            if (done >= total) {
+                return;
+            }
+            reclaimDeadLeases();
+            if (System.currentTimeMillis() - lastLog > 60000) {
+                log.info("Coordinator: {} of {} units are done, {} leased", done, total, count("leases"));
+                lastLog = System.currentTimeMillis();
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    public void reclaimDeadLeases() {
+        long now = System.currentTimeMillis();
+        for (Path lease : list("leases")) {
+            String id = lease.getFileName().toString();
+            try {
+                FileTime time = Files.getLastModifiedTime(lease);
+                if (!Files.exists(dir.resolve("done").resolve(id)) && (now - time.toMillis() > leaseTimeoutMillis)) {
+                    log.info("Lease of unit {} is expired, owner: {}", id, Files.readString(lease, StandardCharsets.UTF_8));
+                    Files.deleteIfExists(lease);
+                }
+            } catch (NoSuchFileException e) {
+                // lease is released meanwhile
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    // merges solutions and factorizations of all units into journal, returns merged solutions.
+    // journalFactory must open journals of the same run as workers do, otherwise journals of units are refused
+    public List<BigInteger> merge(Path output, Function<Path, Journal> journalFactory) {
+        Journal merged = journalFactory.apply(output);
+        for (Path path : list("journals")) {
+            Journal journal = journalFactory.apply(path);
+            journal.getSolutions().forEach(merged::addSolution);
+            journal.getFactorizations().forEach(merged::addFactorization);
+            journal.close();
+        }
+        merged.close();
+        log.info("Merged journals of {} units into {}: {} solutions", count("journals"), output, merged.getSolutions().size());
+        return List.copyOf(merged.getSolutions());
+    }
+
+    private int count(String sub) {
+        return list(sub).size();
+    }
+
+    private List<Path> list(String sub) {
+        Path path = dir.resolve(sub);
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(p -> !p.getFileName().toString().endsWith(".tmp")).toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
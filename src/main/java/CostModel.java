@@ -0,0 +1,112 @@
+import common.Common;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Chooses node's own work: factorization of base^C-target or scan of node.
+// Scan cost is length * survivor density * check time per candidate, factorization cost is average time observed
+// for numbers of the same size plus scan which is still needed when factorization isn't complete.
+// All values are calibrated by timings observed during the run; while there are no observations, factorization is preferred,
+// so calibration starts the same way as without cost model. Launch.tryFactorize() still limits factorization size.
+public class CostModel {
+    private static final Logger log = LoggerFactory.getLogger(CostModel.class);
+
+    private static final int bucketBits = 16;
+    private static final int minSamples = 3;
+    // weight of new observation in moving averages of scan stats
+    private static final double scanDecay = 0.01;
+
+    private double survivorDensity = Double.NaN;
+    private double nanosPerCandidate = Double.NaN;
+    private final TreeMap<Integer, FactorizationStats> factorizationStats = new TreeMap<>();
+
+    private long factorizationsChosen = 0;
+    private long scansChosen = 0;
+
+    public void registerScan(long length, long candidates) {
+        survivorDensity = average(survivorDensity, candidates / (double) length);
+    }
+
+    public void registerScan(long length, long candidates, long nanos) {
+        registerScan(length, candidates);
+        if (candidates > 0) {
+            nanosPerCandidate = average(nanosPerCandidate, nanos / (double) candidates);
+        }
+    }
+
+    public void registerFactorization(int bitLength, long nanos, boolean complete) {
+        FactorizationStats stats = factorizationStats.computeIfAbsent(bitLength / bucketBits, b -> new FactorizationStats());
+        stats.count++;
+        stats.nanos += nanos;
+        if (complete) {
+            stats.complete++;
+        }
+    }
+
+    public double scanCost(long length) {
+        return length * survivorDensity * nanosPerCandidate;
+    }
+
+    // average time of factorization for numbers of the same size; while there are not enough observations,
+    // the biggest average among smaller sizes is taken as optimistic estimation
+    public double factorizationCost(int bitLength) {
+        int bucket = bitLength / bucketBits;
+        FactorizationStats stats = factorizationStats.get(bucket);
+        if ((stats != null) && (stats.count >= minSamples)) {
+            return stats.nanos / (double) stats.count;
+        }
+        double result = 0;
+        for (FactorizationStats s : factorizationStats.headMap(bucket, false).values()) {
+            if (s.count >= minSamples) {
+                result = Math.max(result, s.nanos / (double) s.count);
+            }
+        }
+        return result;
+    }
+
+    // factorization cost expressed in candidate checks of scan, it's 0 while there are no observations
+    public double factorizationCostInCandidates(int bitLength) {
+        double result = factorizationCost(bitLength) / nanosPerCandidate;
+        return Double.isNaN(result) ? 0 : result;
+    }
+
+    public double completeFactorizationRate(int bitLength) {
+        FactorizationStats stats = factorizationStats.get(bitLength / bucketBits);
+        return ((stats != null) && (stats.count >= minSamples)) ? stats.complete / (double) stats.count : 1.0;
+    }
+
+    // factorization is chosen if factorizationCost + (1 - completeRate) * scanCost < scanCost
+    public boolean preferFactorization(int bitLength, long scanLength) {
+        double scanCost = scanCost(scanLength);
+        boolean result = Double.isNaN(scanCost) || (factorizationCost(bitLength) < completeFactorizationRate(bitLength) * scanCost);
+        if (result) {
+            factorizationsChosen++;
+        } else {
+            scansChosen++;
+        }
+        return result;
+    }
+
+    public void logStats() {
+        StringBuilder buf = new StringBuilder();
+        for (Map.Entry<Integer, FactorizationStats> e : factorizationStats.entrySet()) {
+            FactorizationStats s = e.getValue();
+            buf.append(String.format(Common.LOCALE, "%n    %d-%d bits: %d factorizations (%d complete), %.3fms on average",
+                    e.getKey() * bucketBits, (e.getKey() + 1) * bucketBits - 1, s.count, s.complete, s.nanos / (s.count * 1e6)));
+        }
+        log.info("Cost model stats --- chosen {} factorizations and {} scans, survivor density {}, {}ns per candidate{}", factorizationsChosen,
+                scansChosen, String.format(Common.LOCALE, "%.5f", survivorDensity), String.format(Common.LOCALE, "%.1f", nanosPerCandidate), buf);
+    }
+
+    private static double average(double avg, double value) {
+        return Double.isNaN(avg) ? value : avg + scanDecay * (value - avg);
+    }
+
+    private static class FactorizationStats {
+        private long count;
+        private long complete;
+        private long nanos;
+    }
+}
@@ -0,0 +1,90 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Report of anytime mode. Every range is node C*(Ax+B) (with B replaced with A if B = 0) for x in [from; from+length),
+// it's either own work of node only or node together with its whole subtree.
+// Covered ranges, skipped ranges (own work of node is skipped when it's cut at deadline) and subtrees which were finished
+// by previous runs (according to journal) cover whole search tree
+public class Coverage {
+    private static final Logger log = LoggerFactory.getLogger(Coverage.class);
+
+    private final List<Range> covered = new ArrayList<>();
+    private final List<Range> skipped = new ArrayList<>();
+    private BigInteger coveredNumbers = BigInteger.ZERO;
+    private BigInteger skippedNumbers = BigInteger.ZERO;
+
+    public void add(Range range, boolean subtree, boolean isCovered) {
+        range.subtree = subtree;
+        if (isCovered) {
+            covered.add(range);
+            coveredNumbers = coveredNumbers.add(BigInteger.valueOf(range.length));
+        } else {
+            skipped.add(range);
+            skippedNumbers = skippedNumbers.add(BigInteger.valueOf(range.length));
+        }
+    }
+
+    public List<Range> getCovered() {
+        return covered;
+    }
+
+    public List<Range> getSkipped() {
+        return skipped;
+    }
+
+    public void log() {
+        log.info("Anytime coverage: {} ranges covered ({} numbers in their own nodes), {} ranges skipped ({} numbers in their own nodes)",
+                covered.size(), coveredNumbers, skipped.size(), skippedNumbers);
+        skipped.forEach(r -> log.info("Skipped {}", r));
+    }
+
+    public void write(Path path) {
+        List<String> lines = new ArrayList<>();
+        covered.forEach(r -> lines.add("covered " + r));
+        skipped.forEach(r -> lines.add("skipped " + r));
+        try {
+            Files.write(path, lines);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write coverage report to " + path, e);
+        }
+    }
+
+    public static class Range {
+        private final String key;
+        private final BigInteger C;
+        private final BigInteger A;
+        private final BigInteger B;
+        private final long from;
+        private final long length;
+        private boolean subtree;
+
+        public Range(String key, BigInteger C, BigInteger A, BigInteger B, long from, long length) {
+            this.key = key;
+            this.C = C;
+            this.A = A;
+            this.B = B;
+            this.from = from;
+            this.length = length;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isSubtree() {
+            return subtree;
+        }
+
+        @Override
+        public String toString() {
+            return (subtree ? "subtree " : "node ") + key + ": " + C + " * (" + A + "x + " + B + ") for x in [" + from + "; " + (from+length-1) + "]";
+        }
+    }
+}
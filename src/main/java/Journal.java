@@ -0,0 +1,319 @@
+import com.carrotsearch.hppc.LongHashSet;
+import com.carrotsearch.hppc.LongSet;
+import factorization.Factorization;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+// Append-only log of Solver progress. Every line is one record followed by " #<crc32 of record>":
+//   H base=<b> target=<t> floor=<L> ceil=<U> threshold=<T>  - run which journal belongs to, it's always the first record
+//   S <n>                          - solution n is found
+//   F <C> <f1> * <f2> ... [| <c1> <c2> ...]  - factorization of base^C-target (with composite factors after '|')
+//   N <p1>*<p2>*...               - own factorization/scan of node p1*p2*... is finished
+//   D <p1>*<p2>*...               - whole subtree of node p1*p2*... is finished
+// Only nodes with ceil/C >= threshold are journaled, so journal stays small while skipped work on restart is bounded.
+// Lines without line feed or with wrong checksum (if process was killed in the middle of writing) are ignored on load.
+// Journal of another run (e.g. with other ceil) is refused, because its finished subtrees would be skipped incorrectly.
+// Records are flushed to OS at once, but forced to disk only before D records and on rewrite: after crash of the machine
+// the latest records may be lost, but a finished subtree never survives without solutions found in it.
+public class Journal implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(Journal.class);
+
+    private final Path path;
+    private final long threshold;
+    private final Set<String> completed;
+    // the last primes of completed nodes by their parents, so children are checked without building their keys
+    private final Map<String, LongSet> completedChildren = new HashMap<>();
+    private final Set<String> nodesDone;
+    private final NavigableSet<BigInteger> solutions;
+    private final Map<Integer, Factorization> factorizations;
+    private final FileChannel channel;
+    private final BufferedWriter writer;
+
+    private Journal(Path path, long threshold, Set<String> completed, Set<String> nodesDone,
+                    NavigableSet<BigInteger> solutions, Map<Integer, Factorization> factorizations) throws IOException
+    {
+        this.path = path;
+        this.threshold = threshold;
+        this.completed = completed;
+        completed.forEach(this::addCompletedChild);
+        this.nodesDone = nodesDone;
+        this.solutions = solutions;
+        this.factorizations = factorizations;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    public static Journal open(Path path, long base, long target, BigInteger floor, BigInteger ceil, long threshold) {
+        String header = "H base=" + base + " target=" + target + " floor=" + floor + " ceil=" + ceil + " threshold=" + threshold;
+        Set<String> completed = new HashSet<>();
+        Set<String> nodesDone = new HashSet<>();
+        NavigableSet<BigInteger> solutions = new TreeSet<>();
+        Map<Integer, Factorization> factorizations = new HashMap<>();
+        try {
+            if (Files.exists(path)) {
+                String content = Files.readString(path, StandardCharsets.UTF_8);
+                String[] lines = content.split("\n", -1);
+                // the last part isn't terminated by line feed, so it's either empty or broken
+                int broken = lines[lines.length-1].isEmpty() ? 0 : 1;
+                String fileHeader = null;
+                int records = 0;
+                for (int i = 0; i < lines.length - 1; i++) {
+                    String record = checkRecord(lines[i]);
+                    if (record == null) {
+                        broken++;
+                    } else if (record.charAt(0) == 'H') {
+                        fileHeader = record;
+                    } else {
+                        try {
+                            parseLine(record, completed, nodesDone, solutions, factorizations);
+                            records++;
+                        } catch (RuntimeException e) {
+                            broken++;
+                        }
+                    }
+                }
+                if ((fileHeader == null) && (records > 0)) {
+                    throw new IllegalStateException("Journal " + path + " has no header, cannot check that it belongs to run: " + header);
+                }
+                if ((fileHeader != null) && !fileHeader.equals(header)) {
+                    throw new IllegalStateException("Journal " + path + " belongs to another run: " + fileHeader + " instead of " + header);
+                }
+                compact(completed, nodesDone);
+                rewrite(path, header, completed, nodesDone, solutions, factorizations);
+                log.info("Journal {} is loaded: {} finished subtrees, {} finished nodes, {} solutions, {} factorizations, {} broken lines",
+                        path, completed.size(), nodesDone.size(), solutions.size(), factorizations.size(), broken);
+            } else {
+                rewrite(path, header, completed, nodesDone, solutions, factorizations);
+            }
+            return new Journal(path, threshold, completed, nodesDone, solutions, factorizations);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot open journal " + path, e);
+        }
+    }
+
+    public long getThreshold() {
+        return threshold;
+    }
+
+    public boolean isCompleted(String node) {
+        return completed.contains(node);
+    }
+
+    // whether child parent*p is completed
+    public boolean isCompleted(String parent, long p) {
+        LongSet children = completedChildren.get(parent);
+        return (children != null) && children.contains(p);
+    }
+
+    public boolean isNodeDone(String node) {
+        return nodesDone.contains(node);
+    }
+
+    public NavigableSet<BigInteger> getSolutions() {
+        return solutions;
+    }
+
+    public Factorization getFactorization(int exp) {
+        return factorizations.get(exp);
+    }
+
+    public Map<Integer, Factorization> getFactorizations() {
+        return factorizations;
+    }
+
+    public void addSolution(BigInteger n) {
+        if (solutions.add(n)) {
+            append("S " + n);
+        }
+    }
+
+    public void addFactorization(int exp, Factorization factorization) {
+        factorizations.put(exp, factorization);
+        append("F " + exp + " " + formatFactorization(factorization));
+    }
+
+    public void nodeDone(String node) {
+        if (nodesDone.add(node)) {
+            append("N " + node);
+        }
+    }
+
+    public void subtreeDone(String node) {
+        if (completed.add(node)) {
+            addCompletedChild(node);
+            force();
+            append("D " + node);
+        }
+    }
+
+    private void addCompletedChild(String node) {
+        if (!node.equals("1")) {
+            int p = node.lastIndexOf('*');
+            String parent = (p >= 0) ? node.substring(0, p) : "1";
+            completedChildren.computeIfAbsent(parent, k -> new LongHashSet()).add(Long.parseLong(node.substring(p+1)));
+        }
+    }
+
+    private void append(String record) {
+        try {
+            writer.write(line(record));
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write to journal " + path, e);
+        }
+    }
+
+    private void force() {
+        try {
+            writer.flush();
+            channel.force(false);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write to journal " + path, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String line(String record) {
+        return record + " #" + checksum(record) + "\n";
+    }
+
+    private static String checksum(String record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.getBytes(StandardCharsets.UTF_8));
+        return String.format("%08x", crc.getValue());
+    }
+
+    // returns record without checksum or null if checksum is wrong
+    private static String checkRecord(String line) {
+        int p = line.lastIndexOf(" #");
+        if ((p <= 0) || !line.substring(p+2).equals(checksum(line.substring(0, p)))) {
+            return null;
+        }
+        return line.substring(0, p);
+    }
+
+    private static void parseLine(String line, Set<String> completed, Set<String> nodesDone,
+                                  Set<BigInteger> solutions, Map<Integer, Factorization> factorizations)
+    {
+        String value = line.substring(2).strip();
+        switch (line.charAt(0)) {
+            case 'S' -> solutions.add(new BigInteger(value));
+            case 'N' -> nodesDone.add(checkNode(value));
+            case 'D' -> completed.add(checkNode(value));
+            case 'F' -> {
+                int p = value.indexOf(' ');
+                factorizations.put(Integer.parseInt(value.substring(0, p)), parseFactorization(value.substring(p+1)));
+            }
+            default -> throw new IllegalArgumentException("Unknown record: " + line);
+        }
+    }
+
+    private static String checkNode(String node) {
+        for (String p : node.split("\\*")) {
+            if (new BigInteger(p).signum() <= 0) {
+                throw new IllegalArgumentException("Wrong node: " + node);
+            }
+        }
+        return node;
+    }
+
+    private static String formatFactorization(Factorization factorization) {
+        StringBuilder buf = new StringBuilder(factorization.toString());
+        if (factorization.compositeCount() > 0) {
+            buf.append(" |");
+            for (BigInteger c : factorization.composites()) {
+                buf.append(' ').append(c);
+            }
+        }
+        return buf.toString();
+    }
+
+    private static Factorization parseFactorization(String s) {
+        int p = s.indexOf('|');
+        List<BigInteger> factors = new ArrayList<>();
+        for (String f : ((p >= 0) ? s.substring(0, p) : s).split("\\*")) {
+            factors.add(new BigInteger(f.strip()));
+        }
+        List<BigInteger> composites = new ArrayList<>();
+        if (p >= 0) {
+            for (String c : s.substring(p+1).strip().split(" ")) {
+                composites.add(new BigInteger(c));
+            }
+        }
+        return Factorization.fromFactors(factors, composites);
+    }
+
+    // removes records that are covered by finished ancestors
+    private static void compact(Set<String> completed, Set<String> nodesDone) {
+        completed.removeIf(node -> hasCompletedAncestor(node, completed));
+        nodesDone.removeIf(node -> completed.contains(node) || hasCompletedAncestor(node, completed));
+    }
+
+    private static boolean hasCompletedAncestor(String node, Set<String> completed) {
+        if (completed.contains("1") && !node.equals("1")) {
+            return true;
+        }
+        int p = node.indexOf('*');
+        while (p >= 0) {
+            if (completed.contains(node.substring(0, p))) {
+                return true;
+            }
+            p = node.indexOf('*', p+1);
+        }
+        return false;
+    }
+
+    private static void rewrite(Path path, String header, Set<String> completed, Set<String> nodesDone,
+                                Set<BigInteger> solutions, Map<Integer, Factorization> factorizations) throws IOException
+    {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            writer.write(line(header));
+            for (BigInteger n : solutions) {
+                writer.write(line("S " + n));
+            }
+            for (Map.Entry<Integer, Factorization> entry : factorizations.entrySet()) {
+                writer.write(line("F " + entry.getKey() + " " + formatFactorization(entry.getValue())));
+            }
+            for (String node : nodesDone) {
+                writer.write(line("N " + node));
+            }
+            for (String node : completed) {
+                writer.write(line("D " + node));
+            }
+        }
+        try (FileChannel tmpChannel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            tmpChannel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
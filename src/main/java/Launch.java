@@ -1,19 +1,27 @@
 import common.Common;
 import common.TaskExecutor;
+import factorization.EcmFactorizer;
 import factorization.FactorizationDB;
 import factorization.Factorizer;
 import factorization.GmpEcmFactorizer;
 import factorization.PollardFactorizer;
 import factorization.PollardPm1;
+import factorization.PollardRho;
+import factorization.RacingFactorizer;
+import factorization.SiqsFactorizer;
+import factorization.StagedFactorizer;
+import factorization.WilliamsPp1;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import primes.Primes;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Random;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.TreeSet;
@@ -29,7 +37,7 @@ public abstract class Launch {
         return new Launch() {
             @Override
             public long getPrimesBound() {
-                return Common.max(pm1FirstBound, pm1SecondBound, super.getPrimesBound());
+                return Common.max(PollardPm1.primesBound(pm1FirstBound, pm1SecondBound), super.getPrimesBound());
             }
             @Override
             public boolean tryFactorize(int bitLength) {
@@ -61,20 +69,102 @@ public abstract class Launch {
                 (primes, executor) -> new GmpEcmFactorizer(B1, C, executor, primeTestCertainty));
     }
 
+    public static Launch factorizationsGeneratorEcm(int maxBitLength, long B1, long B2, int curves, int primeTestCertainty, int threadsNumber) {
+        return factorizationsGenerator(maxBitLength, B2, primeTestCertainty, threadsNumber,
+                (primes, executor) -> new EcmFactorizer(primes, B1, B2, curves, executor, primeTestCertainty));
+    }
+
     public static Launch factorizationsGeneratorPollard(int maxBitLength, Long pm1FirstBound, Long pm1SecondBound,
                                                         long rhoIterations, int primeTestCertainty, int threadsNumber)
     {
-        return factorizationsGenerator(maxBitLength, Common.max(pm1SecondBound, pm1SecondBound), primeTestCertainty, threadsNumber,
-                (primes, executor) -> {
+        return factorizationsGeneratorPollard(maxBitLength, pm1FirstBound, pm1SecondBound, null, rhoIterations, primeTestCertainty, threadsNumber);
+    }
+
+    // with pm1StreamingChunkBits first stage of P-1 isn't precalculated, so big pm1FirstBound doesn't need memory and primes up to it
+    public static Launch factorizationsGeneratorPollard(int maxBitLength, Long pm1FirstBound, Long pm1SecondBound, Integer pm1StreamingChunkBits,
+                                                        long rhoIterations, int primeTestCertainty, int threadsNumber)
+    {
+        return factorizationsGeneratorPollard(maxBitLength, pm1FirstBound, pm1SecondBound, pm1StreamingChunkBits, 0, rhoIterations,
+                primeTestCertainty, threadsNumber);
+    }
+
+    // P+1 with pp1Tries seeds uses the same bounds as P-1 and is run after it
+    public static Launch factorizationsGeneratorPollard(int maxBitLength, Long pm1FirstBound, Long pm1SecondBound, Integer pm1StreamingChunkBits,
+                                                        int pp1Tries, long rhoIterations, int primeTestCertainty, int threadsNumber)
+    {
+        return factorizationsGenerator(maxBitLength, PollardPm1.primesBound(pm1FirstBound, pm1SecondBound, pm1StreamingChunkBits != null),
+                primeTestCertainty, threadsNumber, (primes, executor) -> {
+                    PollardPm1 pollardPm1 = (pm1FirstBound != null) ? new PollardPm1(primes, pm1FirstBound, pm1SecondBound, pm1StreamingChunkBits) : null;
+                    WilliamsPp1 williamsPp1 = ((pollardPm1 != null) && (pp1Tries > 0)) ? new WilliamsPp1(pollardPm1) : null;
+                    return new PollardFactorizer(pollardPm1, 2, williamsPp1, pp1Tries, rhoIterations, primeTestCertainty);
+                });
+    }
+
+    // composites which are left after P-1 and rho and have bit length in [siqsMinBitLength; siqsMaxBitLength] are factorized by SIQS
+    public static Launch factorizationsGeneratorPollardSiqs(int maxBitLength, Long pm1FirstBound, Long pm1SecondBound, long rhoIterations,
+                                                            int siqsMinBitLength, int siqsMaxBitLength, int primeTestCertainty, int threadsNumber)
+    {
+        return factorizationsGenerator(maxBitLength, Common.max(PollardPm1.primesBound(pm1FirstBound, pm1SecondBound), SiqsFactorizer.primesBound(siqsMaxBitLength)),
+                primeTestCertainty, threadsNumber, (primes, executor) -> {
                     PollardPm1 pollardPm1 = (pm1FirstBound != null) ? new PollardPm1(primes, pm1FirstBound, pm1SecondBound) : null;
-                    return new PollardFactorizer(pollardPm1, 2, rhoIterations, primeTestCertainty);
+                    PollardFactorizer pollard = new PollardFactorizer(pollardPm1, 2, rhoIterations, primeTestCertainty);
+                    SiqsFactorizer siqs = new SiqsFactorizer(primes, executor, primeTestCertainty);
+                    return new StagedFactorizer(pollard, siqs, siqsMinBitLength, siqsMaxBitLength, primeTestCertainty);
                 });
     }
 
+    // P-1 with pm1Bases different bases, rho with rhoPolynomials different polynomials and ECM curves split in chunks per thread
+    // are raced against each other for every number
+    public static Launch factorizationsGeneratorRacing(int maxBitLength, Long pm1FirstBound, Long pm1SecondBound, int pm1Bases,
+                                                       long rhoIterations, int rhoPolynomials, long ecmB1, long ecmB2, int ecmCurves,
+                                                       int primeTestCertainty, int threadsNumber)
+    {
+        return factorizationsGenerator(maxBitLength, Common.max(PollardPm1.primesBound(pm1FirstBound, pm1SecondBound), (ecmCurves > 0) ? ecmB2 : null),
+                primeTestCertainty, threadsNumber, (primes, executor) -> {
+                    List<RacingFactorizer.Attempt> attempts = new ArrayList<>();
+                    if (pm1FirstBound != null) {
+                        PollardPm1 pollardPm1 = new PollardPm1(primes, pm1FirstBound, pm1SecondBound);
+                        for (int i = 0; i < pm1Bases; i++) {
+                            int base = i;
+                            attempts.add(new RacingFactorizer.Attempt("P-1 base " + primes.get(i), N -> pollardPm1.findDivisor(N, base, 1)));
+                        }
+                    }
+                    for (int i = 0; i < rhoPolynomials; i++) {
+                        long seed = i;
+                        attempts.add(new RacingFactorizer.Attempt("rho " + i, N -> PollardRho.findDivisor(N, rhoIterations, new Random(seed))));
+                    }
+                    if (ecmCurves > 0) {
+                        EcmFactorizer ecm = new EcmFactorizer(primes, ecmB1, ecmB2, ecmCurves, executor, primeTestCertainty);
+                        int chunk = (ecmCurves + threadsNumber - 1) / threadsNumber;
+                        for (int first = 0; first < ecmCurves; first += chunk) {
+                            int firstCurve = first;
+                            int curvesNumber = Math.min(chunk, ecmCurves - first);
+                            attempts.add(new RacingFactorizer.Attempt("ECM curves from " + first, N -> ecm.findDivisor(N, firstCurve, curvesNumber)));
+                        }
+                    }
+                    return new RacingFactorizer(executor, attempts, primeTestCertainty);
+                });
+    }
+
+    // composites which survive ECM and have at least snfsMinBitLength bits are factorized by SNFS
+    public static Launch factorizationsGeneratorEcmSnfs(int maxBitLength, long B1, long B2, int curves, int snfsMinBitLength,
+                                                        int primeTestCertainty, int threadsNumber)
+    {
+        return factorizationsGenerator(maxBitLength, B2, snfsMinBitLength, primeTestCertainty, threadsNumber,
+                (primes, executor) -> new EcmFactorizer(primes, B1, B2, curves, executor, primeTestCertainty));
+    }
+
     private static Launch factorizationsGenerator(int maxBitLength, Long primesBound,
                                                  int primeTestCertainty, int threadsNumber,
                                                  BiFunction<Primes, TaskExecutor, Factorizer> factorizerSupplier)
     {
+        return factorizationsGenerator(maxBitLength, primesBound, null, primeTestCertainty, threadsNumber, factorizerSupplier);
+    }
+
+    private static Launch factorizationsGenerator(int maxBitLength, Long primesBound, Integer snfsMinBitLength,
+                                                 int primeTestCertainty, int threadsNumber,
+                                                 BiFunction<Primes, TaskExecutor, Factorizer> factorizerSupplier)
+    {
 
         Map<BigInteger, BigInteger> numToExp = new HashMap<>();
         Map<BigInteger, Long> expToCand = new HashMap<>();
@@ -109,7 +199,11 @@ public abstract class Launch {
                 Factorizer factorizer = factorizerSupplier.apply(primes, executor);
                 SortedMap<BigInteger, Long> scanTime = numToExp.entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue,
                         e -> expToCand.getOrDefault(e.getValue(), 0L), (x, y) -> x, TreeMap::new));
-                FactorizationDB.logFactorizations(solver.getBase(), solver.getTarget(), scanTime, factorizer, threadsNumber);
+                FactorizationDB.logFactorizations(solver.getBase(), solver.getTarget(), scanTime, factorizer, snfsMinBitLength,
+                        threadsNumber, primeTestCertainty);
+                if (factorizer instanceof RacingFactorizer racingFactorizer) {
+                    racingFactorizer.logStats();
+                }
             }
         };
     }
@@ -131,8 +225,8 @@ public abstract class Launch {
             }
 
             @Override
-            public long scanLength(BigInteger scanLength) {
-                return scanLength.compareTo(maxScanLengthBI) <= 0 ? scanLength.longValueExact() : maxScanLength;
+            public long scanLength(BigInteger skip, BigInteger scanLength) {
+                return super.scanLength(skip, scanLength.min(maxScanLengthBI).max(skip));
             }
         };
     }
@@ -151,8 +245,9 @@ public abstract class Launch {
 
     public abstract boolean tryFactorize(int bitLength);
 
-    public long scanLength(BigInteger scanLength) {
-        return scanLength.longValueExact();
+    // returns how many numbers should be scanned after first skip numbers (which are below solution floor)
+    public long scanLength(BigInteger skip, BigInteger scanLength) {
+        return scanLength.subtract(skip).longValueExact();
     }
 
     public boolean checkCandidates() {
@@ -1,46 +1,99 @@
 import common.Common;
 import common.TaskExecutor;
 import factorization.FactorizationDB;
+import factorization.FactorizationQueue;
+import factorization.Factorizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import primes.GoodPrimes;
 import primes.Primes;
+import scan.ScanBatcher;
 import scan.ScanSieve;
 import scan.Scanner;
 
+import java.io.IOException;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.math.BigInteger;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class Main {
     private static final Logger log = LoggerFactory.getLogger(Main.class);
 
     static final long base = 2;
     static final long target = 6;
+    static final BigInteger solutionFloor = BigInteger.ZERO;
     static final BigInteger solutionCeil = Common.e(1, 13);
 
     static final int threadsNumber = 6;
     static final int primeTestCertainty = 50;
     static final Boolean qrSievePrecalculated = null;
 
-    //static final Launch launch = Launch.solverPrecalculated();
+    // launch collects solutions, so batch runner creates new one for every equation
+    //static final Supplier<Launch> launchSupplier = Launch::solverPrecalculated;
 
-    static final Launch launch = Launch.factorizationsGeneratorGmpEcm(7000, (long) 1e3, 30, primeTestCertainty);
-    //static final Launch launch = Launch.factorizationsGeneratorPollard(5000, (long) 1e3, (long) 1e4, (long) 1e3, primeTestCertainty, threadsNumber);
+    static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorGmpEcm(7000, (long) 1e3, 30, primeTestCertainty);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorEcm(5000, (long) 1e4, (long) 1e6, 200, primeTestCertainty, threadsNumber);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorRacing(5000, (long) 1e5, (long) 1e6, 2, (long) 1e7, 2, (long) 1e4, (long) 1e6, 200, primeTestCertainty, threadsNumber);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorPollard(5000, (long) 1e3, (long) 1e4, (long) 1e3, primeTestCertainty, threadsNumber);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorPollard(5000, (long) 1e8, (long) 1e9, 1<<20, (long) 1e3, primeTestCertainty, threadsNumber);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorPollard(5000, (long) 1e6, (long) 1e8, null, 2, (long) 1e3, primeTestCertainty, threadsNumber);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorPollardSiqs(5000, (long) 1e5, (long) 1e7, (long) 1e5, 130, 280, primeTestCertainty, threadsNumber);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.factorizationsGeneratorEcmSnfs(5000, (long) 1e4, (long) 1e6, 200, 300, primeTestCertainty, threadsNumber);
 
-    //static final Launch launch = Launch.fastScan(10000000, 1000);
+    //static final Supplier<Launch> launchSupplier = () -> Launch.fastScan(10000000, 1000);
 
     static final long scanLogThreshold = 5000000;
     static final boolean logSolutions = true;
     static final int maxLengthPerTask = 1<<22;
     static final int minParallelLength = 10;
+    // 0 factorizes synchronously in solver threads, positive value runs factorizations in own pool of that size with time budget
+    static final int factorizationThreadsNumber = 0;
+    static final long factorizationTimeBudget = 600000;
+    // true also compares measured costs of factorization and scan before factorizing node allowed by Launch.tryFactorize
+    static final boolean useCostModel = false;
+    // 0 scans every node by itself, positive value joins short scans of that many nodes into one task
+    static final int scanBatchSize = 0;
+    static final long maxBatchedScanLength = 1<<16;
     static final boolean loadFactorizationDB = true;
+    static final String journalPath = null;
+    static final long journalThreshold = 1000000;
+    static final Long anytimeBudget = null;
+    static final long anytimeUnitLength = 100000000;
+    static final String coveragePath = null;
+    static final Integer planShards = null;
+    static final long planUnitLength = 100000000;
+    static final String planPath = null;
+    static final String profilePath = null;
+    // pairs {base, target} which are solved in one process with solutionFloor and solutionCeil instead of base and target above
+    static final long[][] batchEquations = null;
+    static final String batchJournalDir = null;
+    // distributed run: "coordinator <dir>" plans units and waits for workers, "worker <dir>" solves units (see Coordinator)
+    static final int localWorkers = 2;
+    static final long coordinatorRangeLength = 1000000000;
+    static final long workerHeartbeat = 10000;
+    static final long workerLeaseTimeout = 120000;
     static final boolean printRunStats = true;
 
     public static void main(String[] args) {
+        if (batchEquations != null) {
+            List<BatchRunner.Equation> equations = new ArrayList<>();
+            for (long[] equation : batchEquations) {
+                equations.add(new BatchRunner.Equation(equation[0], equation[1], solutionFloor, solutionCeil));
+            }
+            new BatchRunner(launchSupplier, threadsNumber, primeTestCertainty, qrSievePrecalculated, maxLengthPerTask, minParallelLength,
+                    scanBatchSize, maxBatchedScanLength, factorizationThreadsNumber, factorizationTimeBudget, useCostModel,
+                    loadFactorizationDB, batchJournalDir, journalThreshold, scanLogThreshold, logSolutions).run(equations);
+            return;
+        }
+
+        Launch launch = launchSupplier.get();
         long initStartTime = System.currentTimeMillis();
         FactorizationDB factorizationDB = null;
         if (loadFactorizationDB) {
@@ -61,14 +114,80 @@ public class Main {
         GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(solutionCeil), base, target, primes, executor);
         ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(target), primes, qrSievePrecalculated);
         Scanner scanner = new Scanner(BigInteger.valueOf(base), target, scanSieve, executor, maxLengthPerTask, minParallelLength);
-
-        Solver solver = new Solver(base, target, solutionCeil, launch, goodPrimes,
-                factorizationDB, launch.getFactorizer(primes), scanner, scanLogThreshold, logSolutions);
+        ScanBatcher scanBatcher = (scanBatchSize > 0) ? new ScanBatcher(scanner, executor, scanBatchSize, maxBatchedScanLength) : null;
+
+        Function<Path, Journal> journalFactory = path -> Journal.open(path, base, target, solutionFloor, solutionCeil, journalThreshold);
+        Journal journal = (journalPath != null) ? journalFactory.apply(Path.of(journalPath)) : null;
+        Factorizer factorizer = launch.getFactorizer(primes);
+        FactorizationQueue factorizationQueue = ((factorizer != null) && (factorizationThreadsNumber > 0))
+                ? new FactorizationQueue(factorizer, factorizationThreadsNumber, factorizationTimeBudget) : null;
+        CostModel costModel = useCostModel ? new CostModel() : null;
+        Profiler profiler = (profilePath != null) ? new Profiler() : null;
+        Solver.Options options = new Solver.Options().factorizationDB(factorizationDB).factorizationQueue(factorizationQueue)
+                .costModel(costModel).scanBatcher(scanBatcher).scanLogThreshold(scanLogThreshold).logSolutions(logSolutions);
+        Solver solver = new Solver(base, target, solutionFloor, solutionCeil, launch, executor, goodPrimes, factorizer, scanner,
+                options.copy().journal(journal).profiler(profiler));
         log.info("Initialization finished in {}ms, start solving...", System.currentTimeMillis() - initStartTime);
 
+        if ((args.length >= 2) && args[0].equals("worker")) {
+            new Worker(Path.of(args[1]), ManagementFactory.getRuntimeMXBean().getName(), j -> new Solver(base, target, solutionFloor, solutionCeil,
+                    launch, executor, goodPrimes, factorizer, scanner, options.copy().journal(j)), journalFactory, workerHeartbeat).run();
+            if (factorizationQueue != null) {
+                factorizationQueue.shutdown();
+            }
+            executor.shutdown();
+            return;
+        }
+        if ((args.length >= 2) && args[0].equals("coordinator")) {
+            Coordinator coordinator = new Coordinator(Path.of(args[1]), workerLeaseTimeout);
+            coordinator.createUnits(solver.plan(1, planUnitLength), coordinatorRangeLength);
+            List<Process> workers = startLocalWorkers(args[1]);
+            coordinator.await(workerHeartbeat);
+            List<BigInteger> solutions = coordinator.merge(Path.of(args[1], "merged.txt"), journalFactory);
+            log.info("Found {} solutions: {}", solutions.size(), solutions);
+            for (Process worker : workers) {
+                try {
+                    worker.waitFor();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            if (factorizationQueue != null) {
+                factorizationQueue.shutdown();
+            }
+            executor.shutdown();
+            return;
+        }
+
+        if (planShards != null) {
+            long planStartTime = System.currentTimeMillis();
+            Plan plan = solver.plan(planShards, planUnitLength);
+            log.info("Planning finished in {}ms", System.currentTimeMillis() - planStartTime);
+            plan.log();
+            if (planPath != null) {
+                plan.write(Path.of(planPath));
+            }
+            if (factorizationQueue != null) {
+                factorizationQueue.shutdown();
+            }
+            executor.shutdown();
+            return;
+        }
+
         long solveStartTime = System.currentTimeMillis();
-        solver.solve();
+        if (anytimeBudget != null) {
+            Coverage coverage = solver.solveAnytime(anytimeBudget, anytimeUnitLength);
+            coverage.log();
+            if (coveragePath != null) {
+                coverage.write(Path.of(coveragePath));
+            }
+        } else {
+            solver.solve();
+        }
         log.info("Solving finished in {}ms, start summarizing...", System.currentTimeMillis() - solveStartTime);
+        if (journal != null) {
+            journal.close();
+        }
 
         long summarizeStartTime = System.currentTimeMillis();
         launch.summarize(solver, primes, executor);
@@ -77,12 +196,40 @@ public class Main {
 
         if (printRunStats) {
             scanner.logScanStats();
+            if (costModel != null) {
+                costModel.logStats();
+            }
             scanSieve.logPrimeSieveStats();
             printThreadsCpuStats();
         }
+        if (profiler != null) {
+            profiler.log();
+            // one collapsed-stack file per metric, e.g. <profilePath>.wall_nanos
+            for (Profiler.Metric metric : Profiler.Metric.values()) {
+                profiler.writeCollapsed(Path.of(profilePath + "." + metric.name().toLowerCase()), metric);
+            }
+        }
+        if (factorizationQueue != null) {
+            factorizationQueue.shutdown();
+        }
         executor.shutdown();
     }
 
+    // workers on the same host, workers on other hosts with shared file system are started separately
+    private static List<Process> startLocalWorkers(String dir) {
+        List<Process> workers = new ArrayList<>();
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        for (int i = 0; i < localWorkers; i++) {
+            try {
+                workers.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Main.class.getName(), "worker", dir)
+                        .inheritIO().start());
+            } catch (IOException e) {
+                throw new RuntimeException("Cannot start worker", e);
+            }
+        }
+        return workers;
+    }
+
     private static void printThreadsCpuStats() {
         ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
         List<Map.Entry<Thread, Long>> list = Thread.getAllStackTraces().keySet().stream()
@@ -0,0 +1,196 @@
+import common.Common;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Collectors;
+
+// Report of dry run. Every unit is either own work of node or node together with its whole subtree, keys are the same as in journal.
+// Cost of unit is estimated number of candidate checks in scans plus cost of factorizations expressed in candidate checks;
+// the latter is known only when cost model is calibrated, otherwise factorizations are counted by attempts only.
+// Units are distributed between shards by greedy algorithm: the most expensive unit goes to the cheapest shard.
+// In shard lines of written report node units are marked with '!' after key
+public class Plan {
+    private static final Logger log = LoggerFactory.getLogger(Plan.class);
+
+    private final List<Unit> units = new ArrayList<>();
+    private final List<Shard> shards = new ArrayList<>();
+
+    public Plan(int shardsNumber) {
+        assert shardsNumber > 0;
+        for (int i = 0; i < shardsNumber; i++) {
+            shards.add(new Shard(i));
+        }
+    }
+
+    public Unit addUnit(String key, boolean subtree) {
+        Unit unit = new Unit(key, subtree);
+        units.add(unit);
+        return unit;
+    }
+
+    public void partition() {
+        shards.forEach(Shard::clear);
+        PriorityQueue<Shard> queue = new PriorityQueue<>(Comparator.comparingDouble((Shard s) -> s.cost).thenComparingInt(s -> s.index));
+        queue.addAll(shards);
+        List<Unit> sorted = new ArrayList<>(units);
+        sorted.sort(Comparator.comparingDouble((Unit u) -> u.cost()).reversed());
+        for (Unit unit : sorted) {
+            Shard shard = queue.poll();
+            shard.add(unit);
+            queue.add(shard);
+        }
+    }
+
+    public List<Unit> getUnits() {
+        return units;
+    }
+
+    public List<Shard> getShards() {
+        return shards;
+    }
+
+    public double getCost() {
+        return units.stream().mapToDouble(Unit::cost).sum();
+    }
+
+    public void log() {
+        log.info("Plan: {} units, {} nodes, {} numbers, {} candidates, {} factorization attempts, cost {}", units.size(),
+                units.stream().mapToLong(u -> u.nodes).sum(), units.stream().map(u -> u.numbers).reduce(BigInteger.ZERO, BigInteger::add),
+                format(units.stream().mapToDouble(u -> u.candidates).sum()), units.stream().mapToLong(u -> u.factorizations).sum(), format(getCost()));
+        units.stream().sorted(Comparator.comparingDouble((Unit u) -> u.cost()).reversed()).limit(20).forEach(u -> log.info("{}", u));
+        shards.forEach(s -> log.info("{}", s));
+    }
+
+    public void write(Path path) {
+        List<String> lines = new ArrayList<>();
+        units.forEach(u -> lines.add(u.toString()));
+        shards.forEach(s -> lines.add(s + ": " + s.units.stream().map(u -> u.key + (u.subtree ? "" : "!")).collect(Collectors.joining(" "))));
+        try {
+            Files.write(path, lines);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write plan to " + path, e);
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Common.LOCALE, "%.0f", value);
+    }
+
+    public static class Unit {
+        private final String key;
+        private final boolean subtree;
+        private long nodes;
+        private BigInteger numbers = BigInteger.ZERO;
+        private double candidates;
+        private long factorizations;
+        private int maxFactorizationBitLength;
+        private double factorizationCost;
+        // range of own scan for node units
+        private long from;
+        private long length;
+
+        private Unit(String key, boolean subtree) {
+            this.key = key;
+            this.subtree = subtree;
+        }
+
+        public void addNode(long length, double candidates) {
+            this.nodes++;
+            this.numbers = numbers.add(BigInteger.valueOf(length));
+            this.candidates += candidates;
+        }
+
+        public void addFactorization(int bitLength, double cost) {
+            this.factorizations++;
+            this.maxFactorizationBitLength = Math.max(maxFactorizationBitLength, bitLength);
+            this.factorizationCost += cost;
+        }
+
+        public void setRange(long from, long length) {
+            this.from = from;
+            this.length = length;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getFrom() {
+            return from;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public boolean isSubtree() {
+            return subtree;
+        }
+
+        public long getNodes() {
+            return nodes;
+        }
+
+        public double getCandidates() {
+            return candidates;
+        }
+
+        public long getFactorizations() {
+            return factorizations;
+        }
+
+        public double cost() {
+            return candidates + factorizationCost;
+        }
+
+        @Override
+        public String toString() {
+            return (subtree ? "subtree " : "node ") + key + ": " + nodes + " nodes, " + numbers + " numbers, " + format(candidates)
+                    + " candidates, " + factorizations + " factorizations up to " + maxFactorizationBitLength + " bits, cost " + format(cost());
+        }
+    }
+
+    public static class Shard {
+        private final int index;
+        private final List<Unit> units = new ArrayList<>();
+        private double cost;
+        private long factorizations;
+
+        private Shard(int index) {
+            this.index = index;
+        }
+
+        private void add(Unit unit) {
+            units.add(unit);
+            cost += unit.cost();
+            factorizations += unit.factorizations;
+        }
+
+        private void clear() {
+            units.clear();
+            cost = 0;
+            factorizations = 0;
+        }
+
+        public List<Unit> getUnits() {
+            return units;
+        }
+
+        public double getCost() {
+            return cost;
+        }
+
+        @Override
+        public String toString() {
+            return "shard " + index + ": " + units.size() + " units, " + factorizations + " factorizations, cost " + format(cost);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+import common.Common;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Attributes work of Solver to depth of node and to top-level good prime of its subtree.
+// Output is collapsed-stack file for flame graphs: every line is "pognali;<top prime>;depth 2;...;depth k[;<activity>] <value>",
+// so width of frame of some depth is the work of all deeper nodes of the subtree. Time is split by activities:
+// scan, factorization, divisors (check of divisors of factorization) and search (merges of restrictions while generating children).
+// CPU time is measured for scans only, they run on threads of executor and usually dominate; everything else is wall time.
+// All methods are called from solver thread (callbacks of async work are called there too), so there is no synchronization
+public class Profiler {
+    private static final Logger log = LoggerFactory.getLogger(Profiler.class);
+
+    public enum Metric {
+        WALL_NANOS, SCAN_CPU_NANOS, NODES, SCAN_LENGTH, CANDIDATES, MERGES, FAILED_MERGES, FACTORIZATIONS
+    }
+
+    private static final int NODES = 0;
+    private static final int SCANS = 1;
+    private static final int SCAN_LENGTH = 2;
+    private static final int CANDIDATES = 3;
+    private static final int SCAN_NANOS = 4;
+    private static final int SCAN_CPU_NANOS = 5;
+    private static final int FACTORIZATIONS = 6;
+    private static final int FACTORIZATION_NANOS = 7;
+    private static final int DIVISOR_NANOS = 8;
+    private static final int SEARCH_NANOS = 9;
+    private static final int MERGES = 10;
+    private static final int FAILED_MERGES = 11;
+    private static final int COUNTERS = 12;
+
+    private static final String[] activities = {"scan", "factorization", "divisors", "search"};
+    private static final int[] activityCounters = {SCAN_NANOS, FACTORIZATION_NANOS, DIVISOR_NANOS, SEARCH_NANOS};
+
+    // top prime -> depth -> counters
+    private final Map<Long, List<long[]>> stats = new HashMap<>();
+
+    public void addNode(long top, int depth) {
+        get(top, depth)[NODES]++;
+    }
+
+    public void addScan(long top, int depth, long length, long candidates, long nanos, long cpuNanos) {
+        long[] s = get(top, depth);
+        s[SCANS]++;
+        s[SCAN_LENGTH] += length;
+        s[CANDIDATES] += candidates;
+        s[SCAN_NANOS] += nanos;
+        s[SCAN_CPU_NANOS] += cpuNanos;
+    }
+
+    public void addFactorization(long top, int depth, long nanos) {
+        long[] s = get(top, depth);
+        s[FACTORIZATIONS]++;
+        s[FACTORIZATION_NANOS] += nanos;
+    }
+
+    public void addDivisors(long top, int depth, long nanos) {
+        get(top, depth)[DIVISOR_NANOS] += nanos;
+    }
+
+    public void addSearch(long top, int depth, long nanos, long merges, long failedMerges) {
+        long[] s = get(top, depth);
+        s[SEARCH_NANOS] += nanos;
+        s[MERGES] += merges;
+        s[FAILED_MERGES] += failedMerges;
+    }
+
+    private long[] get(long top, int depth) {
+        List<long[]> byDepth = stats.computeIfAbsent(top, t -> new ArrayList<>());
+        while (byDepth.size() <= depth) {
+            byDepth.add(new long[COUNTERS]);
+        }
+        return byDepth.get(depth);
+    }
+
+    public long total(Metric metric) {
+        long result = 0;
+        for (List<long[]> byDepth : stats.values()) {
+            for (long[] s : byDepth) {
+                result += value(s, metric);
+            }
+        }
+        return result;
+    }
+
+    public void writeCollapsed(Path path, Metric metric) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<Long, List<long[]>> entry : new TreeMap<>(stats).entrySet()) {
+            StringBuilder stack = new StringBuilder("pognali");
+            if (entry.getKey() > 0) {
+                stack.append(';').append(entry.getKey());
+            }
+            List<long[]> byDepth = entry.getValue();
+            for (int depth = 0; depth < byDepth.size(); depth++) {
+                if (depth >= 2) {
+                    stack.append(";depth ").append(depth);
+                }
+                long[] s = byDepth.get(depth);
+                if (metric == Metric.WALL_NANOS) {
+                    for (int i = 0; i < activities.length; i++) {
+                        if (s[activityCounters[i]] > 0) {
+                            lines.add(stack + ";" + activities[i] + " " + s[activityCounters[i]]);
+                        }
+                    }
+                } else if (value(s, metric) > 0) {
+                    lines.add(stack + " " + value(s, metric));
+                }
+            }
+        }
+        try {
+            Files.write(path, lines);
+        } catch (IOException e) {
+            throw new RuntimeException("Cannot write profile to " + path, e);
+        }
+    }
+
+    public void log() {
+        List<long[]> byDepth = new ArrayList<>();
+        Map<Long, long[]> byTop = new HashMap<>();
+        for (Map.Entry<Long, List<long[]>> entry : stats.entrySet()) {
+            for (int depth = 0; depth < entry.getValue().size(); depth++) {
+                long[] s = entry.getValue().get(depth);
+                while (byDepth.size() <= depth) {
+                    byDepth.add(new long[COUNTERS]);
+                }
+                add(byDepth.get(depth), s);
+                add(byTop.computeIfAbsent(entry.getKey(), t -> new long[COUNTERS]), s);
+            }
+        }
+
+        StringBuilder buf = new StringBuilder("Profile by depth:");
+        for (int depth = 0; depth < byDepth.size(); depth++) {
+            buf.append(String.format(Common.LOCALE, "%n    %2d: ", depth)).append(format(byDepth.get(depth)));
+        }
+        buf.append("\nProfile by top-level prime (most expensive first):");
+        byTop.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<Long, long[]> e) -> value(e.getValue(), Metric.WALL_NANOS)).reversed())
+                .limit(20)
+                .forEach(e -> buf.append(String.format(Common.LOCALE, "%n    %s: ", (e.getKey() > 0) ? e.getKey() : "root")).append(format(e.getValue())));
+        log.info(buf.toString());
+    }
+
+    private static String format(long[] s) {
+        return String.format(Common.LOCALE, "%d nodes, %d scans of %d numbers with %d candidates in %.3fs (%.3fs CPU), "
+                        + "%d factorizations in %.3fs, divisors in %.3fs, %d merges (%d failed) in %.3fs",
+                s[NODES], s[SCANS], s[SCAN_LENGTH], s[CANDIDATES], s[SCAN_NANOS] / 1e9, s[SCAN_CPU_NANOS] / 1e9,
+                s[FACTORIZATIONS], s[FACTORIZATION_NANOS] / 1e9, s[DIVISOR_NANOS] / 1e9, s[MERGES], s[FAILED_MERGES], s[SEARCH_NANOS] / 1e9);
+    }
+
+    private static void add(long[] sum, long[] s) {
+        for (int i = 0; i < COUNTERS; i++) {
+            sum[i] += s[i];
+        }
+    }
+
+    private static long value(long[] s, Metric metric) {
+        return switch (metric) {
+            case WALL_NANOS -> s[SCAN_NANOS] + s[FACTORIZATION_NANOS] + s[DIVISOR_NANOS] + s[SEARCH_NANOS];
+            case SCAN_CPU_NANOS -> s[SCAN_CPU_NANOS];
+            case NODES -> s[NODES];
+            case SCAN_LENGTH -> s[SCAN_LENGTH];
+            case CANDIDATES -> s[CANDIDATES];
+            case MERGES -> s[MERGES];
+            case FAILED_MERGES -> s[FAILED_MERGES];
+            case FACTORIZATIONS -> s[FACTORIZATIONS];
+        };
+    }
+}
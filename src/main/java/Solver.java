@@ -1,45 +1,80 @@
-import com.carrotsearch.hppc.IntHashSet;
-import com.carrotsearch.hppc.IntSet;
 import common.Common;
+import common.SolutionVerifier;
+import common.TaskExecutor;
 import factorization.Factorization;
 import factorization.FactorizationDB;
+import factorization.FactorizationQueue;
 import factorization.Factorizer;
+import org.apache.commons.math3.util.ArithmeticUtils;
 import org.apache.commons.math3.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import primes.GoodPrimes;
 import primes.Restrictions;
+import scan.ScanBatcher;
 import scan.Scanner;
 
 import java.math.BigInteger;
-import java.util.stream.IntStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
 
 public class Solver {
     private static final Logger log = LoggerFactory.getLogger(Solver.class);
 
+    private static final int planSampleLength = 1<<12;
+
     private final long base;
     private final long target;
     private final BigInteger baseBig;
     private final BigInteger targetBig;
     private final double log2Base;
+    private final SolutionVerifier solutionVerifier;
 
+    private final BigInteger solutionFloor;
+    private final long solutionFloorLong;
     private final BigInteger solutionCeil;
+    private final long solutionCeilLong;
 
     private final GoodPrimes goodPrimes;
 
     private final FactorizationDB factorizationDB;
     private final Factorizer factorizer;
+    private final FactorizationQueue factorizationQueue;
+    private final CostModel costModel;
 
     private final Scanner scanner;
+    private final ScanBatcher scanBatcher;
     private final long scanLogThreshold;
     private final boolean logSolutions;
 
     private final Launch launch;
+    private final TaskExecutor executor;
+    private final Journal journal;
+    private final Profiler profiler;
     private final long[] primeStack;
+    // result of the last merge(): long A and B, or BigInteger ones if they don't fit long
+    private final long[] mergedAB = new long[2];
+    private BigInteger[] mergedBigAB;
+    // restrictions of primes of C of the node whose children are merged
+    private final long[] pathA;
+    private final long[] pathB;
+    // anytime mode: own work of frontier nodes is cut at deadline, it's reported to coverage when it's finished or cut
+    private long deadline = Long.MAX_VALUE;
+    private long unitLength;
+    private Coverage coverage;
 
-    public Solver(long base, long target, BigInteger solutionCeil, Launch launch, GoodPrimes goodPrimes,
-                  FactorizationDB factorizationDB, Factorizer factorizer, Scanner scanner,
-                  long scanLogThreshold, boolean logSolutions)
+    public Solver(long base, long target, BigInteger solutionFloor, BigInteger solutionCeil, Launch launch, TaskExecutor executor,
+                  GoodPrimes goodPrimes, Factorizer factorizer, Scanner scanner, Options options)
     {
         assert base >= 2;
         this.base = base;
@@ -47,162 +82,861 @@ public class Solver {
         this.target = target;
         this.targetBig = BigInteger.valueOf(target);
         this.log2Base = Math.log(base) / Math.log(2);
+        this.solutionVerifier = new SolutionVerifier(base, target);
+        assert (solutionFloor.signum() >= 0) && (solutionFloor.compareTo(solutionCeil) < 0);
+        this.solutionFloor = solutionFloor;
+        this.solutionFloorLong = (solutionFloor.compareTo(Common.MAX_LONG) <= 0) ? solutionFloor.longValueExact() : -1;
         this.solutionCeil = solutionCeil;
+        this.solutionCeilLong = (solutionCeil.compareTo(Common.MAX_LONG) <= 0) ? solutionCeil.longValueExact() : -1;
 
         this.goodPrimes = goodPrimes;
-        this.factorizationDB = factorizationDB;
+        this.factorizationDB = options.factorizationDB;
         this.factorizer = factorizer;
+        this.factorizationQueue = options.factorizationQueue;
+        this.costModel = options.costModel;
         this.scanner = scanner;
-        this.scanLogThreshold = scanLogThreshold;
-        this.logSolutions = logSolutions;
+        this.scanBatcher = options.scanBatcher;
+        this.scanLogThreshold = options.scanLogThreshold;
+        this.logSolutions = options.logSolutions;
 
         this.launch = launch;
+        this.executor = executor;
+        this.journal = options.journal;
+        this.profiler = options.profiler;
         this.primeStack = new long[solutionCeil.bitLength()];
+        this.pathA = new long[primeStack.length];
+        this.pathB = new long[primeStack.length];
     }
 
     public void solve() {
+        solve(this::pognali);
+    }
+
+    // anytime mode: subtrees are explored in order of estimated cost per number until time budget is exceeded,
+    // subtrees with scan length not greater than unitLength are explored as a whole by depth-first search.
+    // Returns which parts of tree were covered and which were skipped; skipped ones are explored on restart with the same journal
+    public Coverage solveAnytime(long timeBudgetMillis, long unitLength) {
+        long startTime = System.currentTimeMillis();
+        this.deadline = (timeBudgetMillis < Long.MAX_VALUE - startTime) ? startTime + timeBudgetMillis : Long.MAX_VALUE;
+        this.unitLength = unitLength;
+        this.coverage = new Coverage();
+        solve(this::anytime);
+        return coverage;
+    }
+
+    // dry run: tree is walked without factorizations and scans, own work of every node is estimated by sieve of small sample.
+    // Subtrees with scan length not greater than unitLength are units of work (as in anytime mode), bigger nodes are units by themselves.
+    // Parts of tree which are finished according to journal are skipped, so plan describes remaining work only
+    public Plan plan(int shardsNumber, long unitLength) {
+        Plan plan = new Plan(shardsNumber);
+        Frame root = new Frame(null, 0, 0, 1, 1, 0, new BitSet());
+        if (!isCompleted(root) && prepare(root)) {
+            Deque<Frame> stack = new ArrayDeque<>();
+            planUnit(root, unitLength, plan, stack);
+            while (!stack.isEmpty()) {
+                Frame frame = stack.peek();
+                Frame child = nextChild(frame);
+                if (child == null) {
+                    stack.pop();
+                } else if (prepare(child)) {
+                    planUnit(child, unitLength, plan, stack);
+                }
+            }
+        }
+        plan.partition();
+        return plan;
+    }
+
+    private void planUnit(Frame frame, long unitLength, Plan plan, Deque<Frame> stack) {
+        if ((frame.scanLength > unitLength) || (frame.pos == 0)) {
+            Plan.Unit unit = plan.addUnit(stackKey(frame.pos), false);
+            unit.setRange(frame.from, frame.scanLength);
+            estimateNode(frame, unit);
+            initChildren(frame);
+            stack.push(frame);
+            return;
+        }
+
+        Plan.Unit unit = plan.addUnit(stackKey(frame.pos), true);
+        Deque<Frame> subtree = new ArrayDeque<>();
+        estimateNode(frame, unit);
+        initChildren(frame);
+        subtree.push(frame);
+        while (!subtree.isEmpty()) {
+            Frame child = nextChild(subtree.peek());
+            if (child == null) {
+                subtree.pop();
+            } else if (prepare(child)) {
+                estimateNode(child, unit);
+                initChildren(child);
+                subtree.push(child);
+            }
+        }
+    }
+
+    // the same decisions as in processNode() and finishNode(), but factorization is expected to be complete
+    // if cost model has no observations of incomplete ones
+    private void estimateNode(Frame frame, Plan.Unit unit) {
+        BigInteger C = frame.getC();
+        if (C.equals(BigInteger.ONE) || (frame.journaled && isNodeDone(frame))) {
+            unit.addNode(0, 0);
+            return;
+        }
+        long length = frame.scanLength;
+        double scanShare = 1;
+        Factorization factorization = getKnownFactorization(C);
+        if (factorization == null) {
+            long bitLengthForecast = Math.round(log2Base * C.doubleValue());
+            int bitLength = (bitLengthForecast <= Integer.MAX_VALUE) ? (int) bitLengthForecast : Integer.MAX_VALUE;
+            if (launch.tryFactorize(bitLength)) {
+                unit.addFactorization(bitLength, (costModel != null) ? costModel.factorizationCostInCandidates(bitLength) : 0);
+                scanShare = (costModel != null) ? 1 - costModel.completeFactorizationRate(bitLength) : 0;
+            }
+        } else if (factorization.compositeCount() == 0) {
+            scanShare = 0;
+        }
+        if (scanShare > 0) {
+            length = boundedScanLength(C, factorization, frame.getA(), frame.start, frame.from, length);
+        }
+        double candidates = (scanShare > 0) ? scanShare * scanner.estimateCandidates(C, frame.getA(), frame.start, frame.from, length, planSampleLength) : 0;
+        unit.addNode(length, candidates);
+    }
+
+    private void solve(Consumer<Frame> search) {
+        if (journal != null) {
+            journal.getSolutions().forEach(launch::addSolution);
+        }
+
+        Frame root = new Frame(null, 0, 0, 1, 1, 0, new BitSet());
+        if (!isCompleted(root)) {
+            if (!isNodeDone(root)) {
+                scanPrimes(root);
+            }
+            search.accept(root);
+        }
+        flushAsync();
+    }
+
+    // solves one unit of distributed run (see Coordinator): whole subtree of node with given key or own work of node
+    // with scan restricted to x in [from; from+length); own work of root is solution 1 and prime solutions
+    public void solveUnit(String key, boolean subtree, long from, long length) {
+        if (journal != null) {
+            journal.getSolutions().forEach(launch::addSolution);
+        }
+        Frame frame = pathFrame(key);
+        if ((frame != null) && !isCompleted(frame) && prepare(frame)) {
+            if (subtree) {
+                process(frame);
+                pognaliProcessed(frame);
+            } else if (!frame.journaled || !isNodeDone(frame)) {
+                if (frame.pos == 0) {
+                    scanPrimes(frame);
+                    processNode(frame, frame.getA(), frame.start, frame.from, frame.scanLength);
+                } else {
+                    processNode(frame, frame.getA(), frame.start, from, length);
+                }
+            }
+        }
+        flushAsync();
+    }
+
+    // frame of node with given key, which is built along the path from root; null if some merge on the path fails
+    private Frame pathFrame(String key) {
+        Frame frame = new Frame(null, 0, 0, 1, 1, 0, new BitSet());
+        if (key.equals("1")) {
+            return frame;
+        }
+        for (String s : key.split("\\*")) {
+            long p = Long.parseLong(s);
+            int i = goodPrimes.floorIdx(p);
+            if ((i < 0) || (goodPrimes.get(i) != p)) {
+                throw new IllegalArgumentException("Not a good prime " + p + " in key " + key);
+            }
+            primeStack[frame.pos] = p;
+            if (frame.pos == 0) {
+                frame = new Frame(frame, 1, i, p, goodPrimes.getA(i), goodPrimes.getB(i), new BitSet());
+            } else {
+                if (!merge(frame, i, -1)) {
+                    return null;
+                }
+                // incompatibles found by merges of ancestors are not known here, they are found again by children
+                frame = mergedChild(frame, i, new BitSet());
+            }
+        }
+        return frame;
+    }
+
+    private void scanPrimes(Frame root) {
         // scanning prime solutions
-        if (target == base) {
-            scan(BigInteger.ONE, BigInteger.ONE, BigInteger.ONE, solutionCeil.longValueExact(), 0);
+        long length = (target == base) ? solutionCeil.longValueExact() : Math.min(base, solutionCeil.longValueExact());
+        long skip = Math.min(solutionFloor.min(BigInteger.valueOf(length)).longValueExact(), length);
+        scan(root, BigInteger.ONE, BigInteger.ONE, skip, length - skip, primeStack, false);
+    }
+
+    private void flushAsync() {
+        // results of factorizations can add new scans to batcher, so factorizations go first
+        if (factorizationQueue != null) {
+            factorizationQueue.flush();
+        }
+        if (scanBatcher != null) {
+            scanBatcher.flush();
+        }
+    }
+
+    // depth-first search over nodes C*(Ax+B) where C is product of good primes;
+    // recursion is replaced by explicit stack of frames, so finished part of tree can be described by journal
+    private void pognali(Frame root) {
+        if (prepare(root)) {
+            process(root);
+            pognaliProcessed(root);
+        }
+    }
+
+    private void pognaliProcessed(Frame root) {
+        Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            pollAsync();
+            Frame frame = stack.peek();
+            Frame child = nextChild(frame);
+            if (child == null) {
+                stack.pop();
+                frame.finished = true;
+                // if some async work of subtree is still running, subtree is marked as done when it's finished
+                if (frame.pending == 0) {
+                    subtreeDone(frame);
+                }
+            } else if (prepare(child)) {
+                process(child);
+                stack.push(child);
+            }
+        }
+    }
+
+    private void anytime(Frame root) {
+        PriorityQueue<Frame> frontier = new PriorityQueue<>(Comparator.comparingDouble((Frame f) -> f.priority)
+                .thenComparing(f -> f.scanLength, Comparator.reverseOrder()));
+        if (prepare(root)) {
+            addToFrontier(root, frontier);
+        }
+        while (!frontier.isEmpty() && (System.currentTimeMillis() < deadline)) {
+            pollAsync();
+            Frame frame = frontier.poll();
+            // frames are taken in arbitrary order, so prime stack should be restored
+            for (Frame f = frame; f.pos > 0; f = f.parent) {
+                primeStack[f.pos-1] = goodPrimes.get(f.gpPos);
+            }
+            if (frame.scanLength <= unitLength) {
+                process(frame);
+                pognaliProcessed(frame);
+                coverage.add(range(frame), true, true);
+                continue;
+            }
+
+            frame.bounded = true;
+            process(frame);
+            Frame child;
+            while ((child = nextChild(frame)) != null) {
+                if (prepare(child)) {
+                    child.queued = true;
+                    beginAsync(frame);
+                    addToFrontier(child, frontier);
+                }
+            }
+            frame.finished = true;
+            if (frame.pending == 0) {
+                subtreeDone(frame);
+            }
+        }
+        for (Frame frame : frontier) {
+            coverage.add(range(frame), true, false);
+        }
+    }
+
+    private void addToFrontier(Frame frame, PriorityQueue<Frame> frontier) {
+        // every subtree of frontier is journaled, so it can be skipped on restart if it's finished
+        if ((journal != null) && !frame.journaled) {
+            frame.journaled = true;
+            frame.key = stackKey(frame.pos);
+        }
+        frame.priority = estimateCostPerNumber(frame);
+        frontier.add(frame);
+    }
+
+    // estimation of node's own work per one number of node, subtree below it isn't taken into account
+    private double estimateCostPerNumber(Frame frame) {
+        if ((frame.getC().equals(BigInteger.ONE)) || (getKnownFactorization(frame.getC()) != null)) {
+            return 0;
+        }
+        double length = Math.max(frame.scanLength, 1);
+        double scanCost = (costModel != null) ? costModel.scanCost(frame.scanLength) : Double.NaN;
+        if (Double.isNaN(scanCost)) {
+            return 1;
+        }
+        long bitLengthForecast = Math.round(log2Base * frame.getC().doubleValue());
+        int bitLength = (bitLengthForecast <= Integer.MAX_VALUE) ? (int) bitLengthForecast : Integer.MAX_VALUE;
+        if (launch.tryFactorize(bitLength)) {
+            double factorizationCost = costModel.factorizationCost(bitLength) + (1 - costModel.completeFactorizationRate(bitLength)) * scanCost;
+            return Math.min(scanCost, factorizationCost) / length;
+        }
+        return scanCost / length;
+    }
+
+    private Coverage.Range range(Frame frame) {
+        StringBuilder key = new StringBuilder();
+        for (Frame f = frame; f.pos > 0; f = f.parent) {
+            key.insert(0, (f.pos > 1) ? "*" + goodPrimes.get(f.gpPos) : goodPrimes.get(f.gpPos));
+        }
+        return new Coverage.Range((key.length() > 0) ? key.toString() : "1", frame.getC(), frame.getA(), frame.start, frame.from, frame.scanLength);
+    }
+
+    private void pollAsync() {
+        if (factorizationQueue != null) {
+            factorizationQueue.poll();
+        }
+        if (scanBatcher != null) {
+            scanBatcher.poll();
+        }
+    }
+
+    // calculates bounds of node, returns false if node is empty
+    private boolean prepare(Frame frame) {
+        // node contains numbers C*(Ax+B) for x >= 0, where B is replaced with A if B = 0,
+        // scanLength is number of such x with C*(Ax+B) <= ceil and skip is number of them with C*(Ax+B) <= floor
+        BigInteger scanLength;
+        BigInteger skip;
+        BigInteger start;
+        if (frame.isLong && (solutionCeilLong > 0)) {
+            long div = solutionCeilLong / frame.c;
+            long am = div - frame.b;
+            if (am < 0) {
+                return false;
+            }
+            long a = frame.a;
+            long b = (frame.b == 0) ? a : frame.b;
+            long length = (div >= b) ? (div - b)/a + 1 : 0;
+            long low = solutionFloorLong / frame.c;
+            skip = BigInteger.valueOf((low >= b) ? Math.min((low - b)/a + 1, length) : 0);
+            scanLength = BigInteger.valueOf(length);
+            start = BigInteger.valueOf(b);
+            frame.bound = Common.sqrt(div);
+            frame.journaled = (journal != null) && (div >= journal.getThreshold());
         } else {
-            scan(BigInteger.ONE, BigInteger.ONE, BigInteger.ONE, base, 0);
+            BigInteger C = frame.getC();
+            BigInteger A = frame.getA();
+            BigInteger B = frame.getB();
+            start = (B.signum() == 0) ? A : B;
+            BigInteger div = solutionCeil.divide(C);
+            BigInteger am = div.subtract(B);
+            if (am.signum() < 0) {
+                return false;
+            }
+            scanLength = (div.compareTo(start) >= 0) ? div.subtract(start).divide(A).add(BigInteger.ONE) : BigInteger.ZERO;
+            BigInteger low = solutionFloor.divide(C);
+            skip = (low.compareTo(start) >= 0) ? low.subtract(start).divide(A).add(BigInteger.ONE).min(scanLength) : BigInteger.ZERO;
+            frame.bound = div.sqrt().longValueExact();
+            frame.journaled = (journal != null) && (div.compareTo(BigInteger.valueOf(journal.getThreshold())) >= 0);
+        }
+
+        // all numbers of this node (and so of its subtree) are not greater than floor
+        if ((solutionFloor.signum() > 0) && (skip.compareTo(scanLength) >= 0)) {
+            return false;
         }
 
-        pognali(0, 0, BigInteger.ONE, BigInteger.ONE, BigInteger.ZERO, new IntHashSet());
+        if (frame.journaled) {
+            frame.key = stackKey(frame.pos);
+        }
+        frame.start = start;
+        frame.from = skip.longValueExact();
+        frame.scanLength = launch.scanLength(skip, scanLength);
+        return true;
     }
 
-    private void pognali(int pos, int gpPos, BigInteger C, BigInteger A, BigInteger B, IntSet incompatibles) {
-        BigInteger div = solutionCeil.divide(C);
-        BigInteger am = div.subtract(B);
-        if (am.signum() < 0) {
-            return;
+    // runs node's own factorization or scan and prepares iteration over children
+    private void process(Frame frame) {
+        if (!frame.journaled || !isNodeDone(frame)) {
+            processNode(frame, frame.getA(), frame.start, frame.from, frame.scanLength);
+        } else if (frame.bounded) {
+            coverage.add(range(frame), false, true);
         }
-        BigInteger scanLength = am.divide(A).add(BigInteger.ONE);
+        initChildren(frame);
+    }
 
-        boolean factorized = tryFactorization(C, A, pos);
-        if (!factorized) {
-            scan(C, A, B, launch.scanLength(scanLength), pos);
+    private void initChildren(Frame frame) {
+        if ((goodPrimes.size() == 0) || (frame.bound < goodPrimes.get(frame.gpPos))) {
+            frame.next = -1;
+        } else if (frame.pos == 0) {
+            frame.next = frame.gpPos;
+        } else {
+            int pBound = goodPrimes.floorIdx(frame.bound) + 1;
+            frame.length = pBound - frame.gpPos;
+            frame.next = frame.length - 1;
         }
+    }
 
-        long bound = div.sqrt().longValueExact();
-        if ((goodPrimes.size() == 0) || (bound < goodPrimes.get(gpPos))) {
-            return;
+    private Frame nextChild(Frame frame) {
+        if (profiler == null) {
+            return nextChild(frame, null);
         }
+        long startNanos = System.nanoTime();
+        long[] merges = new long[2];
+        Frame child = nextChild(frame, merges);
+        profiler.addSearch(topPrime(frame), frame.pos, System.nanoTime() - startNanos, merges[0], merges[1]);
+        return child;
+    }
 
+    // merges[0] and merges[1] count attempted and failed merges of restrictions if merges isn't null
+    private Frame nextChild(Frame frame, long[] merges) {
+        int pos = frame.pos;
+        if (frame.next < 0) {
+            return null;
+        }
         if (pos == 0) {
-            for (int i = gpPos; (i < goodPrimes.size()) && (goodPrimes.get(i) <= bound); i++) {
+            while ((frame.next < goodPrimes.size()) && (goodPrimes.get(frame.next) <= frame.bound)) {
+                int i = frame.next++;
                 if (goodPrimes.getGcdAB(i) > 1) {
                     continue;
                 }
-                primeStack[pos] = goodPrimes.get(i);
-                pognali(pos+1, i, C.multiply(BigInteger.valueOf(goodPrimes.get(i))),
-                        BigInteger.valueOf(goodPrimes.getA(i)), BigInteger.valueOf(goodPrimes.getB(i)), incompatibles);
-
+                if (!isCompletedChild(frame, i)) {
+                    primeStack[pos] = goodPrimes.get(i);
+                    return new Frame(frame, pos+1, i, goodPrimes.get(i), goodPrimes.getA(i), goodPrimes.getB(i), new BitSet());
+                }
             }
         } else {
-            int pBound = gpPos;
-            while ((pBound < goodPrimes.size()) && (goodPrimes.get(pBound) <= bound)) {
-                pBound++;
-            }
-
-            IntStream.Builder toClearBuf = IntStream.builder();
-            for (int i = pBound-1; i >= gpPos; i--) {
-                if (incompatibles.contains(i)) {
+            // bit k of incompatibles corresponds to good prime with index gpPos+k,
+            // children inherit bits that are already set at the moment of their creation
+            BitSet incompatibles = frame.incompatibles;
+            int pathLength = squarefreePath(frame);
+            for (int k = incompatibles.previousClearBit(frame.next); k >= 0; k = incompatibles.previousClearBit(k-1)) {
+                int i = frame.gpPos + k;
+                // k = 0 is the node's top prime once more, so C*p isn't squarefree
+                boolean compatible = merge(frame, i, (k > 0) ? pathLength : -1);
+                if (merges != null) {
+                    merges[0]++;
+                }
+                if (!compatible) {
+                    incompatibles.set(k);
+                    if (merges != null) {
+                        merges[1]++;
+                    }
                     continue;
                 }
-                BigInteger P = BigInteger.valueOf(goodPrimes.get(i));
-                BigInteger[] newAB = Restrictions.merge(baseBig, targetBig, C, A, B,
-                        P, BigInteger.valueOf(goodPrimes.getA(i)), BigInteger.valueOf(goodPrimes.getB(i)));
-
-                if (newAB != null) {
-                    BigInteger gcd = Common.gcd(newAB[0], newAB[1]);
-                    if (gcd.compareTo(BigInteger.ONE) > 0) {
-                        continue;
+                if (!isMergedCoprime()) {
+                    if (merges != null) {
+                        merges[1]++;
                     }
+                    continue;
+                }
+                frame.next = k-1;
+                if (!isCompletedChild(frame, i)) {
                     primeStack[pos] = goodPrimes.get(i);
-                    pognali(pos+1, i, C.multiply(P), newAB[0], newAB[1], incompatibles);
-                } else {
-                    incompatibles.add(i);
-                    toClearBuf.add(i);
+                    return mergedChild(frame, i, incompatibles.get(k, frame.length));
                 }
             }
+        }
+        frame.next = -1;
+        return null;
+    }
 
-            int[] toClear = toClearBuf.build().toArray();
-            for (int i : toClear) {
-                incompatibles.removeAll(i);
+    private boolean isCompleted(Frame frame) {
+        return (journal != null) && journal.isCompleted(stackKey(frame.pos));
+    }
+
+    // child with i-th good prime is checked by key of its parent, which is built once per parent
+    private boolean isCompletedChild(Frame frame, int i) {
+        if (journal == null) {
+            return false;
+        }
+        if (frame.key == null) {
+            frame.key = stackKey(frame.pos);
+        }
+        return journal.isCompleted(frame.key, goodPrimes.get(i));
+    }
+
+    private boolean isNodeDone(Frame frame) {
+        return (journal != null) && journal.isNodeDone(stackKey(frame.pos));
+    }
+
+    // restrictions of primes of node's C are written to pathA and pathB, returns their number or -1 if C isn't squarefree
+    private int squarefreePath(Frame frame) {
+        int count = 0;
+        for (Frame f = frame; f.pos > 0; f = f.parent) {
+            if ((f.parent.pos > 0) && (f.parent.gpPos == f.gpPos)) {
+                return -1;
             }
+            pathA[count] = goodPrimes.getA(f.gpPos);
+            pathB[count] = goodPrimes.getB(f.gpPos);
+            count++;
         }
+        return count;
     }
 
-    private boolean tryFactorization(BigInteger C, BigInteger A, int pos) {
-        if (C.equals(BigInteger.ONE)) {
-            launch.addSolution(BigInteger.ONE);
-            return true;
+    // merges restrictions of node with i-th good prime, returns false if they are incompatible.
+    // New A and B are written to mergedAB without allocations, BigInteger ones are used only after overflow of long.
+    // If C*p is squarefree (pathLength >= 0), the check of merge is done by restrictions of its primes without exponentiation
+    private boolean merge(Frame frame, int i, int pathLength) {
+        mergedBigAB = null;
+        if (frame.isLong) {
+            long p = goodPrimes.get(i);
+            try {
+                if (pathLength < 0) {
+                    return Restrictions.mergeExact(base, target, frame.c, frame.a, frame.b, p, goodPrimes.getA(i), goodPrimes.getB(i), mergedAB);
+                }
+                // C*p has to fit long as after mergeExact
+                Math.multiplyExact(frame.c, p);
+                return Restrictions.mergeCongruences(frame.c, frame.a, frame.b, p, goodPrimes.getA(i), goodPrimes.getB(i), mergedAB)
+                        && Restrictions.checkSquarefree(frame.c, mergedAB[0], mergedAB[1], p, goodPrimes.getA(i), goodPrimes.getB(i),
+                                pathA, pathB, pathLength);
+            } catch (ArithmeticException e) {
+                // overflow of some intermediate value, fallback to BigInteger
+            }
         }
-        Factorization factorization = null;
-        if ((factorizationDB != null) && C.compareTo(Common.MAX_INT) <= 0) {
-            factorization = factorizationDB.get(C.intValueExact());
+        mergedBigAB = Restrictions.merge(baseBig, targetBig, frame.getC(), frame.getA(), frame.getB(), BigInteger.valueOf(goodPrimes.get(i)),
+                BigInteger.valueOf(goodPrimes.getA(i)), BigInteger.valueOf(goodPrimes.getB(i)));
+        return mergedBigAB != null;
+    }
+
+    private boolean isMergedCoprime() {
+        if (mergedBigAB == null) {
+            return ArithmeticUtils.gcd(mergedAB[0], mergedAB[1]) == 1;
+        }
+        return Common.gcd(mergedBigAB[0], mergedBigAB[1]).equals(BigInteger.ONE);
+    }
+
+    private Frame mergedChild(Frame frame, int i, BitSet incompatibles) {
+        long p = goodPrimes.get(i);
+        if (mergedBigAB == null) {
+            // successful mergeExact guarantees that C*p fits long
+            return new Frame(frame, frame.pos+1, i, frame.c * p, mergedAB[0], mergedAB[1], incompatibles);
+        }
+        return new Frame(frame, frame.pos+1, i, frame.getC().multiply(BigInteger.valueOf(p)), mergedBigAB[0], mergedBigAB[1], incompatibles);
+    }
+
+    // node's own work: factorization of base^C - target with check of its divisors, and scan if factorization isn't complete;
+    // factorization is done asynchronously if there is factorization queue
+    private void processNode(Frame frame, BigInteger A, BigInteger start, long from, long length) {
+        BigInteger C = frame.getC();
+        if (profiler != null) {
+            profiler.addNode(topPrime(frame), frame.pos);
+        }
+        if (C.equals(BigInteger.ONE)) {
+            addSolution(BigInteger.ONE);
+            nodeDone(frame);
+            return;
         }
 
+        Factorization factorization = getKnownFactorization(C);
         if (factorization == null) {
             long bitLengthForecast = Math.round(log2Base * C.doubleValue());
-            if (!launch.tryFactorize((bitLengthForecast <= Integer.MAX_VALUE) ? (int) bitLengthForecast : Integer.MAX_VALUE)) {
-                return false;
-            }
-            BigInteger F = baseBig.pow(C.intValueExact()).subtract(targetBig).abs();
+            int bitLength = (bitLengthForecast <= Integer.MAX_VALUE) ? (int) bitLengthForecast : Integer.MAX_VALUE;
+            boolean factorize = launch.tryFactorize(bitLength) && ((costModel == null) || costModel.preferFactorization(bitLength, length));
+            BigInteger F = factorize ? baseBig.pow(C.intValueExact()).subtract(targetBig).abs() : BigInteger.ZERO;
             if (F.signum() == 0) {
-                return false;
+                finishNode(frame, null, A, start, from, length, primeStack);
+                return;
             }
 
             long startTime = System.currentTimeMillis();
             String logStr = base + "^" + C + ((target > 0) ? "" : "+") + (-target);
-            log.info("Factorizing {} where {} = {}", logStr, C, stackToString(pos));
+            log.info("Factorizing {} where {} = {}", logStr, C, stackToString(frame.pos));
+            if (factorizationQueue != null) {
+                // prime stack will be changed before factorization is finished
+                long[] stack = Arrays.copyOf(primeStack, frame.pos);
+                beginAsync(frame);
+                long budget = frame.bounded ? deadline - System.currentTimeMillis() : Long.MAX_VALUE;
+                factorizationQueue.submit(F, budget, (f, nanos) -> {
+                    registerFactorization(F, C, A, f, bitLength, nanos, logStr, startTime);
+                    if (profiler != null) {
+                        profiler.addFactorization(topPrime(frame), frame.pos, nanos);
+                    }
+                    finishNode(frame, f, A, start, from, length, stack);
+                    endAsync(frame);
+                });
+                return;
+            }
+            long startNanos = System.nanoTime();
             factorization = factorizer.factorize(F);
-            launch.registerFactorizationCall(F, baseBig, C, targetBig, A);
-            log.info("Factorized in {}ms with {} composites: {} = {}", System.currentTimeMillis() - startTime, factorization.compositeCount(), logStr, factorization);
+            long nanos = System.nanoTime() - startNanos;
+            registerFactorization(F, C, A, factorization, bitLength, nanos, logStr, startTime);
+            if (profiler != null) {
+                profiler.addFactorization(topPrime(frame), frame.pos, nanos);
+            }
+        }
+        finishNode(frame, factorization, A, start, from, length, primeStack);
+    }
+
+    private Factorization getKnownFactorization(BigInteger C) {
+        Factorization factorization = null;
+        if ((factorizationDB != null) && C.compareTo(Common.MAX_INT) <= 0) {
+            factorization = factorizationDB.get(C.intValueExact());
         }
+        if ((factorization == null) && (journal != null) && C.compareTo(Common.MAX_INT) <= 0) {
+            factorization = journal.getFactorization(C.intValueExact());
+        }
+        return factorization;
+    }
 
-        factorization.forEachDivisor(d -> {
-            BigInteger N = C.multiply(d);
-            if (baseBig.modPow(N, N).equals(Common.mod(targetBig, N))) {
+    private void registerFactorization(BigInteger F, BigInteger C, BigInteger A, Factorization factorization, int bitLength, long nanos,
+                                       String logStr, long startTime)
+    {
+        launch.registerFactorizationCall(F, baseBig, C, targetBig, A);
+        if (costModel != null) {
+            costModel.registerFactorization(bitLength, nanos, factorization.compositeCount() == 0);
+        }
+        if (journal != null) {
+            journal.addFactorization(C.intValueExact(), factorization);
+        }
+        log.info("Factorized in {}ms with {} composites: {} = {}", System.currentTimeMillis() - startTime, factorization.compositeCount(), logStr, factorization);
+    }
+
+    private void finishNode(Frame frame, Factorization factorization, BigInteger A, BigInteger start, long from, long length, long[] stack) {
+        BigInteger C = frame.getC();
+        BigInteger maxM = solutionCeil.divide(C);
+        if ((factorization != null) && (factorization.compositeCount() > 0)) {
+            factorization = factorizeSmallComposites(factorization, maxM);
+        }
+        if (factorization != null) {
+            long startNanos = System.nanoTime();
+            // prime factors of N = C*d are primes of stack and factors of d, so N can be verified by its prime powers
+            List<BigInteger> primesOfC = primesOf(stack, frame.pos);
+            Set<BigInteger> composites = factorization.composites();
+            // only divisors with floor < C*d <= ceil are checked, enumeration is cut at ceil/C;
+            // divisors are checked in parallel, so solutions are collected and registered after that
+            Queue<BigInteger> found = new ConcurrentLinkedQueue<>();
+            factorization.forEachDivisorWithFactors(solutionCeil.divide(C), executor, (d, factors) -> {
+                BigInteger N = C.multiply(d);
+                if (N.compareTo(solutionFloor) <= 0) {
+                    return;
+                }
+                boolean isSolution;
+                if (composites.isEmpty() || factors.stream().noneMatch(composites::contains)) {
+                    List<BigInteger> primes = new ArrayList<>(primesOfC);
+                    primes.addAll(factors);
+                    isSolution = solutionVerifier.verify(N, primes);
+                } else {
+                    isSolution = baseBig.modPow(N, N).equals(Common.mod(targetBig, N));
+                }
+                if (isSolution) {
+                    found.add(d);
+                }
+            });
+            for (BigInteger d : found) {
+                BigInteger N = C.multiply(d);
                 if (logSolutions) {
-                    log.info("Found solution: {} = {}", N, stackToString(d, pos));
+                    log.info("Found solution: {} = {}", N, stackToString(stack, d, frame.pos));
                 }
-                launch.addSolution(N);
+                addSolution(N);
+            }
+            if (profiler != null) {
+                profiler.addDivisors(topPrime(frame), frame.pos, System.nanoTime() - startNanos);
             }
-        });
-        return (factorization.compositeCount() == 0);
+        }
+        if ((factorization == null) || (factorization.compositeCount() > 0)) {
+            // for solution C*m where m is prime (the biggest prime factor of solution) base^(C*m) = base^C (mod m),
+            // so m divides |base^C - target| and so one of its composite cofactors (prime factors are checked as divisors),
+            // or m divides base and then m <= base
+            length = boundedScanLength(C, factorization, A, start, from, length);
+            if (scan(frame, A, start, from, length, stack, !frame.journaled && !frame.bounded) < length) {
+                // neither node nor its subtree is done, the whole own work is repeated on restart
+                frame.cut = true;
+                coverage.add(range(frame), false, false);
+                return;
+            }
+        }
+        nodeDone(frame);
     }
 
-    private void scan(BigInteger C, BigInteger A, BigInteger B, long length, int pos) {
+    private long boundedScanLength(BigInteger C, Factorization factorization, BigInteger A, BigInteger start, long from, long length) {
+        BigInteger bound = maxCandidate(C, factorization);
+        if (bound != null) {
+            BigInteger count = (bound.compareTo(start) >= 0) ? bound.subtract(start).divide(A).add(BigInteger.ONE) : BigInteger.ZERO;
+            length = Math.min(length, Math.max(count.subtract(BigInteger.valueOf(from)).min(Common.MAX_LONG).longValue(), 0));
+        }
+        return length;
+    }
+
+    // returns bound for m in scan of node C*m, or null if there is no bound better than ceil/C
+    private BigInteger maxCandidate(BigInteger C, Factorization factorization) {
+        BigInteger bound;
+        if (factorization != null) {
+            bound = factorization.composites().stream().max(BigInteger::compareTo).orElse(BigInteger.ONE);
+        } else if (log2Base * C.doubleValue() <= solutionCeil.bitLength() + 1) {
+            bound = baseBig.pow(C.intValueExact()).subtract(targetBig).abs();
+            if (bound.signum() == 0) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return bound.max(baseBig);
+    }
+
+    // composite cofactors which are not greater than scan range are factorized directly, it's cheaper than scan
+    private Factorization factorizeSmallComposites(Factorization factorization, BigInteger maxM) {
+        for (BigInteger composite : factorization.composites()) {
+            if ((composite.compareTo(maxM) <= 0) && (composite.bitLength() < Long.SIZE)) {
+                List<BigInteger> factors = Arrays.stream(Factorizer.factorizeCompletely(composite.longValueExact()))
+                        .mapToObj(BigInteger::valueOf).toList();
+                factorization = factorization.replaceComposite(composite, Factorization.fromPrimeFactors(factors));
+            }
+        }
+        return factorization;
+    }
+
+    // returns length of scanned part, own work of frontier node in anytime mode is scanned by units until deadline
+    private long scan(Frame frame, BigInteger A, BigInteger B, long from, long length, long[] stack, boolean batch) {
         if (length <= 0) {
-            return;
+            return length;
+        }
+        BigInteger C = frame.getC();
+        int pos = frame.pos;
+        if (batch && (scanBatcher != null) && (length < scanLogThreshold)) {
+            // prime stack will be changed before result is ready, so it's copied for logging of solutions
+            long[] stackCopy = (stack == primeStack) ? Arrays.copyOf(primeStack, pos) : stack;
+            beginAsync(frame);
+            boolean submitted = scanBatcher.submit(C, primesOf(stackCopy, pos), A, B, from, length, launch.checkCandidates(), (result, cpuNanos) -> {
+                registerScan(C, result, stackCopy, pos);
+                if (costModel != null) {
+                    costModel.registerScan(length, result.getSecond());
+                }
+                if (profiler != null) {
+                    // scan is done sequentially in one thread, so its wall time is almost equal to CPU time
+                    profiler.addScan(topPrime(frame), pos, length, result.getSecond(), cpuNanos, cpuNanos);
+                }
+                endAsync(frame);
+            });
+            if (submitted) {
+                return length;
+            }
+            endAsync(frame);
         }
+
         long startTime = System.currentTimeMillis();
         if (length >= scanLogThreshold) {
-            log.info("Start scanning {} * ({}x + {}) for x in [0; {}]...", stackToString(pos), A, B, length-1);
+            log.info("Start scanning {} * ({}x + {}) for x in [{}; {}]...", stackToString(stack, null, pos), A, B, from, from+length-1);
         }
-        Pair<BigInteger[], Long> result = scanner.scan(C, A, B, length, launch.checkCandidates());
+        long scanned = 0;
+        long candidates = 0;
+        while ((scanned < length) && (!frame.bounded || (System.currentTimeMillis() < deadline))) {
+            long chunk = frame.bounded ? Math.min(length - scanned, unitLength) : length - scanned;
+            long startNanos = System.nanoTime();
+            long startCpu = scanner.getScanCpuNanos();
+            Pair<BigInteger[], Long> result = scanner.scan(C, primesOf(stack, pos), A, B, from + scanned, chunk, launch.checkCandidates());
+            long nanos = System.nanoTime() - startNanos;
+            if (costModel != null) {
+                costModel.registerScan(chunk, result.getSecond(), nanos);
+            }
+            if (profiler != null) {
+                profiler.addScan(topPrime(frame), pos, chunk, result.getSecond(), nanos, scanner.getScanCpuNanos() - startCpu);
+            }
+            registerScan(C, result, stack, pos);
+            scanned += chunk;
+            candidates += result.getSecond();
+        }
+        if (length >= scanLogThreshold) {
+            log.info("Scanned {} * ({}x + {}) for x in [{}; {}] in {}ms: checked {} candidates ({}%)", stackToString(stack, null, pos), A, B,
+                    from, from+scanned-1, System.currentTimeMillis() - startTime, candidates,
+                    String.format(Common.LOCALE, "%.2f", candidates * 100.0 / Math.max(scanned, 1)));
+        }
+        return scanned;
+    }
+
+    private void registerScan(BigInteger C, Pair<BigInteger[], Long> result, long[] stack, int pos) {
         for (BigInteger m : result.getFirst()) {
             BigInteger solution = C.multiply(m);
             if (logSolutions) {
-                log.info("Found solution: {} = {}", solution, stackToString(m, pos));
+                log.info("Found solution: {} = {}", solution, stackToString(stack, m, pos));
             }
-            launch.addSolution(solution);
+            addSolution(solution);
         }
         launch.registerScan(C, result.getSecond());
-        if (length >= scanLogThreshold) {
-            log.info("Scanned {} * ({}x + {}) for x in [0; {}] in {}ms: checked {} candidates ({}%)", stackToString(pos), A, B, length-1,
-                    System.currentTimeMillis() - startTime, result.getSecond(),
-                    String.format(Common.LOCALE, "%.2f", result.getSecond() * 100.0 / length));
+    }
+
+    // async work of node is counted in all its ancestors, so subtree can't be marked as done before it's finished
+    private void beginAsync(Frame frame) {
+        for (Frame f = frame; f != null; f = f.parent) {
+            f.pending++;
+        }
+    }
+
+    private void endAsync(Frame frame) {
+        for (Frame f = frame; f != null; f = f.parent) {
+            f.pending--;
+            if ((f.pending == 0) && f.finished) {
+                subtreeDone(f);
+            }
+        }
+    }
+
+    private void nodeDone(Frame frame) {
+        if (frame.journaled) {
+            journal.nodeDone(frame.key);
+        }
+        if (frame.bounded) {
+            coverage.add(range(frame), false, true);
+        }
+    }
+
+    private void subtreeDone(Frame frame) {
+        // subtree of node with cut own work isn't done, as well as subtrees of its ancestors
+        if (frame.cut) {
+            return;
+        }
+        if (frame.journaled) {
+            journal.subtreeDone(frame.key);
+        }
+        // subtree from frontier of anytime mode is counted as async work of its parent
+        if (frame.queued) {
+            endAsync(frame.parent);
+        }
+    }
+
+    private void addSolution(BigInteger solution) {
+        launch.addSolution(solution);
+        if (journal != null) {
+            journal.addSolution(solution);
+        }
+    }
+
+    // the first prime of node's stack, 0 for root
+    private long topPrime(Frame frame) {
+        if (frame.pos == 0) {
+            return 0;
+        }
+        Frame f = frame;
+        while (f.pos > 1) {
+            f = f.parent;
+        }
+        return goodPrimes.get(f.gpPos);
+    }
+
+    private static List<BigInteger> primesOf(long[] stack, int pos) {
+        List<BigInteger> result = new ArrayList<>(pos);
+        for (int i = 0; i < pos; i++) {
+            result.add(BigInteger.valueOf(stack[i]));
         }
+        return result;
+    }
+
+    private String stackKey(int pos) {
+        if (pos == 0) {
+            return "1";
+        }
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < pos; i++) {
+            if (i > 0) {
+                buf.append('*');
+            }
+            buf.append(primeStack[i]);
+        }
+        return buf.toString();
     }
 
     private String stackToString(int pos) {
-        return stackToString(null, pos);
+        return stackToString(primeStack, null, pos);
     }
 
-    private String stackToString(BigInteger lastFactor, int pos) {
+    private static String stackToString(long[] stack, BigInteger lastFactor, int pos) {
         if (lastFactor == null) {
             lastFactor = BigInteger.ONE;
         }
@@ -215,7 +949,7 @@ public class Solver {
             if (buf.length() > 0) {
                 buf.append(" * ");
             }
-            buf.append(primeStack[i]);
+            buf.append(stack[i]);
         }
         if (!BigInteger.ONE.equals(lastFactor)) {
             if (buf.length() > 0) {
@@ -234,4 +968,148 @@ public class Solver {
         return targetBig;
     }
 
+    // optional stages and settings of Solver, all stages are off by default
+    public static class Options {
+        private FactorizationDB factorizationDB;
+        private FactorizationQueue factorizationQueue;
+        private CostModel costModel;
+        private ScanBatcher scanBatcher;
+        private Journal journal;
+        private Profiler profiler;
+        private long scanLogThreshold = Long.MAX_VALUE;
+        private boolean logSolutions;
+
+        public Options factorizationDB(FactorizationDB factorizationDB) {
+            this.factorizationDB = factorizationDB;
+            return this;
+        }
+
+        public Options factorizationQueue(FactorizationQueue factorizationQueue) {
+            this.factorizationQueue = factorizationQueue;
+            return this;
+        }
+
+        public Options costModel(CostModel costModel) {
+            this.costModel = costModel;
+            return this;
+        }
+
+        public Options scanBatcher(ScanBatcher scanBatcher) {
+            this.scanBatcher = scanBatcher;
+            return this;
+        }
+
+        public Options journal(Journal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        public Options profiler(Profiler profiler) {
+            this.profiler = profiler;
+            return this;
+        }
+
+        public Options scanLogThreshold(long scanLogThreshold) {
+            this.scanLogThreshold = scanLogThreshold;
+            return this;
+        }
+
+        public Options logSolutions(boolean logSolutions) {
+            this.logSolutions = logSolutions;
+            return this;
+        }
+
+        public Options copy() {
+            Options copy = new Options();
+            copy.factorizationDB = factorizationDB;
+            copy.factorizationQueue = factorizationQueue;
+            copy.costModel = costModel;
+            copy.scanBatcher = scanBatcher;
+            copy.journal = journal;
+            copy.profiler = profiler;
+            copy.scanLogThreshold = scanLogThreshold;
+            copy.logSolutions = logSolutions;
+            return copy;
+        }
+    }
+
+    private static class Frame {
+        private final Frame parent;
+        private final int pos;
+        private final int gpPos;
+        // C, A and B are kept in longs while they fit, BigInteger values are created on demand for node's own work
+        // and are the only ones after overflow
+        private final boolean isLong;
+        private final long c;
+        private final long a;
+        private final long b;
+        private BigInteger C;
+        private BigInteger A;
+        private BigInteger B;
+        private final BitSet incompatibles;
+
+        private long bound;
+        private int length;
+        private int next;
+        private boolean journaled;
+        private String key;
+        private BigInteger start;
+        private long from;
+        private long scanLength;
+        private double priority;
+        private boolean queued;
+        // frontier node of anytime mode whose own work is bounded by deadline, and whether it was cut
+        private boolean bounded;
+        private boolean cut;
+
+        // number of unfinished async tasks in subtree and whether subtree search itself is finished
+        private int pending;
+        private boolean finished;
+
+        private Frame(Frame parent, int pos, int gpPos, long c, long a, long b, BitSet incompatibles) {
+            this.parent = parent;
+            this.pos = pos;
+            this.gpPos = gpPos;
+            this.isLong = true;
+            this.c = c;
+            this.a = a;
+            this.b = b;
+            this.incompatibles = incompatibles;
+        }
+
+        private Frame(Frame parent, int pos, int gpPos, BigInteger C, BigInteger A, BigInteger B, BitSet incompatibles) {
+            this.parent = parent;
+            this.pos = pos;
+            this.gpPos = gpPos;
+            this.isLong = (C.bitLength() < Long.SIZE) && (A.bitLength() < Long.SIZE) && (B.bitLength() < Long.SIZE);
+            this.c = isLong ? C.longValue() : 0;
+            this.a = isLong ? A.longValue() : 0;
+            this.b = isLong ? B.longValue() : 0;
+            this.C = C;
+            this.A = A;
+            this.B = B;
+            this.incompatibles = incompatibles;
+        }
+
+        private BigInteger getC() {
+            if (C == null) {
+                C = BigInteger.valueOf(c);
+            }
+            return C;
+        }
+
+        private BigInteger getA() {
+            if (A == null) {
+                A = BigInteger.valueOf(a);
+            }
+            return A;
+        }
+
+        private BigInteger getB() {
+            if (B == null) {
+                B = BigInteger.valueOf(b);
+            }
+            return B;
+        }
+    }
 }
@@ -0,0 +1,229 @@
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+// Takes units of distributed run from directory of Coordinator and solves them until all units are done.
+// Every unit is solved by new Solver with journal of the unit, so solver is created by solverFactory from journal,
+// journal is opened by journalFactory from its path.
+// Every lease has generation which is fencing token: the owner writes journal journals/<unit>.<generation> started as copy
+// of the latest previous one and marks unit as done only if the lease still has its generation, so writes and completion of
+// stale owner (whose lease was reassigned) don't touch journal of the current owner. Lease file has the same name for all
+// generations, so heartbeat touches it only while it's ours and release moves it to name of owner and generation before deletion
+public class Worker {
+    private static final Logger log = LoggerFactory.getLogger(Worker.class);
+
+    private final Path dir;
+    private final String id;
+    private final Function<Journal, Solver> solverFactory;
+    private final Function<Path, Journal> journalFactory;
+    private final long heartbeatMillis;
+
+    public Worker(Path dir, String id, Function<Journal, Solver> solverFactory, Function<Path, Journal> journalFactory, long heartbeatMillis) {
+        this.dir = dir;
+        this.id = id;
+        this.solverFactory = solverFactory;
+        this.journalFactory = journalFactory;
+        this.heartbeatMillis = heartbeatMillis;
+    }
+
+    // returns number of units solved by this worker
+    public int run() {
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor();
+        int solved = 0;
+        try {
+            while (true) {
+                List<Path> units = list("units");
+                if (Files.exists(dir.resolve("units")) && (list("done").size() >= units.size())) {
+                    break;
+                }
+                Path unit = null;
+                long generation = 0;
+                for (int i = 0; (i < units.size()) && (generation == 0); i++) {
+                    unit = units.get(i);
+                    generation = tryLease(unit.getFileName().toString());
+                }
+                if (generation == 0) {
+                    // all remaining units are leased, some of them can be reassigned later
+                    Thread.sleep(heartbeatMillis);
+                    continue;
+                }
+                String unitId = unit.getFileName().toString();
+                String owner = id + " " + generation;
+                Path lease = dir.resolve("leases").resolve(unitId);
+                var touch = heartbeat.scheduleAtFixedRate(() -> touch(lease, owner), heartbeatMillis, heartbeatMillis, TimeUnit.MILLISECONDS);
+                try {
+                    solve(unitId, generation, Files.readString(unit, StandardCharsets.UTF_8).strip());
+                } finally {
+                    touch.cancel(false);
+                }
+                // if lease was reassigned meanwhile, the unit is finished by new owner
+                if (isOwner(lease, owner)) {
+                    if (publish(dir.resolve("done").resolve(unitId), owner)) {
+                        solved++;
+                    }
+                    release(lease, generation, owner);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            heartbeat.shutdownNow();
+        }
+        log.info("Worker {} is finished, solved {} units", id, solved);
+        return solved;
+    }
+
+    private void solve(String unitId, long generation, String unit) {
+        log.info("Worker {} starts unit {} (lease generation {}): {}", id, unitId, generation, unit);
+        String[] parts = unit.split(" ");
+        Journal journal = journalFactory.apply(journal(unitId, generation));
+        try {
+            Solver solver = solverFactory.apply(journal);
+            if (parts[0].equals("subtree")) {
+                solver.solveUnit(parts[1], true, 0, 0);
+            } else {
+                solver.solveUnit(parts[1], false, Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+            }
+        } finally {
+            journal.close();
+        }
+    }
+
+    // returns generation of taken lease or 0 if unit is done or leased by other worker
+    private long tryLease(String unitId) throws IOException {
+        if (Files.exists(dir.resolve("done").resolve(unitId))) {
+            return 0;
+        }
+        long previous = lastGeneration(unitId);
+        long generation = previous + 1;
+        String owner = id + " " + generation;
+        Path lease = dir.resolve("leases").resolve(unitId);
+        if (!publish(lease, owner)) {
+            return 0;
+        }
+        try {
+            // unit could be finished between check and creation of lease
+            if (Files.exists(dir.resolve("done").resolve(unitId))) {
+                release(lease, generation, owner);
+                return 0;
+            }
+            if (previous > 0) {
+                Files.copy(journal(unitId, previous), journal(unitId, generation));
+            } else {
+                Files.createFile(journal(unitId, generation));
+            }
+            return generation;
+        } catch (FileAlreadyExistsException e) {
+            // journal of this generation is started by other worker, so its lease is older than ours and is lost
+            release(lease, generation, owner);
+            return 0;
+        }
+    }
+
+    private Path journal(String unitId, long generation) {
+        return dir.resolve("journals").resolve(unitId + "." + generation);
+    }
+
+    private long lastGeneration(String unitId) {
+        long last = 0;
+        String prefix = unitId + ".";
+        for (Path path : list("journals")) {
+            String name = path.getFileName().toString();
+            if (name.startsWith(prefix) && name.substring(prefix.length()).matches("[0-9]+")) {
+                last = Math.max(last, Long.parseLong(name.substring(prefix.length())));
+            }
+        }
+        return last;
+    }
+
+    // content is written to temporary file which is linked to target, so target appears only once and only with whole content.
+    // Returns false if target already exists
+    private static boolean publish(Path target, String content) throws IOException {
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+        try {
+            Files.writeString(tmp, content);
+            Files.createLink(target, tmp);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private boolean isOwner(Path lease, String owner) throws IOException {
+        try {
+            return Files.readString(lease, StandardCharsets.UTF_8).equals(owner);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    // lease is moved to name of its owner and generation first, so lease published by new owner between the check and deletion
+    // isn't deleted. If it was published before the move, it's linked back unless the unit is leased once more meanwhile
+    private void release(Path lease, long generation, String owner) throws IOException {
+        Path released = lease.resolveSibling(lease.getFileName() + "." + id + "." + generation + ".tmp");
+        try {
+            Files.move(lease, released, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        try {
+            if (!Files.readString(released, StandardCharsets.UTF_8).equals(owner)) {
+                Files.createLink(lease, released);
+            }
+        } catch (FileAlreadyExistsException e) {
+            log.warn("Lease {} is taken again while it was released, its previous owner {} loses it", lease,
+                    Files.readString(released, StandardCharsets.UTF_8));
+        } finally {
+            Files.deleteIfExists(released);
+        }
+    }
+
+    // exception cancels further runs of heartbeat, so stale owner doesn't refresh lease of the new one
+    private void touch(Path lease, String owner) {
+        boolean owned;
+        try {
+            owned = isOwner(lease, owner);
+            if (owned) {
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis()));
+            }
+        } catch (IOException e) {
+            log.warn("Cannot touch lease {}", lease, e);
+            return;
+        }
+        if (!owned) {
+            log.info("Worker {} lost lease {} ({}), heartbeat is stopped", id, lease, owner);
+            throw new IllegalStateException("Lease " + lease + " is lost by " + owner);
+        }
+    }
+
+    private List<Path> list(String sub) {
+        Path path = dir.resolve(sub);
+        if (!Files.exists(path)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(p -> !p.getFileName().toString().endsWith(".tmp")).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
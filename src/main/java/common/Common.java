@@ -40,6 +40,32 @@ public class Common {
         return (n.signum() >= 0) && (n.compareTo(mod) < 0) ? n : n.mod(mod);
     }
 
+    public static long sqrt(long n) {
+        assert n >= 0;
+        long r = (long) Math.sqrt(n);
+        while ((r > 0) && (r > n/r)) {
+            r--;
+        }
+        while (r+1 <= n/(r+1)) {
+            r++;
+        }
+        return r;
+    }
+
+    // floor of e-th root by Newton's iterations from above
+    public static BigInteger root(BigInteger n, int e) {
+        BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + e - 1) / e);
+        BigInteger E = BigInteger.valueOf(e);
+        BigInteger E1 = BigInteger.valueOf(e - 1);
+        while (true) {
+            BigInteger y = x.multiply(E1).add(n.divide(x.pow(e - 1))).divide(E);
+            if (y.compareTo(x) >= 0) {
+                return x;
+            }
+            x = y;
+        }
+    }
+
     public static BigInteger gcd(BigInteger a, BigInteger b) {
         assert a.signum() >= 0;
         assert b.signum() >= 0;
@@ -1,5 +1,7 @@
 package common;
 
+import org.apache.commons.math3.util.ArithmeticUtils;
+
 import java.math.BigInteger;
 import java.util.function.LongBinaryOperator;
 import java.util.function.LongUnaryOperator;
@@ -16,6 +18,10 @@ public class ModUtils {
             return 1;
         }
 
+        // Montgomery multiplication is cheaper than division in the simple multiplier too
+        if ((mod & 1) == 1) {
+            return powMontgomery(Common.mod(b, mod), n, mod);
+        }
         LongBinaryOperator multiplier = modMultiplier(mod);
         if (multiplier == null) {
             return BigInteger.valueOf(b).modPow(BigInteger.valueOf(n), BigInteger.valueOf(mod)).longValueExact();
@@ -39,6 +45,70 @@ public class ModUtils {
         return res;
     }
 
+    // b^n mod odd n without allocations, b < mod
+    private static long powMontgomery(long b, long n, long mod) {
+        long modInv = montgomeryInverse(mod);
+        long one = montgomeryOne(mod);
+        long t = montgomeryMultiply(b, montgomeryR2(one, mod), mod, modInv);
+        long res = one;
+        while (n > 0) {
+            if ((n&1) == 1) {
+                res = montgomeryMultiply(res, t, mod, modInv);
+            }
+            t = montgomeryMultiply(t, t, mod, modInv);
+            n >>= 1;
+        }
+        return montgomeryMultiply(res, 1, mod, modInv);
+    }
+
+    // 64-bit Montgomery form of odd n < 2^63: x is kept as x*2^64 mod n, product a*b/2^64 mod n fits unsigned long.
+    // Returns -n^(-1) mod 2^64, found by Newton's iterations
+    public static long montgomeryInverse(long n) {
+        assert (n & 1) == 1;
+        long inv = n;
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - n*inv;
+        }
+        return -inv;
+    }
+
+    // 1 in Montgomery form, i.e. 2^64 mod n
+    public static long montgomeryOne(long n) {
+        return Long.remainderUnsigned(-n, n);
+    }
+
+    // 2^128 mod n, multiplication by it converts x < n to Montgomery form
+    public static long montgomeryR2(long one, long n) {
+        if (one < (1L<<32)) {
+            return Long.remainderUnsigned(one*one, n);
+        }
+        long r = one;
+        for (int i = 0; i < 64; i++) {
+            r = addMod(r, r, n);
+        }
+        return r;
+    }
+
+    // a*b/2^64 mod n for a, b < n
+    public static long montgomeryMultiply(long a, long b, long n, long nInv) {
+        long lo = a*b;
+        long hi = Math.multiplyHigh(a, b);
+        long m = lo*nInv;
+        long r = hi + unsignedMultiplyHigh(m, n) + ((lo != 0) ? 1 : 0);
+        return (Long.compareUnsigned(r, n) >= 0) ? r - n : r;
+    }
+
+    // (a + b) mod n for a, b < n < 2^63
+    public static long addMod(long a, long b, long n) {
+        long r = a + b;
+        return (Long.compareUnsigned(r, n) >= 0) ? r - n : r;
+    }
+
+    // Math.unsignedMultiplyHigh of Java 18
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+
     public static long pow(long b, BigInteger n, long mod) {
         assert n.signum() >= 0;
         assert mod > 0;
@@ -85,27 +155,71 @@ public class ModUtils {
         }
     }
 
-    public static long modInverse(long a, long n) {
-        long[] xy = new long[2];
-        long gcd = gcdExt(a, n, xy);
-        if (gcd != 1) {
-            throw new IllegalArgumentException("Cannot invert " + a + " mod " + n);
+    // x such that x*x = a (mod p) for odd prime p by Tonelli-Shanks algorithm, -1 if a isn't quadratic residue
+    public static long sqrtMod(long a, long p) {
+        assert (p > 2) && (p < (1L<<31));
+        a = Common.mod(a, p);
+        if (a == 0) {
+            return 0;
+        }
+        if (pow(a, (p-1)/2, p) != 1) {
+            return -1;
+        }
+        if ((p&3) == 3) {
+            return pow(a, (p+1)/4, p);
         }
-        return Common.mod(xy[0], n);
+        long q = p-1;
+        int s = 0;
+        while ((q&1) == 0) {
+            q >>= 1;
+            s++;
+        }
+        long z = 2;
+        while (pow(z, (p-1)/2, p) != p-1) {
+            z++;
+        }
+        long c = pow(z, q, p);
+        long x = pow(a, (q+1)/2, p);
+        long t = pow(a, q, p);
+        int m = s;
+        while (t != 1) {
+            int i = 0;
+            long tt = t;
+            while (tt != 1) {
+                tt = (tt*tt) % p;
+                i++;
+            }
+            long b = c;
+            for (int j = 0; j < m-i-1; j++) {
+                b = (b*b) % p;
+            }
+            x = (x*b) % p;
+            c = (b*b) % p;
+            t = (t*c) % p;
+            m = i;
+        }
+        return x;
     }
 
-    private static long gcdExt(long a, long b, long[] xy) {
-        if (a == 0) {
-            xy[0] = 0;
-            xy[1] = 1;
-            return b;
-        }
-        long d = gcdExt(b%a, a, xy);
-        long x = xy[1] - (b/a)*xy[0];
-        long y = xy[0];
-        xy[0] = x;
-        xy[1] = y;
-        return d;
+    public static long modInverse(long a, long n) {
+        // iterative extended Euclid, only coefficient of a is tracked, it never exceeds n by absolute value
+        long r0 = n;
+        long r1 = Common.mod(a, n);
+        long t0 = 0;
+        long t1 = 1;
+        while (r1 != 0) {
+            long q = r0/r1;
+            long r = r0 - q*r1;
+            r0 = r1;
+            r1 = r;
+            long t = t0 - q*t1;
+            t0 = t1;
+            t1 = t;
+        }
+        if (r0 != 1) {
+            throw new IllegalArgumentException("Cannot invert " + a + " mod " + n);
+        }
+        return Common.mod(t0, n);
     }
 
     public static LongBinaryOperator modMultiplier(long mod) {
@@ -222,6 +336,39 @@ public class ModUtils {
         return new BigInteger[] {A, A.multiply(C).add(B).divide(P)};
     }
 
+    // long version of divideLinearSum(BigInteger, BigInteger, BigInteger)
+    // throws ArithmeticException if result or intermediate values don't fit into long
+    public static long[] divideLinearSum(long A, long B, long p) {
+        long[] result = new long[2];
+        return divideLinearSum(A, B, p, result) ? result : null;
+    }
+
+    // writes {a, b} to result, returns false if there are no such a and b
+    public static boolean divideLinearSum(long A, long B, long p, long[] result) {
+        assert A > 0;
+        assert B >= 0;
+        assert p > 0;
+
+        long ar = A%p;
+        long br = B%p;
+        if (ar == 0) {
+            if (br == 0) {
+                result[0] = A/p;
+                result[1] = B/p;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        long A_inv = modInverse(ar, p);
+        long pb = (br == 0) ? 0 : p-br;
+        long C = multiplyMod(pb, A_inv, p);
+        result[0] = A;
+        result[1] = Math.addExact(Math.multiplyExact(A, C), B) / p;
+        return true;
+    }
+
     // generalized Garner's algorithm for two pairs of numbers
     public static BigInteger[] merge(BigInteger A0, BigInteger B0, BigInteger A1, BigInteger B1) {
         assert A0.signum() > 0;
@@ -254,6 +401,49 @@ public class ModUtils {
         return new BigInteger[] {A, B};
     }
 
+    // long version of merge(BigInteger, BigInteger, BigInteger, BigInteger)
+    // throws ArithmeticException if result doesn't fit into long
+    public static long[] merge(long A0, long B0, long A1, long B1) {
+        long[] result = new long[2];
+        return merge(A0, B0, A1, B1, result) ? result : null;
+    }
+
+    // writes {A, B} to result, returns false if pairs are incompatible
+    public static boolean merge(long A0, long B0, long A1, long B1, long[] result) {
+        assert A0 > 0;
+        assert B0 >= 0;
+
+        assert A1 > 0;
+        assert B1 >= 0;
+
+        if (A0 == 1) {
+            result[0] = A1;
+            result[1] = B1;
+            return true;
+        }
+        if (A1 == 1) {
+            result[0] = A0;
+            result[1] = B0;
+            return true;
+        }
+
+        long gcd = ArithmeticUtils.gcd(A0, A1);
+        if (B0%gcd != B1%gcd) {
+            return false;
+        }
+        rebalanceDivisors(A0, A1, gcd, result);
+
+        long a0 = result[0];
+        long b0 = (a0 == A0) ? B0 : B0%a0;
+        long a1 = result[1];
+        long b1 = (a1 == A1) ? B1 : B1%a1;
+
+        long x = multiplyMod(Common.mod(b1-b0, a1), modInverse(a0%a1, a1), a1);
+        result[0] = Math.multiplyExact(a0, a1);
+        result[1] = Math.addExact(Math.multiplyExact(x, a0), b0);
+        return true;
+    }
+
     // returns such {a, b} that:
     // 1) a*b = lcm(A, B)
     // 2) gcd(a, b) = 1
@@ -279,6 +469,56 @@ public class ModUtils {
         return new BigInteger[] {A.divide(As), B.divide(Bs)};
     }
 
+    // long version of rebalanceDivisors(BigInteger, BigInteger, BigInteger)
+    public static long[] rebalanceDivisors(long A, long B, long gcd) {
+        long[] result = new long[2];
+        rebalanceDivisors(A, B, gcd, result);
+        return result;
+    }
+
+    public static void rebalanceDivisors(long A, long B, long gcd, long[] result) {
+        assert A > 0;
+        assert B > 0;
+        if (gcd == 1) {
+            result[0] = A;
+            result[1] = B;
+            return;
+        }
+
+        long prev = 1;
+        long next = gcdWithSquare(A, gcd) / gcd;
+        while (prev != next) {
+            prev = next;
+            next = gcdWithSquare(A, prev);
+        }
+
+        long Bs = ArithmeticUtils.gcd(gcd, next);
+        long As = gcd / Bs;
+        result[0] = A/As;
+        result[1] = B/Bs;
+    }
+
+    // gcd(A, x*x) without calculating x*x which can overflow
+    private static long gcdWithSquare(long A, long x) {
+        long g = ArithmeticUtils.gcd(A, x);
+        return g * ArithmeticUtils.gcd(A/g, x);
+    }
+
+    public static long multiplyMod(long a, long b, long mod) {
+        assert a >= 0;
+        assert b >= 0;
+        assert mod > 0;
+        long low = a*b;
+        if ((Math.multiplyHigh(a, b) == 0) && (low >= 0)) {
+            return low%mod;
+        }
+        LongBinaryOperator multiplier = modMultiplier(mod);
+        if (multiplier != null) {
+            return multiplier.applyAsLong(a%mod, b%mod);
+        }
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b)).mod(BigInteger.valueOf(mod)).longValueExact();
+    }
+
     public static long restoreByCRT(long[] p, long[] r) {
         long result = 0;
         long mult = 1;
@@ -0,0 +1,224 @@
+package common;
+
+import java.math.BigInteger;
+
+// Arithmetic modulo odd N in Montgomery form a*R mod N, R = 2^(64*limbs). Numbers are little-endian arrays of unsigned 64-bit limbs
+// of fixed length, so operations don't allocate. Not thread-safe: multiplication uses internal buffer
+public class MontgomeryMod {
+    private final BigInteger N;
+    private final int limbs;
+    private final long[] mod;
+    private final long modInverse;
+    private final long[] buf;
+
+    public MontgomeryMod(BigInteger N) {
+        assert N.signum() > 0;
+        assert N.testBit(0);
+        this.N = N;
+        this.limbs = (N.bitLength() + 63) / 64;
+        this.mod = toLimbs(N, limbs);
+        // -N^(-1) mod 2^64 by Newton's iterations, every iteration doubles number of correct bits
+        long inv = mod[0];
+        for (int i = 0; i < 5; i++) {
+            inv *= 2 - mod[0]*inv;
+        }
+        this.modInverse = -inv;
+        this.buf = new long[limbs + 2];
+    }
+
+    public BigInteger getMod() {
+        return N;
+    }
+
+    public long[] create() {
+        return new long[limbs];
+    }
+
+    // x*R mod N
+    public long[] toMontgomery(BigInteger x) {
+        return toLimbs(x.shiftLeft(64*limbs).mod(N));
+    }
+
+    public BigInteger fromMontgomery(long[] a) {
+        return toBigInteger(a).multiply(BigInteger.ONE.shiftLeft(64*limbs).modInverse(N)).mod(N);
+    }
+
+    // plain value of limbs, gcd of it with N is the same as gcd of represented number since R is coprime with N
+    public BigInteger toBigInteger(long[] a) {
+        byte[] bytes = new byte[8*limbs + 1];
+        for (int i = 0; i < limbs; i++) {
+            long x = a[i];
+            for (int j = 0; j < 8; j++) {
+                bytes[bytes.length - 1 - 8*i - j] = (byte) (x >>> (8*j));
+            }
+        }
+        return new BigInteger(bytes);
+    }
+
+    public long[] toLimbs(BigInteger x) {
+        assert (x.signum() >= 0) && (x.compareTo(N) < 0);
+        return toLimbs(x, limbs);
+    }
+
+    private static long[] toLimbs(BigInteger x, int limbs) {
+        long[] result = new long[limbs];
+        for (int i = 0; i < limbs; i++) {
+            result[i] = x.shiftRight(64*i).longValue();
+        }
+        return result;
+    }
+
+    public void set(long[] a, long[] result) {
+        System.arraycopy(a, 0, result, 0, limbs);
+    }
+
+    // result = a*b/R mod N, result can be the same array as a or b
+    public void multiply(long[] a, long[] b, long[] result) {
+        long[] t = buf;
+        for (int i = 0; i < t.length; i++) {
+            t[i] = 0;
+        }
+        for (int i = 0; i < limbs; i++) {
+            long bi = b[i];
+            long c = 0;
+            for (int j = 0; j < limbs; j++) {
+                long lo = a[j]*bi;
+                long hi = unsignedMultiplyHigh(a[j], bi);
+                lo += t[j];
+                if (Long.compareUnsigned(lo, t[j]) < 0) {
+                    hi++;
+                }
+                lo += c;
+                if (Long.compareUnsigned(lo, c) < 0) {
+                    hi++;
+                }
+                t[j] = lo;
+                c = hi;
+            }
+            long s = t[limbs] + c;
+            t[limbs + 1] = (Long.compareUnsigned(s, c) < 0) ? 1 : 0;
+            t[limbs] = s;
+
+            long m = t[0]*modInverse;
+            c = unsignedMultiplyHigh(m, mod[0]);
+            long lo0 = m*mod[0];
+            if (Long.compareUnsigned(lo0 + t[0], lo0) < 0) {
+                c++;
+            }
+            for (int j = 1; j < limbs; j++) {
+                long lo = m*mod[j];
+                long hi = unsignedMultiplyHigh(m, mod[j]);
+                lo += t[j];
+                if (Long.compareUnsigned(lo, t[j]) < 0) {
+                    hi++;
+                }
+                lo += c;
+                if (Long.compareUnsigned(lo, c) < 0) {
+                    hi++;
+                }
+                t[j-1] = lo;
+                c = hi;
+            }
+            s = t[limbs] + c;
+            t[limbs - 1] = s;
+            t[limbs] = t[limbs + 1] + ((Long.compareUnsigned(s, c) < 0) ? 1 : 0);
+        }
+        if ((t[limbs] != 0) || (compare(t, mod) >= 0)) {
+            subtractLimbs(t, mod, result);
+        } else {
+            System.arraycopy(t, 0, result, 0, limbs);
+        }
+    }
+
+    // result = a+b mod N
+    public void add(long[] a, long[] b, long[] result) {
+        long carry = 0;
+        for (int i = 0; i < limbs; i++) {
+            long s = a[i] + b[i];
+            long c = (Long.compareUnsigned(s, a[i]) < 0) ? 1 : 0;
+            s += carry;
+            c += (Long.compareUnsigned(s, carry) < 0) ? 1 : 0;
+            result[i] = s;
+            carry = c;
+        }
+        if ((carry != 0) || (compare(result, mod) >= 0)) {
+            subtractLimbs(result, mod, result);
+        }
+    }
+
+    // result = a-b mod N
+    public void subtract(long[] a, long[] b, long[] result) {
+        if (subtractLimbs(a, b, result) != 0) {
+            long carry = 0;
+            for (int i = 0; i < limbs; i++) {
+                long s = result[i] + mod[i];
+                long c = (Long.compareUnsigned(s, result[i]) < 0) ? 1 : 0;
+                s += carry;
+                c += (Long.compareUnsigned(s, carry) < 0) ? 1 : 0;
+                result[i] = s;
+                carry = c;
+            }
+        }
+    }
+
+    // result = V_k(P) for Lucas sequence V_0 = 2, V_1 = P, V_(n+1) = P*V_n - V_(n-1), all in Montgomery form.
+    // Ladder keeps pair (V_j, V_(j+1)): V_2j = V_j^2 - 2, V_(2j+1) = V_j*V_(j+1) - P
+    public void lucasV(long[] P, BigInteger k, long[] result) {
+        long[] p = P.clone();
+        long[] two = toMontgomery(BigInteger.TWO);
+        long[] a = two.clone();
+        long[] b = P.clone();
+        for (int i = k.bitLength() - 1; i >= 0; i--) {
+            if (k.testBit(i)) {
+                multiply(a, b, a);
+                subtract(a, p, a);
+                multiply(b, b, b);
+                subtract(b, two, b);
+            } else {
+                multiply(a, b, b);
+                subtract(b, p, b);
+                multiply(a, a, a);
+                subtract(a, two, a);
+            }
+        }
+        set(a, result);
+    }
+
+    public boolean isZero(long[] a) {
+        for (int i = 0; i < limbs; i++) {
+            if (a[i] != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // plain subtraction of first limbs numbers, returns borrow
+    private long subtractLimbs(long[] a, long[] b, long[] result) {
+        long borrow = 0;
+        for (int i = 0; i < limbs; i++) {
+            long d = a[i] - b[i];
+            long nb = (Long.compareUnsigned(a[i], b[i]) < 0) ? 1 : 0;
+            if (Long.compareUnsigned(d, borrow) < 0) {
+                nb++;
+            }
+            result[i] = d - borrow;
+            borrow = nb;
+        }
+        return borrow;
+    }
+
+    private int compare(long[] a, long[] b) {
+        for (int i = limbs-1; i >= 0; i--) {
+            int c = Long.compareUnsigned(a[i], b[i]);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static long unsignedMultiplyHigh(long a, long b) {
+        return Math.multiplyHigh(a, b) + ((a >> 63) & b) + ((b >> 63) & a);
+    }
+}
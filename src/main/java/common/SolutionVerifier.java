@@ -0,0 +1,63 @@
+package common;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+
+// Checks base^N = target (mod N) when prime factorization of N (or of its part) is known.
+// Congruence holds modulo N iff it holds modulo every prime power p^k of N, and for p not dividing base
+// exponent can be reduced modulo phi(p^k) = p^(k-1)*(p-1), so instead of one modPow with huge exponent and modulus
+// there are several small ones. Only unfactored cofactor (coprime with known primes) needs full exponent
+public class SolutionVerifier {
+    private final BigInteger base;
+    private final BigInteger target;
+    private final long baseLong;
+    private final long targetLong;
+
+    public SolutionVerifier(long base, long target) {
+        assert base >= 2;
+        this.base = BigInteger.valueOf(base);
+        this.target = BigInteger.valueOf(target);
+        this.baseLong = base;
+        this.targetLong = target;
+    }
+
+    public boolean verify(BigInteger N, Collection<BigInteger> primeFactors) {
+        return verify(N, primeFactors, BigInteger.ONE);
+    }
+
+    // N = cofactor * (product of primeFactors), prime factors can repeat
+    public boolean verify(BigInteger N, Collection<BigInteger> primeFactors, BigInteger cofactor) {
+        BigInteger[] primes = primeFactors.toArray(BigInteger[]::new);
+        Arrays.sort(primes);
+        for (int i = 0; i < primes.length; ) {
+            int j = i+1;
+            while ((j < primes.length) && primes[j].equals(primes[i])) {
+                j++;
+            }
+            if (!verifyPrimePower(N, primes[i], j-i)) {
+                return false;
+            }
+            i = j;
+        }
+        if (cofactor.equals(BigInteger.ONE)) {
+            return true;
+        }
+        return base.modPow(N, cofactor).equals(Common.mod(target, cofactor));
+    }
+
+    private boolean verifyPrimePower(BigInteger N, BigInteger p, int k) {
+        BigInteger q = p.pow(k);
+        if (base.mod(p).signum() == 0) {
+            // N >= q > k, so base^N = 0 (mod q)
+            return Common.mod(target, q).signum() == 0;
+        }
+        BigInteger phi = p.pow(k-1).multiply(p.subtract(BigInteger.ONE));
+        if (q.compareTo(Common.MAX_LONG) <= 0) {
+            long qLong = q.longValueExact();
+            long e = N.mod(phi).longValueExact();
+            return ModUtils.pow(baseLong, e, qLong) == Common.mod(targetLong, qLong);
+        }
+        return base.modPow(N.mod(phi), q).equals(Common.mod(target, q));
+    }
+}
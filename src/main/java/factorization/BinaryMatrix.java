@@ -0,0 +1,98 @@
+package factorization;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+// Linear algebra over GF(2) for sieve factorizers: row i is array of columns where i-th relation has odd exponent.
+// Structured elimination removes rows with column which isn't met in other rows (they can't be in dependency),
+// then dense Gaussian elimination with identity part finds sets of rows whose columns sum to zero
+class BinaryMatrix {
+
+    // returns dependencies as arrays of row indices, at most extraRows more rows than active columns are used
+    static List<int[]> findDependencies(List<int[]> rows, int columnsNumber, int extraRows) {
+        boolean[] active = new boolean[rows.size()];
+        Arrays.fill(active, true);
+        int[] weight = new int[columnsNumber];
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Arrays.fill(weight, 0);
+            for (int i = 0; i < rows.size(); i++) {
+                if (active[i]) {
+                    for (int c : rows.get(i)) {
+                        weight[c]++;
+                    }
+                }
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                if (active[i] && Arrays.stream(rows.get(i)).anyMatch(c -> weight[c] == 1)) {
+                    active[i] = false;
+                    changed = true;
+                }
+            }
+        }
+        int[] columnIdx = new int[columnsNumber];
+        int activeColumns = 0;
+        for (int c = 0; c < columnsNumber; c++) {
+            columnIdx[c] = (weight[c] > 0) ? activeColumns++ : -1;
+        }
+        int[] selected = IntStream.range(0, rows.size()).filter(i -> active[i]).limit(activeColumns + extraRows).toArray();
+        if (selected.length <= activeColumns) {
+            return List.of();
+        }
+
+        int matrixWords = (activeColumns + 63) / 64;
+        int words = matrixWords + (selected.length + 63) / 64;
+        long[][] matrix = new long[selected.length][words];
+        for (int r = 0; r < selected.length; r++) {
+            for (int c : rows.get(selected[r])) {
+                int col = columnIdx[c];
+                matrix[r][col >> 6] |= 1L << (col & 63);
+            }
+            int id = matrixWords * 64 + r;
+            matrix[r][id >> 6] |= 1L << (id & 63);
+        }
+        int rank = 0;
+        for (int col = 0; col < activeColumns; col++) {
+            int w = col >> 6;
+            long bit = 1L << (col & 63);
+            int pivot = -1;
+            for (int r = rank; r < matrix.length; r++) {
+                if ((matrix[r][w] & bit) != 0) {
+                    pivot = r;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                continue;
+            }
+            long[] t = matrix[pivot];
+            matrix[pivot] = matrix[rank];
+            matrix[rank] = t;
+            for (int r = rank+1; r < matrix.length; r++) {
+                if ((matrix[r][w] & bit) != 0) {
+                    long[] row = matrix[r];
+                    for (int j = w; j < words; j++) {
+                        row[j] ^= t[j];
+                    }
+                }
+            }
+            rank++;
+        }
+
+        List<int[]> dependencies = new ArrayList<>();
+        for (int r = rank; r < matrix.length; r++) {
+            IntStream.Builder dependency = IntStream.builder();
+            for (int i = 0; i < selected.length; i++) {
+                int id = matrixWords * 64 + i;
+                if ((matrix[r][id >> 6] & (1L << (id & 63))) != 0) {
+                    dependency.add(selected[i]);
+                }
+            }
+            dependencies.add(dependency.build().toArray());
+        }
+        return dependencies;
+    }
+}
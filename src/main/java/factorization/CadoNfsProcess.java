@@ -0,0 +1,75 @@
+package factorization;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Runs CADO-NFS (lattice siever, filtering, linear algebra and square root) for N with given polynomial pair instead of its own
+// polynomial selection. CADO-NFS prints found prime factors separated by spaces in the last line of output
+public class CadoNfsProcess {
+    private static final String CADO_NFS_PARAM = "cadonfs.path";
+    private static final Logger log = LoggerFactory.getLogger(CadoNfsProcess.class);
+
+    // CADO-NFS is optional backend of SnfsFactorizer, it's used only if path to it is given
+    public static boolean isAvailable() {
+        return System.getProperty(CADO_NFS_PARAM) != null;
+    }
+
+    public static List<BigInteger> factorize(BigInteger N, SnfsPolynomial polynomial, int threadsNumber) {
+        String cadoNfsPath = System.getProperty(CADO_NFS_PARAM);
+        if (cadoNfsPath == null) {
+            throw new IllegalStateException("VM option -D" + CADO_NFS_PARAM + " with path to cado-nfs.py is not found. Cannot use SNFS for factorization");
+        }
+        Path polyFile = null;
+        Path outputFile = null;
+        Process process = null;
+        try {
+            polyFile = Files.createTempFile("snfs", ".poly");
+            outputFile = Files.createTempFile("snfs", ".out");
+            Files.writeString(polyFile, polynomial.toCadoFormat(N));
+            // output goes to file, so waiting for process can be interrupted
+            process = new ProcessBuilder(cadoNfsPath, N.toString(), "-t", String.valueOf(threadsNumber), "tasks.polyselect.import=" + polyFile)
+                    .redirectOutput(outputFile.toFile()).redirectError(ProcessBuilder.Redirect.DISCARD).start();
+            int exitCode = process.waitFor();
+            String lastLine = Files.readAllLines(outputFile).stream().filter(line -> !line.isBlank()).reduce((a, b) -> b).orElse(null);
+            if ((exitCode != 0) || (lastLine == null)) {
+                log.warn("CADO-NFS failed to factorize {} with polynomial {}", N, polynomial);
+                return null;
+            }
+            List<BigInteger> factors = new ArrayList<>();
+            for (String s : lastLine.strip().split("\\s+")) {
+                factors.add(new BigInteger(s));
+            }
+            return factors;
+        } catch (InterruptedException e) {
+            // factorization is stopped from outside
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException | NumberFormatException e) {
+            throw new RuntimeException("Exception while trying to factorize " + N + " with CADO-NFS", e);
+        } finally {
+            if (process != null) {
+                process.descendants().forEach(ProcessHandle::destroy);
+                process.destroy();
+            }
+            deleteFile(polyFile);
+            deleteFile(outputFile);
+        }
+    }
+
+    private static void deleteFile(Path file) {
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Cannot delete {}", file, e);
+            }
+        }
+    }
+}
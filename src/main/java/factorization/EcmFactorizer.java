@@ -0,0 +1,312 @@
+package factorization;
+
+import common.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Elliptic curve method on Montgomery curves By^2 = x^3 + Ax^2 + x with Suyama's parametrization, only X:Z coordinates are used.
+// Stage 1 multiplies point by product of all prime powers up to B1, this product is calculated once and shared by all curves.
+// Stage 2 is baby-step giant-step continuation: every prime q in (B1; B2] is q = v*D +- u, so [q]Q = O (mod p) means that
+// [vD]Q and [u]Q have the same x-coordinate and p divides X(vD)*Z(u) - X(u)*Z(vD); pairs (v, u) are also calculated once.
+// Curves are run in parallel on executor, the first found factor cancels the rest
+public class EcmFactorizer extends Factorizer {
+    private static final Logger log = LoggerFactory.getLogger(EcmFactorizer.class);
+
+    private static final int D = 2310;
+    private static final int interruptCheckPeriod = 1024;
+
+    private final int curves;
+    private final TaskExecutor executor;
+
+    private final BigInteger stage1Multiplier;
+    private final long[] stage1Primes;
+    // baby steps are u in [1; D/2] coprime with D, babyIdx[u] is index of u among them
+    private final int[] babySteps;
+    private final int[] babyIdx;
+    // giant steps are v in [vMin; vMin + stage2Pairs.length), stage2Pairs[v - vMin] are indices of baby steps paired with v
+    private final long vMin;
+    private final int[][] stage2Pairs;
+
+    public EcmFactorizer(Primes primes, long B1, long B2, int curves, TaskExecutor executor, int primeTestCertainty) {
+        super(primeTestCertainty, executor);
+        assert (B1 >= 2) && (B2 >= B1) && (curves > 0);
+        this.curves = curves;
+        this.executor = executor;
+
+        long startTime = System.currentTimeMillis();
+        BigInteger multiplier = BigInteger.ONE;
+        this.stage1Primes = new long[primes.floorIdx(B1) + 1];
+        for (int i = 0; i < stage1Primes.length; i++) {
+            long p = primes.get(i);
+            stage1Primes[i] = p;
+            long pk = p;
+            while (pk <= B1 / p) {
+                pk *= p;
+            }
+            multiplier = multiplier.multiply(BigInteger.valueOf(pk));
+        }
+        this.stage1Multiplier = multiplier;
+
+        List<Integer> baby = new ArrayList<>();
+        this.babyIdx = new int[D/2 + 1];
+        for (int u = 1; u <= D/2; u++) {
+            babyIdx[u] = -1;
+            if (BigInteger.valueOf(u).gcd(BigInteger.valueOf(D)).equals(BigInteger.ONE)) {
+                babyIdx[u] = baby.size();
+                baby.add(u);
+            }
+        }
+        this.babySteps = baby.stream().mapToInt(Integer::intValue).toArray();
+
+        this.vMin = Math.max(1, (B1 + D/2) / D);
+        long vMax = Math.max(vMin, (B2 + D/2) / D);
+        List<List<Integer>> pairs = new ArrayList<>();
+        for (long v = vMin; v <= vMax; v++) {
+            pairs.add(new ArrayList<>());
+        }
+        int firstIdx = primes.floorIdx(B1) + 1;
+        if ((firstIdx < primes.size()) && (primes.get(primes.size()-1) < B2)) {
+            log.warn("Primes are generated up to {} only, so stage 2 of ECM is limited by it instead of {}", primes.get(primes.size()-1), B2);
+        }
+        for (int i = firstIdx; (i < primes.size()) && (primes.get(i) <= B2); i++) {
+            long q = primes.get(i);
+            long v = (q + D/2) / D;
+            int u = (int) Math.abs(q - v*D);
+            if ((v >= vMin) && (babyIdx[u] >= 0)) {
+                pairs.get((int) (v - vMin)).add(babyIdx[u]);
+            }
+        }
+        this.stage2Pairs = pairs.stream().map(l -> l.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+        log.info("ECM is initialized in {}ms with B1={}, B2={}: stage 1 multiplier has {} bits, stage 2 has {} giant steps",
+                System.currentTimeMillis() - startTime, B1, B2, stage1Multiplier.bitLength(), stage2Pairs.length);
+    }
+
+    @Override
+    protected Factorization factorizeInternal(BigInteger N) {
+        BigInteger divisor = findDivisor(N);
+        if (divisor == null) {
+            return Factorization.fromSingleFactor(N, false);
+        }
+        return processDivisor(divisor, N, this::factorizeInternal);
+    }
+
+    public BigInteger findDivisor(BigInteger N) {
+        assert N.compareTo(BigInteger.ONE) > 0;
+        BigInteger small = findSmallDivisor(N);
+        if (small != null) {
+            return small;
+        }
+        AtomicReference<BigInteger> found = new AtomicReference<>();
+        int tasksNumber = Math.min(curves, executor.getThreadsNumber());
+        List<Future<BigInteger>> tasks = new ArrayList<>();
+        for (int t = 0; t < tasksNumber; t++) {
+            int first = t;
+            tasks.add(executor.submit(() -> {
+                for (int curve = first; (curve < curves) && (found.get() == null); curve += tasksNumber) {
+                    BigInteger d = runCurve(N, curve, found);
+                    if (d != null) {
+                        found.compareAndSet(null, d);
+                        break;
+                    }
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                }
+                return found.get();
+            }));
+        }
+
+        try {
+            for (Future<BigInteger> task : tasks) {
+                BigInteger d = task.get();
+                if (d != null) {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            // factorization is stopped from outside
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException | CancellationException e) {
+            throw new RuntimeException(e);
+        }
+        tasks.forEach(task -> task.cancel(true));
+        return found.get();
+    }
+
+    // runs curves [firstCurve; firstCurve+curvesNumber) one after another in current thread
+    public BigInteger findDivisor(BigInteger N, int firstCurve, int curvesNumber) {
+        assert N.compareTo(BigInteger.ONE) > 0;
+        BigInteger small = findSmallDivisor(N);
+        if (small != null) {
+            return small;
+        }
+        AtomicReference<BigInteger> found = new AtomicReference<>();
+        for (int curve = firstCurve; (curve < firstCurve + curvesNumber) && !Thread.currentThread().isInterrupted(); curve++) {
+            BigInteger d = runCurve(N, curve, found);
+            if (d != null) {
+                return d;
+            }
+        }
+        return null;
+    }
+
+    private BigInteger findSmallDivisor(BigInteger N) {
+        if (!N.testBit(0)) {
+            return BigInteger.TWO;
+        }
+        // prime factors up to B1 are found by every curve at once, so they are separated before
+        BigInteger smooth = N.gcd(stage1Multiplier);
+        if (!smooth.equals(BigInteger.ONE)) {
+            if (smooth.compareTo(N) < 0) {
+                return smooth;
+            }
+            for (long p : stage1Primes) {
+                if (N.mod(BigInteger.valueOf(p)).signum() == 0) {
+                    return BigInteger.valueOf(p);
+                }
+            }
+        }
+        return null;
+    }
+
+    // returns proper divisor of N or null
+    private BigInteger runCurve(BigInteger N, int curve, AtomicReference<BigInteger> found) {
+        Random random = new Random(N.hashCode() * 31L + curve);
+        BigInteger sigma = BigInteger.valueOf(6 + random.nextInt(Integer.MAX_VALUE - 6));
+        BigInteger u = sigma.multiply(sigma).subtract(BigInteger.valueOf(5)).mod(N);
+        BigInteger v = sigma.shiftLeft(2).mod(N);
+        BigInteger u3 = u.pow(3).mod(N);
+        BigInteger v3 = v.pow(3).mod(N);
+        BigInteger denominator = u3.multiply(v).shiftLeft(4).mod(N);
+        BigInteger gcd = denominator.gcd(N);
+        if (!gcd.equals(BigInteger.ONE)) {
+            return gcd.equals(N) ? null : gcd;
+        }
+        // a24 = (A+2)/4 = (v-u)^3 * (3u+v) / (16 * u^3 * v)
+        BigInteger a24 = v.subtract(u).pow(3).multiply(u.multiply(BigInteger.valueOf(3)).add(v)).mod(N)
+                .multiply(denominator.modInverse(N)).mod(N);
+        Curve c = new Curve(N, a24);
+
+        BigInteger[] Q = c.multiply(new BigInteger[] {u3, v3}, stage1Multiplier, found);
+        if (Q == null) {
+            return null;
+        }
+        gcd = Q[1].gcd(N);
+        if (!gcd.equals(BigInteger.ONE)) {
+            return gcd.equals(N) ? null : gcd;
+        }
+        return stage2(c, Q, found);
+    }
+
+    private BigInteger stage2(Curve c, BigInteger[] Q, AtomicReference<BigInteger> found) {
+        BigInteger N = c.N;
+        // baby steps: odd multiples [u]Q for u <= D/2
+        BigInteger[][] baby = new BigInteger[babySteps.length][];
+        BigInteger[] Q2 = c.dbl(Q);
+        BigInteger[] prev = Q;
+        BigInteger[] cur = c.add(Q2, Q, Q);
+        if (babyIdx[1] >= 0) {
+            baby[babyIdx[1]] = Q;
+        }
+        for (int k = 3; k <= D/2; k += 2) {
+            if (babyIdx[k] >= 0) {
+                baby[babyIdx[k]] = cur;
+            }
+            BigInteger[] next = c.add(cur, Q2, prev);
+            prev = cur;
+            cur = next;
+        }
+
+        // giant steps: [vD]Q for v = vMin, vMin+1, ...
+        BigInteger[] G = c.multiply(Q, BigInteger.valueOf(D), found);
+        if (G == null) {
+            return null;
+        }
+        BigInteger[][] ladder = c.ladder(G, BigInteger.valueOf(vMin), found);
+        if (ladder == null) {
+            return null;
+        }
+        BigInteger[] giant = ladder[0];
+        BigInteger[] nextGiant = ladder[1];
+        BigInteger g = BigInteger.ONE;
+        for (int i = 0; i < stage2Pairs.length; i++) {
+            if (((i % interruptCheckPeriod) == 0) && ((found.get() != null) || Thread.currentThread().isInterrupted())) {
+                return null;
+            }
+            for (int idx : stage2Pairs[i]) {
+                BigInteger[] b = baby[idx];
+                g = g.multiply(giant[0].multiply(b[1]).subtract(b[0].multiply(giant[1]))).mod(N);
+            }
+            BigInteger[] next = c.add(nextGiant, G, giant);
+            giant = nextGiant;
+            nextGiant = next;
+        }
+        BigInteger gcd = g.gcd(N);
+        return (gcd.equals(BigInteger.ONE) || gcd.equals(N)) ? null : gcd;
+    }
+
+    private static class Curve {
+        private final BigInteger N;
+        private final BigInteger a24;
+
+        private Curve(BigInteger N, BigInteger a24) {
+            this.N = N;
+            this.a24 = a24;
+        }
+
+        private BigInteger[] dbl(BigInteger[] P) {
+            BigInteger s = P[0].add(P[1]);
+            BigInteger d = P[0].subtract(P[1]);
+            BigInteger ss = s.multiply(s).mod(N);
+            BigInteger dd = d.multiply(d).mod(N);
+            BigInteger t = ss.subtract(dd);
+            return new BigInteger[] {ss.multiply(dd).mod(N), t.multiply(dd.add(a24.multiply(t))).mod(N)};
+        }
+
+        // P + Q where diff = P - Q
+        private BigInteger[] add(BigInteger[] P, BigInteger[] Q, BigInteger[] diff) {
+            BigInteger a = P[0].subtract(P[1]).multiply(Q[0].add(Q[1])).mod(N);
+            BigInteger b = P[0].add(P[1]).multiply(Q[0].subtract(Q[1])).mod(N);
+            BigInteger s = a.add(b);
+            BigInteger d = a.subtract(b);
+            return new BigInteger[] {diff[1].multiply(s.multiply(s)).mod(N), diff[0].multiply(d.multiply(d)).mod(N)};
+        }
+
+        private BigInteger[] multiply(BigInteger[] P, BigInteger k, AtomicReference<BigInteger> found) {
+            BigInteger[][] result = ladder(P, k, found);
+            return (result != null) ? result[0] : null;
+        }
+
+        // Montgomery ladder, returns [k]P and [k+1]P, or null if it's stopped
+        private BigInteger[][] ladder(BigInteger[] P, BigInteger k, AtomicReference<BigInteger> found) {
+            assert k.signum() > 0;
+            BigInteger[] R0 = P;
+            BigInteger[] R1 = dbl(P);
+            for (int i = k.bitLength() - 2; i >= 0; i--) {
+                if (((i % interruptCheckPeriod) == 0) && ((found.get() != null) || Thread.currentThread().isInterrupted())) {
+                    return null;
+                }
+                if (k.testBit(i)) {
+                    R0 = add(R1, R0, P);
+                    R1 = dbl(R1);
+                } else {
+                    R1 = add(R1, R0, P);
+                    R0 = dbl(R0);
+                }
+            }
+            return new BigInteger[][] {R0, R1};
+        }
+    }
+}
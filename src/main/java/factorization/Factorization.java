@@ -1,12 +1,17 @@
 package factorization;
 
+import common.TaskExecutor;
+
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Objects;
+import java.util.List;
 import java.util.Set;
-import java.util.function.BinaryOperator;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
 import java.util.stream.Stream;
@@ -28,13 +33,110 @@ public class Factorization {
         return new Factorization(primeFactors.stream().sorted().toArray(BigInteger[]::new), Set.of());
     }
 
+    public static Factorization fromFactors(Collection<BigInteger> factors, Collection<BigInteger> composites) {
+        return new Factorization(factors.stream().sorted().toArray(BigInteger[]::new), Set.copyOf(composites));
+    }
+
     public static Factorization multiply(Factorization a, Factorization b) {
         return new Factorization(Stream.concat(Arrays.stream(a.factors), Arrays.stream(b.factors)).sorted().toArray(BigInteger[]::new),
                 Stream.concat(a.composites.stream(), b.composites.stream()).collect(Collectors.toUnmodifiableSet()));
     }
 
     public void forEachDivisor(Consumer<BigInteger> consumer) {
-        forEachDivisor(factors, consumer);
+        forEachDivisor((BigInteger) null, consumer);
+    }
+
+    // divisors greater than limit (if it's not null) are skipped; as factors are sorted, branch of enumeration is cut
+    // as soon as running product multiplied by the next factor exceeds limit
+    public void forEachDivisor(BigInteger limit, Consumer<BigInteger> consumer) {
+        forEachDivisorWithFactors(limit, (d, f) -> consumer.accept(d));
+    }
+
+    public void forEachDivisorWithFactors(BiConsumer<BigInteger, List<BigInteger>> consumer) {
+        forEachDivisorWithFactors(null, consumer);
+    }
+
+    // same as forEachDivisor() but factors of every divisor are also given;
+    // list of factors is reused between calls, so consumer shouldn't keep it
+    public void forEachDivisorWithFactors(BigInteger limit, BiConsumer<BigInteger, List<BigInteger>> consumer) {
+        if ((limit != null) && (limit.signum() <= 0)) {
+            return;
+        }
+        forEachDivisor(factors, 0, factors.length, BigInteger.ONE, limit, new ArrayList<>(), consumer);
+    }
+
+    // enumeration is split into tasks by exponents of the smallest factors, consumer is called from executor threads
+    public void forEachDivisorWithFactors(BigInteger limit, TaskExecutor executor, BiConsumer<BigInteger, List<BigInteger>> consumer) {
+        if ((limit != null) && (limit.signum() <= 0)) {
+            return;
+        }
+        int tasksNumber = 4 * executor.getThreadsNumber();
+        int split = 0;
+        long combinations = 1;
+        while ((split < factors.length) && (combinations < tasksNumber)) {
+            int end = nextFactor(factors, split);
+            combinations *= end - split + 1;
+            split = end;
+        }
+        if ((executor.getThreadsNumber() < 2) || (combinations < 2)) {
+            forEachDivisorWithFactors(limit, consumer);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>();
+        int from = split;
+        forEachDivisor(factors, 0, split, BigInteger.ONE, limit, new ArrayList<>(), (prefix, prefixFactors) -> {
+            List<BigInteger> curFactors = new ArrayList<>(prefixFactors);
+            futures.add(executor.submit(() -> {
+                forEachDivisor(factors, from, factors.length, prefix, limit, curFactors, consumer);
+                return null;
+            }));
+        });
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    // enumerates all products of cur and divisors of f[pos] * ... * f[end-1]
+    private static void forEachDivisor(BigInteger[] f, int pos, int end, BigInteger cur, BigInteger limit, List<BigInteger> curFactors,
+                                       BiConsumer<BigInteger, List<BigInteger>> consumer)
+    {
+        if ((pos >= end) || ((limit != null) && (cur.multiply(f[pos]).compareTo(limit) > 0))) {
+            consumer.accept(cur, curFactors);
+            return;
+        }
+        int next = nextFactor(f, pos);
+        forEachDivisor(f, next, end, cur, limit, curFactors, consumer);
+        int size = curFactors.size();
+        for (int i = pos; i < next; i++) {
+            cur = cur.multiply(f[pos]);
+            if ((limit != null) && (cur.compareTo(limit) > 0)) {
+                break;
+            }
+            curFactors.add(f[pos]);
+            forEachDivisor(f, next, end, cur, limit, curFactors, consumer);
+        }
+        curFactors.subList(size, curFactors.size()).clear();
+    }
+
+    private static int nextFactor(BigInteger[] f, int pos) {
+        int end = pos+1;
+        while ((end < f.length) && f[pos].equals(f[end])) {
+            end++;
+        }
+        return end;
+    }
+
+    // every copy of composite factor is replaced with its factorization
+    public Factorization replaceComposite(BigInteger composite, Factorization factorization) {
+        assert composites.contains(composite);
+        Stream<BigInteger> newFactors = Arrays.stream(factors).flatMap(f -> f.equals(composite) ? Arrays.stream(factorization.factors) : Stream.of(f));
+        Stream<BigInteger> newComposites = Stream.concat(composites.stream().filter(c -> !c.equals(composite)), factorization.composites.stream());
+        return new Factorization(newFactors.sorted().toArray(BigInteger[]::new), newComposites.collect(Collectors.toUnmodifiableSet()));
     }
 
     public int compositeCount() {
@@ -47,32 +149,52 @@ public class Factorization {
 
     public static long[] generateDivisors(long[] primeFactorsSorted) {
         LongStream.Builder buf = LongStream.builder();
-        forEachDivisor(Arrays.stream(primeFactorsSorted).boxed().toArray(Long[]::new), 1L, Math::multiplyExact, buf::add);
+        forEachDivisor(primeFactorsSorted, buf::add);
         return buf.build().sorted().toArray();
     }
 
     public static void forEachDivisor(BigInteger[] primeFactorsSorted, Consumer<BigInteger> consumer) {
-        forEachDivisor(primeFactorsSorted, BigInteger.ONE, BigInteger::multiply, consumer);
+        forEachDivisor(primeFactorsSorted, 0, primeFactorsSorted.length, BigInteger.ONE, null, new ArrayList<>(), (d, f) -> consumer.accept(d));
     }
 
-    private static <T> void forEachDivisor(T[] primeFactors, T one, BinaryOperator<T> multiplier, Consumer<T> consumer) {
-        forEachDivisor(primeFactors, 0, one, multiplier, consumer);
+    // primitive version, throws ArithmeticException if some of divisors don't fit into long
+    public static void forEachDivisor(long[] primeFactorsSorted, LongConsumer consumer) {
+        forEachDivisor(primeFactorsSorted, 0, 1L, Long.MAX_VALUE, true, consumer);
     }
 
-    private static <T> void forEachDivisor(T[] f, int pos, T cur, BinaryOperator<T> multiplier, Consumer<T> consumer) {
-        if (pos >= f.length) {
+    // primitive version, divisors greater than limit are skipped
+    public static void forEachDivisor(long[] primeFactorsSorted, long limit, LongConsumer consumer) {
+        if (limit <= 0) {
+            return;
+        }
+        forEachDivisor(primeFactorsSorted, 0, 1L, limit, false, consumer);
+    }
+
+    private static void forEachDivisor(long[] f, int pos, long cur, long limit, boolean exact, LongConsumer consumer) {
+        if ((pos >= f.length) || !fits(cur, f[pos], limit, exact)) {
             consumer.accept(cur);
             return;
         }
-        int end = pos+1;
-        while ((end < f.length) && Objects.equals(f[pos], f[end])) {
-            end++;
+        int next = pos+1;
+        while ((next < f.length) && (f[pos] == f[next])) {
+            next++;
+        }
+        forEachDivisor(f, next, cur, limit, exact, consumer);
+        for (int i = pos; (i < next) && fits(cur, f[pos], limit, exact); i++) {
+            cur *= f[pos];
+            forEachDivisor(f, next, cur, limit, exact, consumer);
+        }
+    }
+
+    // whether cur*p doesn't exceed limit; if enumeration is exact, divisors can't be skipped, so it fails instead
+    private static boolean fits(long cur, long p, long limit, boolean exact) {
+        if (cur <= limit / p) {
+            return true;
         }
-        forEachDivisor(f, end, cur, multiplier, consumer);
-        for (int i = pos; i < end; i++) {
-            cur = multiplier.apply(cur, f[pos]);
-            forEachDivisor(f, end, cur, multiplier, consumer);
+        if (exact) {
+            throw new ArithmeticException("long overflow");
         }
+        return false;
     }
 
     @Override
@@ -11,10 +11,8 @@ import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
@@ -43,6 +41,11 @@ public class FactorizationDB {
     }
 
     public static FactorizationDB initialize(BigInteger base, BigInteger target, int primeTestCertainty) {
+        return initialize(base, target, primeTestCertainty, readLines());
+    }
+
+    // raw lines of DB file, they can be read once and used for initialization of DBs of several equations
+    public static String[] readLines() {
         try (BufferedReader reader = new BufferedReader(new InputStreamReader(
                 FactorizationDB.class.getClassLoader().getResourceAsStream(dbFileName))))
         {
@@ -52,15 +55,14 @@ public class FactorizationDB {
                 lines.add(line);
                 line = reader.readLine();
             }
-            return initialize(base, target, primeTestCertainty, lines.build().toArray(String[]::new));
+            return lines.build().toArray(String[]::new);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
-    private static FactorizationDB initialize(BigInteger base, BigInteger target, int primeTestCertainty, String[] lines) {
+    public static FactorizationDB initialize(BigInteger base, BigInteger target, int primeTestCertainty, String[] lines) {
         Map<Integer, Factorization> factorizations = new HashMap<>();
-        Set<BigInteger> checkedPrimes = new HashSet<>();
         Pattern pattern = Pattern.compile("^" + base + "\\^(\\d+)" + (target.signum() > 0 ? "-" : "\\+") + target.abs() + " = ([0-9p* ]+)");
         for (String line : lines) {
             Matcher matcher = pattern.matcher(line);
@@ -68,7 +70,7 @@ public class FactorizationDB {
                 try {
                     int pow = Integer.parseInt(matcher.group(1));
                     BigInteger N = base.pow(pow).subtract(target).abs();
-                    factorizations.put(pow, parseFactorization(N, matcher.group(2), primeTestCertainty, checkedPrimes));
+                    factorizations.put(pow, parseFactorization(N, matcher.group(2), primeTestCertainty));
                 } catch (Exception e) {
                     log.error("Cannot process line: {}", line, e);
                 }
@@ -77,7 +79,7 @@ public class FactorizationDB {
         return new FactorizationDB(factorizations);
     }
 
-    private static Factorization parseFactorization(BigInteger N, String s, int primeTestCertainty, Set<BigInteger> checkedPrimes) {
+    private static Factorization parseFactorization(BigInteger N, String s, int primeTestCertainty) {
         String[] terms = Stream.of(s.split("\\*")).map(String::strip).toArray(String[]::new);
         List<BigInteger> factors = new ArrayList<>();
         boolean pFlag = false;
@@ -90,12 +92,9 @@ public class FactorizationDB {
                 continue;
             }
             BigInteger p = new BigInteger(term);
-            if (!checkedPrimes.contains(p)) {
-                if (p.isProbablePrime(primeTestCertainty)) {
-                    checkedPrimes.add(p);
-                } else {
-                    throw new IllegalArgumentException("Not prime: " + p);
-                }
+            // primes repeated in several lines are taken from cache of PrimalityTest
+            if (!PrimalityTest.isPrime(p, primeTestCertainty, null)) {
+                throw new IllegalArgumentException("Not prime: " + p);
             }
             BigInteger[] dr = N.divideAndRemainder(p);
             if (dr[1].signum() != 0) {
@@ -109,12 +108,8 @@ public class FactorizationDB {
             if (!pFlag) {
                 log.error("Last factor {} is missing in line: {}", N, s);
             }
-            if (!checkedPrimes.contains(N)) {
-                if (N.isProbablePrime(primeTestCertainty)) {
-                    checkedPrimes.add(N);
-                } else {
-                    throw new IllegalArgumentException("Not prime: " + N);
-                }
+            if (!PrimalityTest.isPrime(N, primeTestCertainty, null)) {
+                throw new IllegalArgumentException("Not prime: " + N);
             }
             factors.add(N);
         }
@@ -123,10 +118,24 @@ public class FactorizationDB {
 
     public static void logFactorizations(BigInteger base, BigInteger target, SortedMap<BigInteger, Long> scanTime,
                                          Factorizer factorizer, int threadsNumber)
+    {
+        logFactorizations(base, target, scanTime, factorizer, null, threadsNumber, 0);
+    }
+
+    // with snfsMinBitLength composites which are left after factorizer are passed to SNFS
+    public static void logFactorizations(BigInteger base, BigInteger target, SortedMap<BigInteger, Long> scanTime,
+                                         Factorizer factorizer, Integer snfsMinBitLength, int threadsNumber, int primeTestCertainty)
     {
         ExecutorService executor = Executors.newFixedThreadPool(threadsNumber);
         SortedMap<BigInteger, Future<Factorization>> tasks = new TreeMap<>();
-        scanTime.forEach((exp, x) -> tasks.put(exp, executor.submit(() -> factorizer.factorize(base.pow(exp.intValueExact()).subtract(target).abs()))));
+        scanTime.forEach((exp, x) -> tasks.put(exp, executor.submit(() -> {
+            int C = exp.intValueExact();
+            Factorization factorization = factorizer.factorize(base.pow(C).subtract(target).abs());
+            if (snfsMinBitLength != null) {
+                factorization = SnfsFactorizer.factorizeComposites(factorization, base, C, target, snfsMinBitLength, threadsNumber, primeTestCertainty);
+            }
+            return factorization;
+        })));
         List<Pair<BigInteger, Long>> notFactorized = new ArrayList<>();
         tasks.forEach((exp, task) -> {
             Factorization factorization;
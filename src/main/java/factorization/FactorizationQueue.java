@@ -0,0 +1,143 @@
+package factorization;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+// Runs factorizations in its own thread pool, so caller can do something else meanwhile.
+// Every factorization has time budget: when it's exceeded, factorization thread is interrupted and factorizer
+// returns what it has already found, with unfactorized parts as composites. Caller can give smaller budget to single factorization.
+// Callbacks get factorization and time spent on it in nanoseconds, they are called in the thread which calls poll() or flush()
+public class FactorizationQueue {
+    private static final Logger log = LoggerFactory.getLogger(FactorizationQueue.class);
+
+    private final Factorizer factorizer;
+    private final long timeBudgetMillis;
+    private final int maxRunning;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService watchdog;
+    private final BlockingQueue<Task> finished = new LinkedBlockingQueue<>();
+    private int running = 0;
+
+    public FactorizationQueue(Factorizer factorizer, int threadsNumber, long timeBudgetMillis) {
+        assert threadsNumber > 0;
+        assert timeBudgetMillis > 0;
+        this.factorizer = factorizer;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.maxRunning = 2 * threadsNumber;
+        this.executor = Executors.newFixedThreadPool(threadsNumber);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    public void submit(BigInteger N, BiConsumer<Factorization, Long> callback) {
+        submit(N, timeBudgetMillis, callback);
+    }
+
+    public void submit(BigInteger N, long timeBudgetMillis, BiConsumer<Factorization, Long> callback) {
+        while (running >= maxRunning) {
+            deliver(take());
+        }
+        Task task = new Task(N, Math.max(Math.min(timeBudgetMillis, this.timeBudgetMillis), 1), callback);
+        running++;
+        executor.execute(task);
+        poll();
+    }
+
+    // hands already finished factorizations to callbacks
+    public void poll() {
+        Task task;
+        while ((task = finished.poll()) != null) {
+            deliver(task);
+        }
+    }
+
+    // waits for all submitted factorizations, including ones which are submitted by callbacks
+    public void flush() {
+        while (running > 0) {
+            deliver(take());
+        }
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    private Task take() {
+        try {
+            return finished.take();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void deliver(Task task) {
+        running--;
+        if (task.exception != null) {
+            throw new RuntimeException("Exception while factorizing " + task.N, task.exception);
+        }
+        task.callback.accept(task.result, task.nanos);
+    }
+
+    private class Task implements Runnable {
+        private final BigInteger N;
+        private final long timeBudgetMillis;
+        private final BiConsumer<Factorization, Long> callback;
+        private Factorization result;
+        private long nanos;
+        private Throwable exception;
+
+        private Thread thread;
+        private boolean done;
+        private boolean interrupted;
+
+        private Task(BigInteger N, long timeBudgetMillis, BiConsumer<Factorization, Long> callback) {
+            this.N = N;
+            this.timeBudgetMillis = timeBudgetMillis;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            synchronized (this) {
+                thread = Thread.currentThread();
+            }
+            ScheduledFuture<?> timer = watchdog.schedule(this::interrupt, timeBudgetMillis, TimeUnit.MILLISECONDS);
+            long startTime = System.nanoTime();
+            try {
+                result = factorizer.factorize(N);
+            } catch (Throwable e) {
+                exception = e;
+            } finally {
+                nanos = System.nanoTime() - startTime;
+                timer.cancel(false);
+                synchronized (this) {
+                    done = true;
+                    // interruption is addressed to this factorization only
+                    Thread.interrupted();
+                }
+            }
+            if (interrupted && (result != null)) {
+                log.info("Factorization of {}-bit number was stopped after {}ms with {} composites: {}", N.bitLength(), timeBudgetMillis,
+                        result.compositeCount(), result);
+            }
+            finished.add(this);
+        }
+
+        private synchronized void interrupt() {
+            if (!done) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -1,17 +1,25 @@
 package factorization;
 
-import common.Common;
-import org.apache.commons.math3.primes.Primes;
+import common.TaskExecutor;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.function.Function;
 
 public abstract class Factorizer {
     private final int primeTestCertainty;
+    private final TaskExecutor primeTestExecutor;
 
     public Factorizer(int primeTestCertainty) {
+        this(primeTestCertainty, null);
+    }
+
+    // executor is used for parallel primality test of big numbers
+    public Factorizer(int primeTestCertainty, TaskExecutor primeTestExecutor) {
         this.primeTestCertainty = primeTestCertainty;
+        this.primeTestExecutor = primeTestExecutor;
     }
 
     public Factorization factorize(BigInteger N) {
@@ -23,18 +31,36 @@ public abstract class Factorizer {
         if (N.equals(BigInteger.ONE)) {
             return Factorization.fromPrimeFactors(List.of());
         }
-        if (N.compareTo(Common.MAX_INT) <= 0) {
-            return Factorization.fromPrimeFactors(Primes.primeFactors(N.intValueExact())
-                    .stream().map(BigInteger::valueOf).toList());
+        // small numbers and cofactors are factorized completely in primitive longs
+        if (N.bitLength() < Long.SIZE) {
+            return Factorization.fromPrimeFactors(Arrays.stream(LongFactorizer.factorize(N.longValueExact())).mapToObj(BigInteger::valueOf).toList());
         }
-        if (N.isProbablePrime(primeTestCertainty)) {
-            return Factorization.fromSingleFactor(N,true);
+        // factorization is stopped from outside, so rest of number stays unfactorized
+        try {
+            if (isPrime(N)) {
+                return Factorization.fromSingleFactor(N,true);
+            }
+        } catch (CancellationException e) {
+            return Factorization.fromSingleFactor(N, false);
+        }
+        if (Thread.currentThread().isInterrupted()) {
+            return Factorization.fromSingleFactor(N, false);
         }
         return factorizer.apply(N);
     }
 
     protected abstract Factorization factorizeInternal(BigInteger N);
 
+    protected boolean isPrime(BigInteger N) {
+        return PrimalityTest.isPrime(N, primeTestCertainty, primeTestExecutor);
+    }
+
+    // complete factorization of number which fits long
+    public static long[] factorizeCompletely(long n) {
+        assert n > 0;
+        return LongFactorizer.factorize(n);
+    }
+
     protected Factorization processDivisor(BigInteger divisor, BigInteger N, Function<BigInteger, Factorization> factorizer) {
         assert divisor.compareTo(BigInteger.ONE) > 0;
         assert divisor.compareTo(N) < 0;
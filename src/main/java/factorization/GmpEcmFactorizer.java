@@ -14,7 +14,7 @@ public class GmpEcmFactorizer extends Factorizer {
     private final TaskExecutor taskExecutor;
 
     public GmpEcmFactorizer(long B1, long C, TaskExecutor taskExecutor, int primeTestCertainty) {
-        super(primeTestCertainty);
+        super(primeTestCertainty, taskExecutor);
         this.B1 = B1;
         this.C = (taskExecutor != null) ? (long) Math.ceil(C * 1.0 / taskExecutor.getThreadsNumber()) : C;
         this.taskExecutor = taskExecutor;
@@ -51,6 +51,13 @@ public class GmpEcmFactorizer extends Factorizer {
                     }
                     break;
                 }
+            } catch (InterruptedException e) {
+                // factorization is stopped from outside, gmp-ecm processes finish their current curves and quit
+                for (Future<BigInteger> task : tasks) {
+                    task.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return Factorization.fromSingleFactor(N, false);
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
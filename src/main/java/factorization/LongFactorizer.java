@@ -0,0 +1,298 @@
+package factorization;
+
+import common.Common;
+import common.ModUtils;
+import common.MontgomeryMod;
+import org.apache.commons.math3.util.ArithmeticUtils;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Factorization of numbers below 2^63 without BigInteger: trial division by small primes, deterministic Miller-Rabin,
+// Hart's one line factorization and SQUFOF for balanced semiprimes, Brent's rho. Modular multiplication is in 64-bit Montgomery
+// form: for odd n < 2^63 product a*b/2^64 mod n fits unsigned long. Numbers below 2^128 are tested by Miller-Rabin on MontgomeryMod
+public class LongFactorizer {
+
+    private static final Primes smallPrimes = new Primes(1<<12);
+    // deterministic for all n < 2^64
+    private static final long[] longBases = {2, 325, 9375, 28178, 450775, 9780504, 1795265022};
+    // first 13 primes are deterministic for n < 3317044064679887385961981
+    private static final long[] bigBases = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41};
+    public static final BigInteger deterministicBound = new BigInteger("3317044064679887385961981");
+    private static final long hartBound = 1L<<40;
+    private static final long squfofBound = 1L<<62;
+    private static final int[] squfofMultipliers = {1, 3, 5, 7, 11, 3*5, 3*7, 3*11, 5*7, 5*11, 7*11, 3*5*7, 3*5*11, 3*7*11, 5*7*11, 3*5*7*11};
+    private static final int minGcdCallDelay = 100;
+
+    // sorted prime factors with multiplicity
+    public static long[] factorize(long n) {
+        assert n > 0;
+        long[] result = new long[64];
+        int count = 0;
+        for (int i = 0; (i < smallPrimes.size()) && (n > 1); i++) {
+            long p = smallPrimes.get(i);
+            if (p*p > n) {
+                result[count++] = n;
+                n = 1;
+                break;
+            }
+            while (n % p == 0) {
+                result[count++] = p;
+                n /= p;
+            }
+        }
+        count = factorizeLarge(n, result, count);
+        Arrays.sort(result, 0, count);
+        return Arrays.copyOf(result, count);
+    }
+
+    // n has no prime factors below smallPrimes bound
+    private static int factorizeLarge(long n, long[] result, int count) {
+        if (n == 1) {
+            return count;
+        }
+        if (isPrime(n)) {
+            result[count++] = n;
+            return count;
+        }
+        long d = findDivisor(n);
+        count = factorizeLarge(d, result, count);
+        return factorizeLarge(n / d, result, count);
+    }
+
+    // nontrivial divisor of odd composite n
+    public static long findDivisor(long n) {
+        assert (n > 2) && ((n & 1) == 1);
+        long s = Common.sqrt(n);
+        if (s*s == n) {
+            return s;
+        }
+        long d = 0;
+        if (n < hartBound) {
+            d = hart(n);
+        }
+        if ((d <= 1) && (n < squfofBound)) {
+            d = squfof(n);
+        }
+        while ((d <= 1) || (d == n)) {
+            d = rho(n, ThreadLocalRandom.current().nextLong(1, n - 1));
+        }
+        return d;
+    }
+
+    public static boolean isPrime(long n) {
+        assert n >= 0;
+        if (n < 2) {
+            return false;
+        }
+        for (int i = 0; i < 12; i++) {
+            long p = smallPrimes.get(i);
+            if (n % p == 0) {
+                return n == p;
+            }
+        }
+        if (n < 37*37) {
+            return true;
+        }
+        long nInv = ModUtils.montgomeryInverse(n);
+        long one = ModUtils.montgomeryOne(n);
+        long minusOne = n - one;
+        long d = n - 1;
+        int s = Long.numberOfTrailingZeros(d);
+        d >>= s;
+        long r2 = ModUtils.montgomeryR2(one, n);
+        for (long a : longBases) {
+            a %= n;
+            if (a == 0) {
+                continue;
+            }
+            long x = pow(ModUtils.montgomeryMultiply(a, r2, n, nInv), d, one, n, nInv);
+            if ((x == one) || (x == minusOne)) {
+                continue;
+            }
+            boolean composite = true;
+            for (int i = 1; (i < s) && composite; i++) {
+                x = ModUtils.montgomeryMultiply(x, x, n, nInv);
+                composite = (x != minusOne);
+            }
+            if (composite) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // deterministic for n < deterministicBound and n < 2^128
+    public static boolean isPrime(BigInteger n) {
+        assert (n.compareTo(deterministicBound) < 0) && (n.bitLength() <= 128);
+        if (n.bitLength() < 63) {
+            return isPrime(n.longValueExact());
+        }
+        if (!n.testBit(0)) {
+            return false;
+        }
+        MontgomeryMod mod = new MontgomeryMod(n);
+        BigInteger n1 = n.subtract(BigInteger.ONE);
+        int s = n1.getLowestSetBit();
+        BigInteger d = n1.shiftRight(s);
+        long[] one = mod.toMontgomery(BigInteger.ONE);
+        long[] minusOne = mod.toMontgomery(n1);
+        long[] x = mod.create();
+        for (long a : bigBases) {
+            powMontgomery(mod, mod.toMontgomery(BigInteger.valueOf(a)), d, one, x);
+            if (Arrays.equals(x, one) || Arrays.equals(x, minusOne)) {
+                continue;
+            }
+            boolean composite = true;
+            for (int i = 1; (i < s) && composite; i++) {
+                mod.multiply(x, x, x);
+                composite = !Arrays.equals(x, minusOne);
+            }
+            if (composite) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Hart's one line factorization: s = ceil(sqrt(n*i)), if s^2 mod n = t^2 then gcd(s-t, n) is a divisor
+    static long hart(long n) {
+        long limit = Math.max(1000, 4 * (long) Math.cbrt(n));
+        for (long i = 1; i <= limit; i++) {
+            long ni = n * i;
+            long s = Common.sqrt(ni);
+            if (s*s != ni) {
+                s++;
+            }
+            long m = ModUtils.multiplyMod(s, s, n);
+            long t = Common.sqrt(m);
+            if (t*t == m) {
+                long d = ArithmeticUtils.gcd(s - t, n);
+                if ((d > 1) && (d < n)) {
+                    return d;
+                }
+            }
+        }
+        return 0;
+    }
+
+    // Shanks' square forms factorization with multipliers, kn should fit 62 bits
+    static long squfof(long n) {
+        long s = Common.sqrt(n);
+        if (s*s == n) {
+            return s;
+        }
+        for (int k : squfofMultipliers) {
+            if (n > squfofBound / k) {
+                break;
+            }
+            long D = k * n;
+            long P0 = Common.sqrt(D);
+            long P = P0;
+            long prevP = P0;
+            long prevQ = 1;
+            long Q = D - P0*P0;
+            if (Q == 0) {
+                continue;
+            }
+            long B = 3 * 2 * Common.sqrt(2 * s);
+            long r = 0;
+            int i = 2;
+            for (; i < B; i++) {
+                long b = (P0 + P) / Q;
+                P = b*Q - P;
+                long q = Q;
+                Q = prevQ + b*(prevP - P);
+                r = Common.sqrt(Q);
+                if (((i & 1) == 0) && (r*r == Q)) {
+                    break;
+                }
+                prevQ = q;
+                prevP = P;
+            }
+            if (i >= B) {
+                continue;
+            }
+            long b = (P0 - P) / r;
+            P = b*r + P;
+            prevP = P;
+            prevQ = r;
+            Q = (D - prevP*prevP) / prevQ;
+            for (int j = 0; j < B; j++) {
+                b = (P0 + P) / Q;
+                prevP = P;
+                P = b*Q - P;
+                long q = Q;
+                Q = prevQ + b*(prevP - P);
+                prevQ = q;
+                if (P == prevP) {
+                    break;
+                }
+            }
+            long d = ArithmeticUtils.gcd(n, prevQ);
+            if ((d > 1) && (d < n)) {
+                return d;
+            }
+        }
+        return 0;
+    }
+
+    // Brent's rho with F(y) = y^2 + c in Montgomery form, |x - y| are multiplied and gcd is called once per batch.
+    // Returns 0 if cycle is found modulo all factors at once
+    static long rho(long n, long c) {
+        long nInv = ModUtils.montgomeryInverse(n);
+        int m = (int) Math.max(minGcdCallDelay, Math.sqrt(Math.sqrt(n)));
+        long y = 2;
+        long x = 0;
+        long ys = 0;
+        long q = ModUtils.montgomeryOne(n);
+        long g = 1;
+        for (long r = 1; g == 1; r <<= 1) {
+            x = y;
+            for (long i = 0; i < r; i++) {
+                y = ModUtils.addMod(ModUtils.montgomeryMultiply(y, y, n, nInv), c, n);
+            }
+            for (long k = 0; (k < r) && (g == 1); k += m) {
+                ys = y;
+                long batch = Math.min(m, r - k);
+                for (long i = 0; i < batch; i++) {
+                    y = ModUtils.addMod(ModUtils.montgomeryMultiply(y, y, n, nInv), c, n);
+                    q = ModUtils.montgomeryMultiply(q, Math.abs(x - y), n, nInv);
+                }
+                g = ArithmeticUtils.gcd(q, n);
+            }
+        }
+        if (g == n) {
+            // replay the batch from its start with gcd on every step
+            do {
+                ys = ModUtils.addMod(ModUtils.montgomeryMultiply(ys, ys, n, nInv), c, n);
+                g = ArithmeticUtils.gcd(Math.abs(x - ys), n);
+            } while (g == 1);
+        }
+        return (g == n) ? 0 : g;
+    }
+
+    private static long pow(long b, long e, long one, long n, long nInv) {
+        long result = one;
+        while (e > 0) {
+            if ((e & 1) == 1) {
+                result = ModUtils.montgomeryMultiply(result, b, n, nInv);
+            }
+            b = ModUtils.montgomeryMultiply(b, b, n, nInv);
+            e >>= 1;
+        }
+        return result;
+    }
+
+    private static void powMontgomery(MontgomeryMod mod, long[] b, BigInteger e, long[] one, long[] result) {
+        mod.set(one, result);
+        for (int i = e.bitLength() - 1; i >= 0; i--) {
+            mod.multiply(result, result, result);
+            if (e.testBit(i)) {
+                mod.multiply(result, b, result);
+            }
+        }
+    }
+}
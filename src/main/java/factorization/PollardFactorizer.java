@@ -6,12 +6,21 @@ public class PollardFactorizer extends Factorizer {
 
     private final PollardPm1 pollardPm1;
     private final int pm1Tries;
+    private final WilliamsPp1 williamsPp1;
+    private final int pp1Tries;
     private final long rhoIterations;
 
     public PollardFactorizer(PollardPm1 pollardPm1, int pm1Tries, long rhoIterations, int primeTestCertainty) {
+        this(pollardPm1, pm1Tries, null, 0, rhoIterations, primeTestCertainty);
+    }
+
+    // P+1 with pp1Tries seeds is run between P-1 and rho
+    public PollardFactorizer(PollardPm1 pollardPm1, int pm1Tries, WilliamsPp1 williamsPp1, int pp1Tries, long rhoIterations, int primeTestCertainty) {
         super(primeTestCertainty);
         this.pollardPm1 = pollardPm1;
         this.pm1Tries = pm1Tries;
+        this.williamsPp1 = williamsPp1;
+        this.pp1Tries = pp1Tries;
         this.rhoIterations = rhoIterations;
     }
 
@@ -27,6 +36,16 @@ public class PollardFactorizer extends Factorizer {
                 return processDivisor(divisor, N, n -> factorizeInternal(n, pm1Tries-1));
             }
         }
+        return factorizePp1(N, pp1Tries);
+    }
+
+    protected Factorization factorizePp1(BigInteger N, int pp1Tries) {
+        if ((pp1Tries > 0) && (williamsPp1 != null)) {
+            BigInteger divisor = williamsPp1.findDivisor(N, pp1Tries);
+            if (divisor != null) {
+                return processDivisor(divisor, N, n -> factorizePp1(n, pp1Tries-1));
+            }
+        }
         return factorizeRho(N);
     }
 
@@ -1,50 +1,95 @@
 package factorization;
 
 import common.Common;
+import common.MontgomeryMod;
+import org.apache.commons.math3.util.ArithmeticUtils;
 import org.apache.commons.math3.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import primes.Primes;
 
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 public class PollardPm1 {
     private static final Logger log = LoggerFactory.getLogger(PollardPm1.class);
+    private static final Power modPow = BigInteger::modPow;
 
     private static final int gcdCallDelay = 1000;
+    private static final long largeSecondLimit = 100000000;
+    private static final int streamingSegmentLength = 1<<20;
+    // pairs of second stage are made by segments of giant steps, first segments up to stage2CachedBits are kept in memory
+    // and further ones are sieved again for every number, so big secondLimit isn't limited by memory
+    private static final int stage2SegmentGiants = 1024;
+    private static final long stage2CachedBits = 1L<<27;
 
     private final long firstLimit;
     private final Long secondLimit;
     private final Primes primes;
+    private final Integer streamingChunkBits;
     private final BigInteger[] M;
     private final int[] mStepStart;
     private final int[] mStepEnd;
 
+    private final int D;
+    private long[] stage2SmallPrimes;
+    private int[] stage2Baby;
+    private int[] stage2BabyIdx;
+    private long stage2VMin;
+    private int stage2Giants;
+    private BitSet[] stage2Pairs;
+
     public PollardPm1(Primes primes, long firstLimit, Long secondLimit) {
+        this(primes, firstLimit, secondLimit, null);
+    }
+
+    // if streamingChunkBits is set, exponent of the first stage isn't stored but is generated for every number by chunks
+    public PollardPm1(Primes primes, long firstLimit, Long secondLimit, Integer streamingChunkBits) {
         if (firstLimit < 2) {
             throw new IllegalArgumentException("First limit should be at least 2");
         }
         this.firstLimit = firstLimit;
         this.secondLimit = secondLimit;
         this.primes = primes;
+        this.streamingChunkBits = streamingChunkBits;
 
         long startTime = System.currentTimeMillis();
-        log.info("Start initializing Pollard P-1 with firstLimit={}, secondLimit={}...", firstLimit, secondLimit);
-        Pair<int[], int[]> pair = generateMSteps();
-        this.mStepStart = pair.getFirst();
-        this.mStepEnd = pair.getSecond();
-        this.M = generateM();
-        long bitLength = Arrays.stream(M).mapToLong(BigInteger::bitLength).sum();
-        log.info("Pollard P-1 initialized in {}ms, sum of bit lengths {} ({}MB)", System.currentTimeMillis() - startTime, bitLength,
-                String.format(Common.LOCALE, "%.2f", bitLength / ((double) (1<<23))));
+        log.info("Start initializing Pollard P-1 with firstLimit={}, secondLimit={}, streamingChunkBits={}...", firstLimit, secondLimit, streamingChunkBits);
+        if (streamingChunkBits == null) {
+            Pair<int[], int[]> pair = generateMSteps();
+            this.mStepStart = pair.getFirst();
+            this.mStepEnd = pair.getSecond();
+            this.M = generateM();
+        } else {
+            assert streamingChunkBits > 0;
+            this.mStepStart = null;
+            this.mStepEnd = null;
+            this.M = null;
+        }
+        // bigger wheel has more baby steps but fewer giant steps
+        this.D = ((secondLimit != null) && (secondLimit > largeSecondLimit)) ? 30030 : 2310;
+        if ((secondLimit != null) && (secondLimit > firstLimit)) {
+            initSecondStage();
+        }
+        long bitLength = (M != null) ? Arrays.stream(M).mapToLong(BigInteger::bitLength).sum() : 0;
+        log.info("Pollard P-1 initialized in {}ms, sum of bit lengths {} ({}MB), second stage has {} giant steps, {} of {} segments are cached",
+                System.currentTimeMillis() - startTime, bitLength, String.format(Common.LOCALE, "%.2f", bitLength / ((double) (1<<23))),
+                stage2Giants, (stage2Pairs != null) ? stage2Pairs.length : 0, stage2Segments());
     }
 
     public BigInteger findDivisor(BigInteger N, int tries) {
+        return findDivisor(N, 0, tries);
+    }
+
+    // i-th try uses i-th prime as base
+    public BigInteger findDivisor(BigInteger N, int firstTry, int tries) {
         assert N.compareTo(BigInteger.ONE) > 0;
         BigInteger a;
         BigInteger b = null;
-        for (int i = 0; i < tries; i++) {
+        for (int i = firstTry; i < firstTry + tries; i++) {
             a = BigInteger.valueOf((i < primes.size()) ? primes.get(i) : i+2);
             BigInteger gcd = N.gcd(a);
             if (!gcd.equals(BigInteger.ONE)) {
@@ -55,21 +100,14 @@ public class PollardPm1 {
                 }
             }
 
-            b = a;
-            for (int j = 0; j < M.length; j++) {
-                BigInteger nextB = b.modPow(M[j], N);
-                BigInteger d = N.gcd(nextB.subtract(BigInteger.ONE));
-                if (d.equals(N)) {
-                    d = tryMSteps(b, N, j);
-                }
-                if (d.equals(N)) {
-                    b = BigInteger.ZERO;
-                    break;
-                } else if (!d.equals(BigInteger.ONE)) {
-                    return d;
-                }
-                b = nextB;
+            Pair<BigInteger, BigInteger> firstStage = runFirstStage(N, a, modPow, BigInteger.ONE);
+            if (firstStage == null) {
+                return null;
+            }
+            if (firstStage.getFirst() != null) {
+                return firstStage.getFirst();
             }
+            b = firstStage.getSecond();
             if (b.signum() != 0) {
                 break;
             }
@@ -77,57 +115,305 @@ public class PollardPm1 {
         return runSecondStage(N, b);
     }
 
-    public BigInteger runSecondStage(BigInteger N, BigInteger b) {
-        if (secondLimit == null) {
+    // returns found divisor or b^M, b is zero if all factors are found at once; null if it's interrupted.
+    // P+1 uses the same exponent with Lucas sequence as power and 2 as identity
+    Pair<BigInteger, BigInteger> runFirstStage(BigInteger N, BigInteger b, Power power, BigInteger one) {
+        return (M != null) ? runFirstStagePrecalculated(N, b, power, one) : runFirstStageStreaming(N, b, power, one);
+    }
+
+    private Pair<BigInteger, BigInteger> runFirstStagePrecalculated(BigInteger N, BigInteger b, Power power, BigInteger one) {
+        for (int j = 0; j < M.length; j++) {
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            BigInteger nextB = power.apply(b, M[j], N);
+            BigInteger d = N.gcd(nextB.subtract(one));
+            if (d.equals(N)) {
+                d = tryMSteps(b, N, j, power, one);
+            }
+            if (d.equals(N)) {
+                return Pair.create(null, BigInteger.ZERO);
+            } else if (!d.equals(BigInteger.ONE)) {
+                return Pair.create(d, null);
+            }
+            b = nextB;
+        }
+        return Pair.create(null, b);
+    }
+
+    // same as runFirstStage(), but prime powers are generated by segments and multiplied into chunks of streamingChunkBits bits,
+    // so memory doesn't depend on firstLimit. b before chunk is checkpoint for backtracking if all factors are found at once
+    private Pair<BigInteger, BigInteger> runFirstStageStreaming(BigInteger N, BigInteger b, Power power, BigInteger one) {
+        List<BigInteger> chunk = new ArrayList<>();
+        long chunkBits = 0;
+        for (long from = 2; from <= firstLimit; from += streamingSegmentLength) {
+            int length = (int) Math.min(streamingSegmentLength, firstLimit - from + 1);
+            BitSet isPrime = primes.segment(from, length);
+            for (int i = isPrime.nextSetBit(0); i >= 0; i = isPrime.nextSetBit(i+1)) {
+                long pk = maxPower(from + i);
+                chunk.add(BigInteger.valueOf(pk));
+                chunkBits += 64 - Long.numberOfLeadingZeros(pk);
+                if (chunkBits >= streamingChunkBits) {
+                    Pair<BigInteger, BigInteger> result = applyChunk(N, b, chunk, power, one);
+                    if ((result == null) || (result.getFirst() != null) || (result.getSecond().signum() == 0)) {
+                        return result;
+                    }
+                    b = result.getSecond();
+                    chunk.clear();
+                    chunkBits = 0;
+                }
+            }
+        }
+        return chunk.isEmpty() ? Pair.create(null, b) : applyChunk(N, b, chunk, power, one);
+    }
+
+    private Pair<BigInteger, BigInteger> applyChunk(BigInteger N, BigInteger b, List<BigInteger> chunk, Power power, BigInteger one) {
+        if (Thread.currentThread().isInterrupted()) {
             return null;
         }
-        int pi = mStepEnd[mStepEnd.length-1];
-        if (pi >= primes.size()) {
+        BigInteger nextB = power.apply(b, Common.multiply(chunk.toArray(BigInteger[]::new)), N);
+        BigInteger d = N.gcd(nextB.subtract(one));
+        if (d.equals(N)) {
+            for (BigInteger pk : chunk) {
+                b = power.apply(b, pk, N);
+                d = N.gcd(Common.mod(b.subtract(one), N));
+                if (!d.equals(BigInteger.ONE)) {
+                    break;
+                }
+            }
+        }
+        if (d.equals(N)) {
+            return Pair.create(null, BigInteger.ZERO);
+        } else if (!d.equals(BigInteger.ONE)) {
+            return Pair.create(d, null);
+        }
+        return Pair.create(null, nextB);
+    }
+
+    // Second stage checks primes q in (firstLimit; secondLimit]. Every such q > D/2 is v*D - u or v*D + u for baby step u < D/2
+    // coprime with D, and b^q = 1 (mod p) gives V(vD) = V(u) (mod p) where V(k) = b^k + b^(-k). So one product (V(vD) - V(u))
+    // covers both primes vD-u and vD+u, V(vD) are made one by one by recurrence V((v+1)D) = V(vD)*V(D) - V((v-1)D).
+    // Needed pairs (v, u) are calculated once in constructor
+    public BigInteger runSecondStage(BigInteger N, BigInteger b) {
+        if ((secondLimit == null) || (secondLimit <= firstLimit)) {
             return null;
         }
-        long p = primes.get(pi);
-        assert p >= 3;
-        BigInteger H = b.modPow(BigInteger.valueOf(p), N);
-        GcdDetector gcdDetector = new GcdDetector(N, gcdCallDelay);
-        BigInteger g = gcdDetector.add(H.subtract(BigInteger.ONE));
-        if (g != null) {
+        if (!N.testBit(0)) {
+            return N.equals(BigInteger.TWO) ? null : BigInteger.TWO;
+        }
+        BigInteger g = N.gcd(b);
+        if (!g.equals(BigInteger.ONE)) {
             return N.equals(g) ? null : g;
         }
+        return runSecondStageLucas(N, b.add(b.modInverse(N)).mod(N));
+    }
 
-        BigInteger[] D = new BigInteger[300];
-        pi++;
-        if (pi >= primes.size()) {
+    // second stage depends on V(1) only: V(k) is Lucas sequence V_k(V(1)), so the same code works for P+1 where V(1) = V_M(P0).
+    // V(q) - 2 = b^(-q) * (b^q - 1)^2 for P-1, so V(q) = 2 (mod p) is checked for both methods
+    BigInteger runSecondStageLucas(BigInteger N, BigInteger V1) {
+        if ((secondLimit == null) || (secondLimit <= firstLimit)) {
             return null;
         }
-        long nextP = primes.get(pi);
-        while (nextP <= secondLimit) {
-            int diff = (int) (nextP - p);
-            int idx = (diff>>1) - 1;
-            if (D[idx] == null) {
-                D[idx] = b.modPow(BigInteger.valueOf(diff), N);
-            }
-            H = H.multiply(D[idx]).mod(N);
-            g = gcdDetector.add(H.subtract(BigInteger.ONE));
+        if (!N.testBit(0)) {
+            return N.equals(BigInteger.TWO) ? null : BigInteger.TWO;
+        }
+        MontgomeryMod mod = new MontgomeryMod(N);
+        long[] V1M = mod.toMontgomery(V1);
+        long[] twoM = mod.toMontgomery(BigInteger.TWO);
+        long[] vq = mod.create();
+        BigInteger g;
+        GcdDetector gcdDetector = new GcdDetector(N, gcdCallDelay);
+        for (long q : stage2SmallPrimes) {
+            mod.lucasV(V1M, BigInteger.valueOf(q), vq);
+            mod.subtract(vq, twoM, vq);
+            g = gcdDetector.add(mod.toBigInteger(vq));
             if (g != null) {
                 return N.equals(g) ? null : g;
             }
-            p = nextP;
-            pi++;
-            if (pi < primes.size()) {
-                nextP = primes.get(pi);
-            } else {
-                break;
+        }
+
+        BigInteger V2 = V1.multiply(V1).subtract(BigInteger.TWO).mod(N);
+        BigInteger[] baby = new BigInteger[stage2Baby.length];
+        // V(u+2) = V(u)*V(2) - V(u-2), V(-1) = V(1)
+        BigInteger prev = V1;
+        BigInteger cur = V1;
+        for (int u = 1; u < D/2; u += 2) {
+            if (u > 1) {
+                BigInteger next = cur.multiply(V2).subtract(prev).mod(N);
+                prev = cur;
+                cur = next;
+            }
+            if (stage2BabyIdx[u] >= 0) {
+                baby[stage2BabyIdx[u]] = cur;
             }
         }
 
         g = gcdDetector.finish();
-        return !N.equals(g) ? g : null;
+        if (g != null) {
+            return N.equals(g) ? null : g;
+        }
+
+        // products are accumulated in Montgomery form, gcd is called once per gcdCallDelay products
+        long[][] babyM = new long[baby.length][];
+        for (int i = 0; i < baby.length; i++) {
+            babyM[i] = mod.toMontgomery(baby[i]);
+        }
+        long[] VD = mod.create();
+        long[] giant = mod.create();
+        long[] prevGiant = mod.create();
+        mod.lucasV(V1M, BigInteger.valueOf(D), VD);
+        mod.lucasV(VD, BigInteger.valueOf(stage2VMin), giant);
+        mod.lucasV(VD, BigInteger.valueOf(stage2VMin - 1), prevGiant);
+        long[] nextGiant = mod.create();
+        long[] diff = mod.create();
+        long[] acc = mod.toMontgomery(BigInteger.ONE);
+        long[] checkpointGiant = mod.create();
+        long[] checkpointPrevGiant = mod.create();
+        mod.set(giant, checkpointGiant);
+        mod.set(prevGiant, checkpointPrevGiant);
+        int checkpoint = 0;
+        int products = 0;
+        int babyCount = stage2Baby.length;
+        BitSet pairs = null;
+        for (int v = 0; v < stage2Giants; v++) {
+            if (((v & 1023) == 0) && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            if ((v % stage2SegmentGiants == 0) || (pairs == null)) {
+                pairs = stage2Pairs(v / stage2SegmentGiants);
+            }
+            int from = (v % stage2SegmentGiants) * babyCount;
+            for (int i = pairs.nextSetBit(from); (i >= 0) && (i < from + babyCount); i = pairs.nextSetBit(i+1)) {
+                mod.subtract(giant, babyM[i - from], diff);
+                mod.multiply(acc, diff, acc);
+                products++;
+            }
+            mod.multiply(giant, VD, nextGiant);
+            mod.subtract(nextGiant, prevGiant, nextGiant);
+            long[] t = prevGiant;
+            prevGiant = giant;
+            giant = nextGiant;
+            nextGiant = t;
+
+            if ((products >= gcdCallDelay) || (v == stage2Giants - 1)) {
+                g = N.gcd(mod.toBigInteger(acc));
+                if (g.equals(N)) {
+                    // several factors are found in the same batch, replay it with gcd for every product
+                    g = replaySecondStage(mod, babyM, VD, checkpointGiant, checkpointPrevGiant, checkpoint, v);
+                }
+                if (!g.equals(BigInteger.ONE)) {
+                    return N.equals(g) ? null : g;
+                }
+                products = 0;
+                checkpoint = v + 1;
+                mod.set(giant, checkpointGiant);
+                mod.set(prevGiant, checkpointPrevGiant);
+            }
+        }
+        return null;
     }
 
-    private BigInteger tryMSteps(BigInteger b, BigInteger N, int step) {
+    private BigInteger replaySecondStage(MontgomeryMod mod, long[][] babyM, long[] VD, long[] giant, long[] prevGiant, int fromV, int toV) {
+        BigInteger N = mod.getMod();
+        long[] nextGiant = mod.create();
+        long[] diff = mod.create();
+        int babyCount = stage2Baby.length;
+        BitSet pairs = null;
+        for (int v = fromV; v <= toV; v++) {
+            if ((v % stage2SegmentGiants == 0) || (pairs == null)) {
+                pairs = stage2Pairs(v / stage2SegmentGiants);
+            }
+            int from = (v % stage2SegmentGiants) * babyCount;
+            for (int i = pairs.nextSetBit(from); (i >= 0) && (i < from + babyCount); i = pairs.nextSetBit(i+1)) {
+                mod.subtract(giant, babyM[i - from], diff);
+                BigInteger g = N.gcd(mod.toBigInteger(diff));
+                if (!g.equals(BigInteger.ONE)) {
+                    return g;
+                }
+            }
+            mod.multiply(giant, VD, nextGiant);
+            mod.subtract(nextGiant, prevGiant, nextGiant);
+            long[] t = prevGiant;
+            prevGiant = giant;
+            giant = nextGiant;
+            nextGiant = t;
+        }
+        return N;
+    }
+
+    private void initSecondStage() {
+        long smallTo = Math.min(secondLimit, D/2);
+        this.stage2SmallPrimes = (firstLimit < smallTo)
+                ? primes.segment(firstLimit + 1, (int) (smallTo - firstLimit)).stream().mapToLong(i -> firstLimit + 1 + i).toArray()
+                : new long[0];
+
+        this.stage2BabyIdx = new int[D/2];
+        List<Integer> baby = new ArrayList<>();
+        for (int u = 1; u < D/2; u++) {
+            stage2BabyIdx[u] = -1;
+            if (ArithmeticUtils.gcd(u, D) == 1) {
+                stage2BabyIdx[u] = baby.size();
+                baby.add(u);
+            }
+        }
+        this.stage2Baby = baby.stream().mapToInt(Integer::intValue).toArray();
+
+        long vMax = (secondLimit + D/2) / D;
+        this.stage2VMin = Math.max(1, (stage2First() + D/2) / D);
+        this.stage2Giants = Math.toIntExact(Math.max(0, vMax - stage2VMin + 1));
+        long segmentBits = (long) stage2SegmentGiants * stage2Baby.length;
+        this.stage2Pairs = new BitSet[(int) Math.min(stage2Segments(), stage2CachedBits / segmentBits)];
+        for (int k = 0; k < stage2Pairs.length; k++) {
+            stage2Pairs[k] = sieveStage2Pairs(k);
+        }
+    }
+
+    private long stage2First() {
+        return Math.max(firstLimit + 1, D/2 + 1);
+    }
+
+    private int stage2Segments() {
+        return (stage2Giants + stage2SegmentGiants - 1) / stage2SegmentGiants;
+    }
+
+    private BitSet stage2Pairs(int k) {
+        return (k < stage2Pairs.length) ? stage2Pairs[k] : sieveStage2Pairs(k);
+    }
+
+    // bit (v - v0)*babyCount + index(u) is set if v*D - u or v*D + u is prime, v0 is the first giant step of segment k
+    private BitSet sieveStage2Pairs(int k) {
+        long v0 = stage2VMin + (long) k * stage2SegmentGiants;
+        BitSet pairs = new BitSet(Math.min(stage2SegmentGiants, stage2Giants - k * stage2SegmentGiants) * stage2Baby.length);
+        long lo = Math.max(stage2First(), v0*D - D/2);
+        long hi = Math.min(secondLimit, (v0 + stage2SegmentGiants)*D - D/2 - 1);
+        if (lo > hi) {
+            return pairs;
+        }
+        BitSet isPrime = primes.segment(lo, (int) (hi - lo + 1));
+        for (int i = isPrime.nextSetBit(0); i >= 0; i = isPrime.nextSetBit(i+1)) {
+            long q = lo + i;
+            long v = (q + D/2) / D;
+            int u = (int) Math.abs(q - v*D);
+            assert stage2BabyIdx[u] >= 0;
+            pairs.set((int) (v - v0) * stage2Baby.length + stage2BabyIdx[u]);
+        }
+        return pairs;
+    }
+
+    // primes are needed up to firstLimit (or its square root for streaming first stage) and square root of secondLimit
+    public static Long primesBound(Long firstLimit, Long secondLimit) {
+        return primesBound(firstLimit, secondLimit, false);
+    }
+
+    public static Long primesBound(Long firstLimit, Long secondLimit, boolean streaming) {
+        Long first = ((firstLimit != null) && streaming) ? Long.valueOf(Common.sqrt(firstLimit) + 1) : firstLimit;
+        return Common.max(first, (secondLimit != null) ? Common.sqrt(secondLimit) + 1 : null);
+    }
+
+    private BigInteger tryMSteps(BigInteger b, BigInteger N, int step, Power power, BigInteger one) {
         for (int i = mStepStart[step]; i < mStepEnd[step]; i++) {
-            b = b.modPow(BigInteger.valueOf(maxPower(primes.get(i))), N);
-            BigInteger d = N.gcd(Common.mod(b.subtract(BigInteger.ONE), N));
+            b = power.apply(b, BigInteger.valueOf(maxPower(primes.get(i))), N);
+            BigInteger d = N.gcd(Common.mod(b.subtract(one), N));
             if (!d.equals(BigInteger.ONE)) {
                 return d;
             }
@@ -171,4 +457,9 @@ public class PollardPm1 {
         }
         return pk;
     }
+
+    // b^e mod N for P-1, V_e(b) mod N for P+1
+    interface Power {
+        BigInteger apply(BigInteger b, BigInteger e, BigInteger N);
+    }
 }
@@ -1,39 +1,97 @@
 package factorization;
 
+import common.MontgomeryMod;
+
 import java.math.BigInteger;
 import java.util.Random;
-import java.util.function.UnaryOperator;
 
+// Brent's variant of rho: one evaluation of F(y) = y^2 + c per step, |x - y| are multiplied into product and gcd is called
+// once per batch. If batch has several factors at once (gcd = N), the batch is replayed with gcd for every step.
+// All values are kept in Montgomery form, it doesn't matter for F since c is random anyway
 public class PollardRho {
 
     private static final int minGcdCallDelay = 100;
     private static final int maxGcdCallDelay = 100000;
-    private static final Random random = new Random(777);
+    private static final ThreadLocal<Random> random = ThreadLocal.withInitial(() -> new Random(777 + Thread.currentThread().getId()));
 
     public static BigInteger findDivisor(BigInteger N, Long iterations) {
+        return findDivisor(N, iterations, random.get());
+    }
+
+    // c and starting point are taken from rnd, so different generators give different polynomials
+    public static BigInteger findDivisor(BigInteger N, Long iterations, Random rnd) {
         assert N.compareTo(BigInteger.ONE) > 0;
         if (!N.testBit(0)) {
             return BigInteger.TWO;
         }
-
-        UnaryOperator<BigInteger> F = a -> a.multiply(a).add(BigInteger.ONE).mod(N);
-        double sqrt = (iterations != null) ? Math.sqrt(iterations) : Math.sqrt(N.doubleValue());
-        GcdDetector gcdDetector = new GcdDetector(N, (int) Math.max(minGcdCallDelay, Math.min(maxGcdCallDelay, sqrt)));
-
-        BigInteger x = new BigInteger(N.bitLength(), random);
-        BigInteger xx = x;
         if (iterations == null) {
             iterations = Long.MAX_VALUE;
         }
-        for (long i = 0; i < iterations; i++) {
-            x = F.apply(x);
-            xx = F.apply(F.apply(xx));
-            BigInteger d = gcdDetector.add(xx.subtract(x));
-            if (d != null && !N.equals(d)) {
-                return d;
+        double sqrt = (iterations != Long.MAX_VALUE) ? Math.sqrt(iterations) : Math.sqrt(N.doubleValue());
+        int m = (int) Math.max(minGcdCallDelay, Math.min(maxGcdCallDelay, sqrt));
+
+        MontgomeryMod mod = new MontgomeryMod(N);
+        long[] c = mod.toLimbs(new BigInteger(N.bitLength(), rnd).mod(N));
+        long[] y = mod.toLimbs(new BigInteger(N.bitLength(), rnd).mod(N));
+        long[] x = mod.create();
+        long[] ys = mod.create();
+        long[] q = mod.toMontgomery(BigInteger.ONE);
+        long[] diff = mod.create();
+
+        long steps = 0;
+        long r = 1;
+        while (steps < iterations) {
+            mod.set(y, x);
+            for (long i = 0; i < r; i++) {
+                f(mod, y, c);
+            }
+            steps += r;
+            boolean restart = false;
+            for (long k = 0; (k < r) && (steps < iterations); k += m) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                mod.set(y, ys);
+                long batch = Math.min(m, r - k);
+                for (long i = 0; i < batch; i++) {
+                    f(mod, y, c);
+                    mod.subtract(x, y, diff);
+                    mod.multiply(q, diff, q);
+                }
+                steps += batch;
+                BigInteger g = N.gcd(mod.toBigInteger(q));
+                if (g.equals(BigInteger.ONE)) {
+                    continue;
+                }
+                if (g.equals(N)) {
+                    // replay the batch from its start with gcd on every step
+                    for (long i = 0; i < batch; i++) {
+                        f(mod, ys, c);
+                        mod.subtract(x, ys, diff);
+                        g = N.gcd(mod.toBigInteger(diff));
+                        if (!g.equals(BigInteger.ONE)) {
+                            break;
+                        }
+                    }
+                }
+                if (!g.equals(N) && !g.equals(BigInteger.ONE)) {
+                    return g;
+                }
+                // cycle modulo all factors at once, start again with another c
+                c = mod.toLimbs(new BigInteger(N.bitLength(), rnd).mod(N));
+                y = mod.toLimbs(new BigInteger(N.bitLength(), rnd).mod(N));
+                q = mod.toMontgomery(BigInteger.ONE);
+                restart = true;
+                break;
             }
+            r = restart ? 1 : (r << 1);
         }
         return null;
     }
 
+    private static void f(MontgomeryMod mod, long[] y, long[] c) {
+        mod.multiply(y, y, y);
+        mod.add(y, c, y);
+    }
+
 }
@@ -0,0 +1,213 @@
+package factorization;
+
+import common.MontgomeryMod;
+import common.TaskExecutor;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Baillie-PSW: strong test to base 2 and almost extra strong Lucas test with Q = 1, no composite passing both is known.
+// Certainty > 0 adds Miller-Rabin rounds with random bases on top of it: (certainty+1)/2, but not more than JDK's
+// BigInteger.isProbablePrime takes for the size (from 50 below 100 bits down to 2 from 1024 bits), because it rests on Lucas test too.
+// Numbers below LongFactorizer.deterministicBound are tested deterministically. Big numbers which pass are only probable primes,
+// the most recently used of them are cached, so repeated tests are free
+public class PrimalityTest {
+    // product of primes up to 47
+    private static final long primorial = 614889782588491410L;
+    private static final long[] primorialPrimes = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47};
+    private static final int cacheMinBitLength = 128;
+    private static final int cacheCapacity = 1<<16;
+    // Lucas part is several times longer than Miller-Rabin one, running them in parallel pays off for big numbers only
+    private static final int parallelMinBitLength = 2000;
+    // bit lengths and maximal numbers of random Miller-Rabin rounds for them, as in BigInteger.primeToCertainty
+    private static final int[][] roundsBounds = {{100, 50}, {256, 27}, {512, 15}, {768, 8}, {1024, 4}, {Integer.MAX_VALUE, 2}};
+    private static final Map<BigInteger, Boolean> probablePrimeCache = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<BigInteger, Boolean> eldest) {
+                    return size() > cacheCapacity;
+                }
+            });
+
+    public static boolean isPrime(BigInteger N) {
+        return isPrime(N, 0, null);
+    }
+
+    // with executor of several threads Lucas test of big N is run on it concurrently with Miller-Rabin.
+    // Interrupted test throws CancellationException and keeps interrupt flag, it tells nothing about N
+    public static boolean isPrime(BigInteger N, int certainty, TaskExecutor executor) {
+        assert N.signum() >= 0;
+        if (N.compareTo(LongFactorizer.deterministicBound) < 0) {
+            return LongFactorizer.isPrime(N);
+        }
+        long r = N.mod(BigInteger.valueOf(primorial)).longValue();
+        for (long p : primorialPrimes) {
+            if (r % p == 0) {
+                return false;
+            }
+        }
+        if (probablePrimeCache.get(N) != null) {
+            return true;
+        }
+
+        boolean prime;
+        if ((executor != null) && (executor.getThreadsNumber() > 1) && (N.bitLength() >= parallelMinBitLength)) {
+            Future<Boolean> lucas = executor.submit(() -> isLucasProbablePrime(N));
+            try {
+                prime = isStrongProbablePrime(N, BigInteger.TWO) && isProbablePrime(N, certainty) && lucas.get();
+            } catch (InterruptedException e) {
+                lucas.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Primality test of " + N.bitLength() + "-bit number is interrupted");
+            } catch (ExecutionException e) {
+                // Lucas test is stopped with its thread
+                if (e.getCause() instanceof CancellationException) {
+                    throw (CancellationException) e.getCause();
+                }
+                throw new RuntimeException(e);
+            }
+            lucas.cancel(true);
+        } else {
+            prime = isStrongProbablePrime(N, BigInteger.TWO) && isLucasProbablePrime(N) && isProbablePrime(N, certainty);
+        }
+
+        if (prime && (N.bitLength() >= cacheMinBitLength)) {
+            probablePrimeCache.put(N, Boolean.TRUE);
+        }
+        return prime;
+    }
+
+    // Miller-Rabin rounds with random bases
+    private static boolean isProbablePrime(BigInteger N, int certainty) {
+        BigInteger max = N.subtract(BigInteger.TWO);
+        int rounds = (certainty + 1) / 2;
+        for (int[] bound : roundsBounds) {
+            if (N.bitLength() < bound[0]) {
+                rounds = Math.min(rounds, bound[1]);
+                break;
+            }
+        }
+        for (int i = 0; i < rounds; i++) {
+            BigInteger a;
+            do {
+                a = new BigInteger(N.bitLength(), ThreadLocalRandom.current());
+            } while ((a.compareTo(BigInteger.TWO) < 0) || (a.compareTo(max) > 0));
+            if (!isStrongProbablePrime(N, a)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // N - 1 = d*2^s, a^d = 1 or a^(d*2^r) = -1 for some r < s
+    static boolean isStrongProbablePrime(BigInteger N, BigInteger a) {
+        BigInteger minusOne = N.subtract(BigInteger.ONE);
+        int s = minusOne.getLowestSetBit();
+        BigInteger x = a.modPow(minusOne.shiftRight(s), N);
+        if (x.equals(BigInteger.ONE) || x.equals(minusOne)) {
+            return true;
+        }
+        for (int i = 1; i < s; i++) {
+            x = x.multiply(x).mod(N);
+            if (x.equals(minusOne)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // P = 3, 4, 5... is the first with Jacobi symbol (P^2-4 / N) = -1. For N + 1 = d*2^s it holds V_d(P, 1) = +-2
+    // or V_(d*2^r)(P, 1) = 0 for some r < s-1. Jacobi symbol of perfect square is never -1, so squares are checked first.
+    // Interrupted test can't say anything about N, so it throws CancellationException
+    static boolean isLucasProbablePrime(BigInteger N) {
+        BigInteger sqrt = N.sqrt();
+        if (sqrt.multiply(sqrt).equals(N)) {
+            return false;
+        }
+        long P = 3;
+        for (;; P++) {
+            int j = jacobi(P*P - 4, N);
+            if (j == 0) {
+                return false;
+            }
+            if (j < 0) {
+                break;
+            }
+        }
+
+        BigInteger plusOne = N.add(BigInteger.ONE);
+        int s = plusOne.getLowestSetBit();
+        MontgomeryMod mod = new MontgomeryMod(N);
+        long[] two = mod.toMontgomery(BigInteger.TWO);
+        long[] minusTwo = mod.toMontgomery(N.subtract(BigInteger.TWO));
+        long[] V = mod.create();
+        mod.lucasV(mod.toMontgomery(BigInteger.valueOf(P)), plusOne.shiftRight(s), V);
+        if (Arrays.equals(V, two) || Arrays.equals(V, minusTwo)) {
+            return true;
+        }
+        checkInterrupted(N);
+        for (int r = 0; r < s - 1; r++) {
+            if (mod.isZero(V)) {
+                return true;
+            }
+            checkInterrupted(N);
+            mod.multiply(V, V, V);
+            mod.subtract(V, two, V);
+        }
+        return false;
+    }
+
+    private static void checkInterrupted(BigInteger N) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("Lucas test of " + N.bitLength() + "-bit number is interrupted");
+        }
+    }
+
+    // Jacobi symbol (a / n) for odd n > a > 0, the first reciprocity step reduces n to long
+    static int jacobi(long a, BigInteger n) {
+        assert (a > 0) && n.testBit(0);
+        int result = 1;
+        int n8 = n.intValue() & 7;
+        while ((a & 1) == 0) {
+            a >>= 1;
+            if ((n8 == 3) || (n8 == 5)) {
+                result = -result;
+            }
+        }
+        if (a == 1) {
+            return result;
+        }
+        if (((a & 3) == 3) && ((n8 & 3) == 3)) {
+            result = -result;
+        }
+        return result * jacobi(n.mod(BigInteger.valueOf(a)).longValue(), a);
+    }
+
+    private static int jacobi(long a, long n) {
+        int result = 1;
+        while (a != 0) {
+            while ((a & 1) == 0) {
+                a >>= 1;
+                long n8 = n & 7;
+                if ((n8 == 3) || (n8 == 5)) {
+                    result = -result;
+                }
+            }
+            long t = a;
+            a = n;
+            n = t;
+            if (((a & 3) == 3) && ((n & 3) == 3)) {
+                result = -result;
+            }
+            a %= n;
+        }
+        return (n == 1) ? result : 0;
+    }
+}
@@ -0,0 +1,113 @@
+package factorization;
+
+import common.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+// Runs all attempts (P-1 with different bases, rho with different polynomials, chunks of ECM curves...) for the same number
+// concurrently on executor. The first found nontrivial divisor interrupts the rest, both cofactors are raced again.
+// Attempts should return null if they are interrupted or find nothing
+public class RacingFactorizer extends Factorizer {
+    private static final Logger log = LoggerFactory.getLogger(RacingFactorizer.class);
+
+    private final TaskExecutor executor;
+    private final List<Attempt> attempts;
+    private final Map<String, AtomicLong> wins = new ConcurrentHashMap<>();
+
+    public RacingFactorizer(TaskExecutor executor, List<Attempt> attempts, int primeTestCertainty) {
+        super(primeTestCertainty, executor);
+        assert !attempts.isEmpty();
+        this.executor = executor;
+        this.attempts = List.copyOf(attempts);
+    }
+
+    @Override
+    protected Factorization factorizeInternal(BigInteger N) {
+        BigInteger divisor = race(N);
+        if (divisor == null) {
+            return Factorization.fromSingleFactor(N, false);
+        }
+        return processDivisor(divisor, N, this::factorizeInternal);
+    }
+
+    public BigInteger race(BigInteger N) {
+        AtomicReference<BigInteger> found = new AtomicReference<>();
+        BlockingQueue<Optional<BigInteger>> results = new LinkedBlockingQueue<>();
+        List<Future<BigInteger>> tasks = new ArrayList<>();
+        for (Attempt attempt : attempts) {
+            // with synchronous executor attempts are run right here, so the rest are skipped after success
+            if (found.get() != null) {
+                break;
+            }
+            tasks.add(executor.submit(() -> {
+                BigInteger d = null;
+                try {
+                    if (found.get() == null) {
+                        d = attempt.finder.apply(N);
+                        if ((d != null) && (d.equals(BigInteger.ONE) || d.equals(N))) {
+                            d = null;
+                        }
+                        if ((d != null) && found.compareAndSet(null, d)) {
+                            wins.computeIfAbsent(attempt.name, k -> new AtomicLong()).incrementAndGet();
+                        }
+                    }
+                } finally {
+                    results.add(Optional.ofNullable(d));
+                }
+                return d;
+            }));
+        }
+
+        try {
+            for (int i = 0; (i < tasks.size()) && (found.get() == null); i++) {
+                results.take();
+            }
+        } catch (InterruptedException e) {
+            // factorization is stopped from outside
+            tasks.forEach(task -> task.cancel(true));
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        tasks.forEach(task -> task.cancel(true));
+        for (Future<BigInteger> task : tasks) {
+            if (task.isDone() && !task.isCancelled()) {
+                try {
+                    task.get();
+                } catch (InterruptedException | ExecutionException | CancellationException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return found.get();
+    }
+
+    public void logStats() {
+        log.info("Racing factorizer wins: {}", new TreeMap<>(wins));
+    }
+
+    public static class Attempt {
+        private final String name;
+        private final Function<BigInteger, BigInteger> finder;
+
+        public Attempt(String name, Function<BigInteger, BigInteger> finder) {
+            this.name = name;
+            this.finder = finder;
+        }
+    }
+}
@@ -0,0 +1,652 @@
+package factorization;
+
+import common.Common;
+import common.ModUtils;
+import common.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Self-initializing quadratic sieve. Relations (Ax+B)^2 = A*(Ax^2 + 2Bx + C) (mod N) are collected by sieving Ax^2 + 2Bx + C
+// for x in [-M; M) over factor base of primes p for which kN is quadratic residue. A is product of s factor base primes,
+// every A gives 2^(s-1) polynomials with different B which are switched cheaply in Gray code order. Sieve goes by blocks,
+// primes below smallPrimeBound aren't sieved (only trial divided), values with one large prime left are combined in pairs.
+// When there are more relations than columns, singletons are removed and dense Gaussian elimination finds dependencies.
+// Workers sieve with their own A on executor and add relations to shared collector
+public class SiqsFactorizer extends Factorizer {
+    private static final Logger log = LoggerFactory.getLogger(SiqsFactorizer.class);
+
+    private static final int blockSize = 1<<15;
+    private static final int smallPrimeBound = 256;
+    private static final int thresholdMargin = 12;
+    private static final int extraRelations = 64;
+    private static final int maxRounds = 5;
+    private static final int minBitLength = 64;
+    // digits of kN, factor base size, half of sieve interval in blocks, large prime bound in multiples of the biggest factor base prime
+    private static final int[][] parameters = {
+            {20, 100, 1, 10}, {30, 200, 1, 20}, {40, 500, 2, 30}, {50, 1200, 2, 40}, {60, 2500, 3, 50},
+            {70, 5000, 4, 60}, {80, 10000, 6, 80}, {90, 20000, 8, 100}, {100, 40000, 12, 120}};
+    private static final int[] multipliers = {1, 2, 3, 5, 6, 7, 10, 11, 13, 14, 15, 17, 19, 21, 22, 23, 26, 29, 30, 31, 33, 34, 35,
+            37, 38, 39, 41, 42, 43, 46, 47, 51, 53, 55, 57, 58, 59, 61, 62, 65, 66, 67, 69, 70, 71, 73};
+
+    private final Primes primes;
+    private final TaskExecutor executor;
+
+    public SiqsFactorizer(Primes primes, TaskExecutor executor, int primeTestCertainty) {
+        super(primeTestCertainty, executor);
+        this.primes = primes;
+        this.executor = executor;
+    }
+
+    // primes are needed up to the biggest factor base prime, it's about 2*size*ln(size) for factor base of given size,
+    // multiplier adds up to 7 bits
+    public static long primesBound(int maxBitLength) {
+        int size = (int) interpolate((maxBitLength + 7) * Math.log10(2), 1);
+        return (long) (2.5 * size * Math.log(size)) + 1000;
+    }
+
+    @Override
+    protected Factorization factorizeInternal(BigInteger N) {
+        BigInteger divisor = findDivisor(N);
+        if (divisor == null) {
+            return Factorization.fromSingleFactor(N, false);
+        }
+        return processDivisor(divisor, N, this::factorizeInternal);
+    }
+
+    public BigInteger findDivisor(BigInteger N) {
+        assert N.compareTo(BigInteger.ONE) > 0;
+        if (!N.testBit(0)) {
+            return BigInteger.TWO;
+        }
+        for (int e = 2; e <= N.bitLength(); e++) {
+            BigInteger r = Common.root(N, e);
+            if (r.pow(e).equals(N)) {
+                return r;
+            }
+        }
+        if (N.bitLength() < minBitLength) {
+            return PollardRho.findDivisor(N, null);
+        }
+
+        long startTime = System.currentTimeMillis();
+        int k = chooseMultiplier(N);
+        BigInteger kN = N.multiply(BigInteger.valueOf(k));
+        double digits = kN.bitLength() * Math.log10(2);
+        int fbSize = (int) interpolate(digits, 1);
+        int M = (int) interpolate(digits, 2) * blockSize;
+        long largePrimeMultiplier = (long) interpolate(digits, 3);
+
+        FactorBase fb = new FactorBase(N, kN, k, fbSize);
+        if (fb.divisor != null) {
+            return fb.divisor;
+        }
+        long largePrimeBound = Math.min(fb.p[fb.size-1] * largePrimeMultiplier, fb.p[fb.size-1] * (long) fb.p[fb.size-1]);
+        log.debug("SIQS for {}-bit number: k={}, factor base {} primes up to {}, M={}, large prime bound {}",
+                N.bitLength(), k, fb.size, fb.p[fb.size-1], M, largePrimeBound);
+
+        Relations relations = new Relations(N, fb.size + 1 + extraRelations);
+        Set<BigInteger> usedA = ConcurrentHashMap.newKeySet();
+        AtomicBoolean stop = new AtomicBoolean();
+        int threadsNumber = executor.getThreadsNumber();
+        for (int round = 0; round < maxRounds; round++) {
+            List<Future<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < threadsNumber; t++) {
+                PolynomialSieve sieve = new PolynomialSieve(kN, fb, M, largePrimeBound, relations, usedA, stop, new Random(round*threadsNumber + t));
+                tasks.add(executor.submit(sieve));
+            }
+            try {
+                for (Future<Void> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                // factorization is stopped from outside
+                stop.set(true);
+                tasks.forEach(task -> task.cancel(true));
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+
+            BigInteger d = relations.solve(fb);
+            log.debug("SIQS round {} for {}-bit number: {} relations ({} from partials) in {}ms, divisor {}", round, N.bitLength(),
+                    relations.size(), relations.combined, System.currentTimeMillis() - startTime, d);
+            if (d != null) {
+                return d;
+            }
+            relations.increaseTarget(extraRelations);
+        }
+        return null;
+    }
+
+    private static double interpolate(double digits, int column) {
+        if (digits <= parameters[0][0]) {
+            return parameters[0][column];
+        }
+        for (int i = 1; i < parameters.length; i++) {
+            if (digits <= parameters[i][0]) {
+                double t = (digits - parameters[i-1][0]) / (parameters[i][0] - parameters[i-1][0]);
+                return parameters[i-1][column] + t * (parameters[i][column] - parameters[i-1][column]);
+            }
+        }
+        return parameters[parameters.length-1][column];
+    }
+
+    // Knuth-Schroeppel function: multiplier k which makes small primes divide kN*x^2 - y^2 more often
+    private int chooseMultiplier(BigInteger N) {
+        int best = 1;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int k : multipliers) {
+            BigInteger kN = N.multiply(BigInteger.valueOf(k));
+            double score = -0.5 * Math.log(k);
+            int mod8 = kN.mod(BigInteger.valueOf(8)).intValueExact();
+            if (mod8 == 1) {
+                score += 2 * Math.log(2);
+            } else if (mod8 == 5) {
+                score += Math.log(2);
+            } else if ((mod8 == 3) || (mod8 == 7)) {
+                score += 0.5 * Math.log(2);
+            }
+            for (int i = 1; (i < primes.size()) && (primes.get(i) < 1000); i++) {
+                long p = primes.get(i);
+                long r = kN.mod(BigInteger.valueOf(p)).longValueExact();
+                if (r == 0) {
+                    score += Math.log(p) / p;
+                } else if (ModUtils.pow(r, (p-1)/2, p) == 1) {
+                    score += 2 * Math.log(p) / (p-1);
+                }
+            }
+            if (score > bestScore) {
+                bestScore = score;
+                best = k;
+            }
+        }
+        return best;
+    }
+
+    private class FactorBase {
+        private final int size;
+        private final int[] p;
+        private final int[] sqrt;
+        private final byte[] logp;
+        private final double[] inverse;
+        // divisor of N found while factor base is built
+        private BigInteger divisor;
+
+        private FactorBase(BigInteger N, BigInteger kN, int k, int size) {
+            int[] p = new int[size];
+            int[] sqrt = new int[size];
+            int count = 0;
+            for (int i = 0; (i < primes.size()) && (count < size); i++) {
+                long q = primes.get(i);
+                if (q >= Integer.MAX_VALUE) {
+                    break;
+                }
+                long nMod = N.mod(BigInteger.valueOf(q)).longValueExact();
+                if ((nMod == 0) && !N.equals(BigInteger.valueOf(q))) {
+                    divisor = BigInteger.valueOf(q);
+                    break;
+                }
+                long r = kN.mod(BigInteger.valueOf(q)).longValueExact();
+                if (q == 2) {
+                    p[count++] = 2;
+                } else if (r == 0) {
+                    p[count] = (int) q;
+                    sqrt[count++] = 0;
+                } else {
+                    long s = ModUtils.sqrtMod(r, q);
+                    if (s >= 0) {
+                        p[count] = (int) q;
+                        sqrt[count++] = (int) s;
+                    }
+                }
+            }
+            if ((divisor == null) && (count < size)) {
+                log.warn("Primes are generated up to {} only, factor base has {} primes instead of {}", primes.get(primes.size()-1), count, size);
+            }
+            this.size = count;
+            this.p = Arrays.copyOf(p, count);
+            this.sqrt = Arrays.copyOf(sqrt, count);
+            this.logp = new byte[count];
+            this.inverse = new double[count];
+            for (int i = 0; i < count; i++) {
+                logp[i] = (byte) Math.round(Math.log(this.p[i]) / Math.log(2));
+                inverse[i] = 1.0 / this.p[i];
+            }
+        }
+    }
+
+    // column 0 is sign, column i+1 is i-th prime of factor base
+    private static class Relation {
+        private final BigInteger X;
+        private final int[] columns;
+        private final BigInteger largePrimes;
+
+        private Relation(BigInteger X, int[] columns, BigInteger largePrimes) {
+            this.X = X;
+            this.columns = columns;
+            this.largePrimes = largePrimes;
+        }
+    }
+
+    private static class Relations {
+        private final BigInteger N;
+        private final List<Relation> full = new ArrayList<>();
+        private final Map<Long, Relation> partials = new HashMap<>();
+        private int target;
+        private int combined = 0;
+
+        private Relations(BigInteger N, int target) {
+            this.N = N;
+            this.target = target;
+        }
+
+        private synchronized void add(Relation relation, long largePrime) {
+            if (largePrime == 1) {
+                full.add(relation);
+                return;
+            }
+            Relation pair = partials.putIfAbsent(largePrime, relation);
+            if ((pair != null) && !pair.X.equals(relation.X)) {
+                // (X1*X2)^2 = Q1*Q2 where large prime is squared, so it goes to the square root side
+                int[] columns = IntStream.concat(IntStream.of(pair.columns), IntStream.of(relation.columns)).toArray();
+                full.add(new Relation(pair.X.multiply(relation.X).mod(N), columns, BigInteger.valueOf(largePrime)));
+                combined++;
+            }
+        }
+
+        private synchronized boolean isEnough() {
+            return full.size() >= target;
+        }
+
+        private synchronized int size() {
+            return full.size();
+        }
+
+        private synchronized void increaseTarget(int extra) {
+            target = full.size() + extra;
+        }
+
+        private synchronized BigInteger solve(FactorBase fb) {
+            int columnsNumber = fb.size + 1;
+            List<int[]> rows = new ArrayList<>(full.size());
+            for (Relation relation : full) {
+                int[] count = new int[columnsNumber];
+                for (int c : relation.columns) {
+                    count[c]++;
+                }
+                rows.add(IntStream.range(0, columnsNumber).filter(c -> (count[c] & 1) == 1).toArray());
+            }
+
+            for (int[] rowIndices : BinaryMatrix.findDependencies(rows, columnsNumber, extraRelations)) {
+                List<Relation> dependency = new ArrayList<>();
+                for (int i : rowIndices) {
+                    dependency.add(full.get(i));
+                }
+                BigInteger d = squareRoot(dependency, fb);
+                if (d != null) {
+                    return d;
+                }
+            }
+            return null;
+        }
+
+        private BigInteger squareRoot(List<Relation> dependency, FactorBase fb) {
+            BigInteger X = BigInteger.ONE;
+            BigInteger Y = BigInteger.ONE;
+            int[] exponents = new int[fb.size + 1];
+            for (Relation relation : dependency) {
+                X = X.multiply(relation.X).mod(N);
+                Y = Y.multiply(relation.largePrimes).mod(N);
+                for (int c : relation.columns) {
+                    exponents[c]++;
+                }
+            }
+            for (int c = 1; c <= fb.size; c++) {
+                assert (exponents[c] & 1) == 0;
+                if (exponents[c] > 0) {
+                    Y = Y.multiply(BigInteger.valueOf(fb.p[c-1]).modPow(BigInteger.valueOf(exponents[c] / 2), N)).mod(N);
+                }
+            }
+            BigInteger d = N.gcd(X.subtract(Y));
+            return (d.equals(BigInteger.ONE) || d.equals(N)) ? null : d;
+        }
+    }
+
+    private static class PolynomialSieve implements Supplier<Void> {
+        private final BigInteger kN;
+        private final FactorBase fb;
+        private final int M;
+        private final long largePrimeBound;
+        private final Relations relations;
+        private final Set<BigInteger> usedA;
+        private final AtomicBoolean stop;
+        private final Random random;
+        private final int threshold;
+        private final int firstSieved;
+
+        private final int[] ainv;
+        private final int[] root1;
+        private final int[] root2;
+        private final int[] pos1;
+        private final int[] pos2;
+        private final int[] start1;
+        private final int[] start2;
+        private final boolean[] skip;
+        private final byte[] sieve = new byte[blockSize];
+
+        private BigInteger A;
+        private BigInteger B;
+        private BigInteger C;
+        private BigInteger[] Bl;
+        private int[] aFactors;
+        private int[][] bainv;
+
+        private PolynomialSieve(BigInteger kN, FactorBase fb, int M, long largePrimeBound, Relations relations, Set<BigInteger> usedA,
+                                AtomicBoolean stop, Random random)
+        {
+            this.kN = kN;
+            this.fb = fb;
+            this.M = M;
+            this.largePrimeBound = largePrimeBound;
+            this.relations = relations;
+            this.usedA = usedA;
+            this.stop = stop;
+            this.random = random;
+            // values of Ax^2 + 2Bx + C are up to M*sqrt(kN/2), the rest can be covered by large prime and not sieved small primes
+            double maxBits = Math.log(M) / Math.log(2) + (kN.bitLength() - 1) / 2.0;
+            int first = 0;
+            double smallPrimesBits = 2;
+            while ((first < fb.size) && (fb.p[first] < smallPrimeBound)) {
+                if ((fb.p[first] > 2) && (fb.sqrt[first] != 0)) {
+                    smallPrimesBits += 2 * Math.log(fb.p[first]) / Math.log(2) / (fb.p[first] - 1);
+                }
+                first++;
+            }
+            this.threshold = (int) Math.round(maxBits - Math.log(largePrimeBound) / Math.log(2) - smallPrimesBits - thresholdMargin);
+            this.firstSieved = first;
+            this.ainv = new int[fb.size];
+            this.root1 = new int[fb.size];
+            this.root2 = new int[fb.size];
+            this.pos1 = new int[fb.size];
+            this.pos2 = new int[fb.size];
+            this.start1 = new int[fb.size];
+            this.start2 = new int[fb.size];
+            this.skip = new boolean[fb.size];
+        }
+
+        @Override
+        public Void get() {
+            while (!relations.isEnough() && !stop.get() && !Thread.currentThread().isInterrupted()) {
+                if (!generateA()) {
+                    return null;
+                }
+                int polynomials = 1 << (aFactors.length - 1);
+                for (int i = 0; i < polynomials; i++) {
+                    if (i > 0) {
+                        nextB(i);
+                    }
+                    sievePolynomial();
+                    if (relations.isEnough() || stop.get() || Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                }
+            }
+            return null;
+        }
+
+        // A is product of s factor base primes with A close to sqrt(2kN)/M, then B = sum of Bl where Bl^2 = kN (mod ql), Bl = 0 mod A/ql
+        private boolean generateA() {
+            double logTarget = Math.log(2) * (kN.bitLength() + 1) / 2.0 - Math.log(M);
+            int s = Math.max(2, (int) Math.round(logTarget / Math.log(2000)));
+            int lo = firstSieved;
+            while ((lo < fb.size) && (fb.sqrt[lo] == 0)) {
+                lo++;
+            }
+            if (fb.size - lo < 2*s + 4) {
+                s = Math.max(2, (fb.size - lo - 4) / 2);
+            }
+            double logQ = logTarget / s;
+            int center = lo;
+            while ((center < fb.size - 1) && (Math.log(fb.p[center]) < logQ)) {
+                center++;
+            }
+            int window = Math.max(s + 4, fb.size / 20);
+            int from = Math.max(lo, center - window);
+            int to = Math.min(fb.size, Math.max(from + 2*s + 4, center + window));
+
+            for (int attempt = 0; attempt < 1000; attempt++) {
+                int[] factors = new int[s];
+                BigInteger a = BigInteger.ONE;
+                boolean ok = true;
+                for (int j = 0; j < s - 1; j++) {
+                    int idx = from + random.nextInt(to - from);
+                    for (int l = 0; l < j; l++) {
+                        if (factors[l] == idx) {
+                            ok = false;
+                        }
+                    }
+                    ok &= (fb.sqrt[idx] != 0);
+                    factors[j] = idx;
+                    a = a.multiply(BigInteger.valueOf(fb.p[idx]));
+                }
+                if (!ok) {
+                    continue;
+                }
+                // the last prime makes A as close to target as possible
+                double logLast = logTarget - Math.log(a.doubleValue());
+                int best = -1;
+                double bestDiff = Double.MAX_VALUE;
+                for (int idx = lo; idx < fb.size; idx++) {
+                    double diff = Math.abs(Math.log(fb.p[idx]) - logLast);
+                    boolean used = false;
+                    for (int l = 0; l < s - 1; l++) {
+                        used |= (factors[l] == idx);
+                    }
+                    if (!used && (fb.sqrt[idx] != 0) && (diff < bestDiff)) {
+                        bestDiff = diff;
+                        best = idx;
+                    }
+                }
+                if (best < 0) {
+                    return false;
+                }
+                factors[s-1] = best;
+                a = a.multiply(BigInteger.valueOf(fb.p[best]));
+                if (usedA.add(a)) {
+                    initPolynomial(a, factors);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void initPolynomial(BigInteger a, int[] factors) {
+            this.A = a;
+            this.aFactors = factors;
+            int s = factors.length;
+            this.Bl = new BigInteger[s];
+            BigInteger b = BigInteger.ZERO;
+            for (int j = 0; j < s; j++) {
+                int q = fb.p[factors[j]];
+                BigInteger Q = BigInteger.valueOf(q);
+                BigInteger aq = A.divide(Q);
+                long inv = ModUtils.modInverse(aq.mod(Q).longValueExact(), q);
+                long gamma = (fb.sqrt[factors[j]] * inv) % q;
+                if (gamma > q/2) {
+                    gamma = q - gamma;
+                }
+                Bl[j] = aq.multiply(BigInteger.valueOf(gamma));
+                b = b.add(Bl[j]);
+            }
+            this.B = b;
+            this.C = B.multiply(B).subtract(kN).divide(A);
+            assert B.multiply(B).subtract(kN).mod(A).signum() == 0;
+
+            Arrays.fill(skip, false);
+            for (int i = 0; i < firstSieved; i++) {
+                skip[i] = true;
+            }
+            for (int f : factors) {
+                skip[f] = true;
+            }
+            this.bainv = new int[s][fb.size];
+            for (int i = firstSieved; i < fb.size; i++) {
+                int p = fb.p[i];
+                if (fb.sqrt[i] == 0) {
+                    skip[i] = true;
+                }
+                if (skip[i]) {
+                    continue;
+                }
+                BigInteger P = BigInteger.valueOf(p);
+                ainv[i] = (int) ModUtils.modInverse(A.mod(P).longValueExact(), p);
+                for (int j = 0; j < s; j++) {
+                    bainv[j][i] = (int) ((2 * Bl[j].mod(P).longValueExact() * ainv[i]) % p);
+                }
+                long bMod = B.mod(P).longValueExact();
+                long t = fb.sqrt[i];
+                root1[i] = (int) ((ainv[i] * ((t - bMod + p) % p)) % p);
+                root2[i] = (int) ((ainv[i] * ((2L*p - t - bMod) % p)) % p);
+            }
+        }
+
+        // Gray code step: B(i+1) = B(i) + 2*e*B(v) where 2^v divides 2i exactly and e = (-1)^ceil(i/2^v)
+        private void nextB(int i) {
+            int v = Integer.numberOfTrailingZeros(i) + 1;
+            boolean plus = ((i >> v) & 1) == 1;
+            BigInteger step = Bl[v-1].shiftLeft(1);
+            B = plus ? B.add(step) : B.subtract(step);
+            C = B.multiply(B).subtract(kN).divide(A);
+            int[] delta = bainv[v-1];
+            for (int idx = firstSieved; idx < fb.size; idx++) {
+                if (skip[idx]) {
+                    continue;
+                }
+                int p = fb.p[idx];
+                if (plus) {
+                    root1[idx] = (root1[idx] - delta[idx] < 0) ? root1[idx] - delta[idx] + p : root1[idx] - delta[idx];
+                    root2[idx] = (root2[idx] - delta[idx] < 0) ? root2[idx] - delta[idx] + p : root2[idx] - delta[idx];
+                } else {
+                    root1[idx] = (root1[idx] + delta[idx] >= p) ? root1[idx] + delta[idx] - p : root1[idx] + delta[idx];
+                    root2[idx] = (root2[idx] + delta[idx] >= p) ? root2[idx] + delta[idx] - p : root2[idx] + delta[idx];
+                }
+            }
+        }
+
+        private void sievePolynomial() {
+            // positions are indices in [0; 2M) which stand for x = index - M
+            for (int idx = firstSieved; idx < fb.size; idx++) {
+                if (!skip[idx]) {
+                    int p = fb.p[idx];
+                    int shift = M % p;
+                    start1[idx] = pos1[idx] = (root1[idx] + shift) % p;
+                    start2[idx] = pos2[idx] = (root2[idx] + shift) % p;
+                }
+            }
+            byte[] sieve = this.sieve;
+            for (int blockStart = 0; blockStart < 2*M; blockStart += blockSize) {
+                Arrays.fill(sieve, (byte) 0);
+                for (int idx = firstSieved; idx < fb.size; idx++) {
+                    if (skip[idx]) {
+                        continue;
+                    }
+                    // positions are kept relative to current block
+                    int p = fb.p[idx];
+                    byte lp = fb.logp[idx];
+                    int j1 = Math.min(pos1[idx], pos2[idx]);
+                    int j2 = Math.max(pos1[idx], pos2[idx]);
+                    for (; j2 < blockSize; j1 += p, j2 += p) {
+                        sieve[j1] += lp;
+                        sieve[j2] += lp;
+                    }
+                    if (j1 < blockSize) {
+                        sieve[j1] += lp;
+                        j1 += p;
+                    }
+                    pos1[idx] = j1 - blockSize;
+                    pos2[idx] = j2 - blockSize;
+                }
+                for (int j = 0; j < blockSize; j++) {
+                    if ((sieve[j] & 0xFF) >= threshold) {
+                        checkCandidate(blockStart + j);
+                    }
+                }
+            }
+        }
+
+        private void checkCandidate(int index) {
+            long x = index - M;
+            BigInteger X = BigInteger.valueOf(x);
+            BigInteger v = A.multiply(X).add(B.shiftLeft(1)).multiply(X).add(C);
+            if (v.signum() == 0) {
+                return;
+            }
+            IntStream.Builder columns = IntStream.builder();
+            if (v.signum() < 0) {
+                columns.add(0);
+                v = v.negate();
+            }
+            for (int f : aFactors) {
+                columns.add(f + 1);
+            }
+            for (int idx = 0; idx < fb.size; idx++) {
+                int p = fb.p[idx];
+                if (skip[idx]) {
+                    if (p == 2) {
+                        int twos = v.getLowestSetBit();
+                        for (int t = 0; t < twos; t++) {
+                            columns.add(idx + 1);
+                        }
+                        v = v.shiftRight(twos);
+                        continue;
+                    }
+                } else {
+                    // index mod p by multiplication with reciprocal, quotient can be off by one
+                    int r = index - (int) (index * fb.inverse[idx]) * p;
+                    if (r < 0) {
+                        r += p;
+                    } else if (r >= p) {
+                        r -= p;
+                    }
+                    if ((r != start1[idx]) && (r != start2[idx])) {
+                        continue;
+                    }
+                }
+                BigInteger P = BigInteger.valueOf(p);
+                BigInteger[] qr = v.divideAndRemainder(P);
+                while (qr[1].signum() == 0) {
+                    columns.add(idx + 1);
+                    v = qr[0];
+                    qr = v.divideAndRemainder(P);
+                }
+            }
+            if (v.bitLength() >= 63) {
+                return;
+            }
+            long rest = v.longValueExact();
+            if ((rest == 1) || (rest < largePrimeBound)) {
+                relations.add(new Relation(A.multiply(X).add(B), columns.build().toArray(), BigInteger.ONE), rest);
+            }
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package factorization;
+
+import common.Common;
+import common.ModUtils;
+import common.TaskExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Special number field sieve for divisors of base^C - target with monic f(x) = x^d - k and g(x) = x - m from SnfsPolynomial.
+// Workers on executor take special-q ideals one by one and sieve them with SnfsSieve. Matrix has columns for sign of rational
+// norm, rational primes, algebraic ideals and quadratic characters of primes above large prime bound which make product of
+// a - b*alpha a square in the field, not only its ideal. Dependencies are found by BinaryMatrix and turned into divisors by
+// SnfsSquareRoot. If VM option -Dcadonfs.path is given, CADO-NFS is used instead of in-tree sieve.
+// Works for divisors of base^C - target only, other numbers are left unfactorized
+public class SnfsFactorizer extends Factorizer {
+    private static final Logger log = LoggerFactory.getLogger(SnfsFactorizer.class);
+
+    private static final int minBitLength = 64;
+    private static final int charactersNumber = 48;
+    private static final int extraRelations = 64;
+    private static final int maxRounds = 100;
+    // characters and special-q must not meet, special-q stay below large prime bound in practice
+    private static final long charactersStart = 1L<<30;
+    // digits of base^C, factor base bound, large prime bound in multiples of factor base bound, half width of sieved rows, rows number;
+    // smaller numbers use the first row, bigger ones aren't sieved at all, since parameters aren't known for them
+    private static final int[][] parameters = {
+            {30, 3000, 10, 1<<9, 128}, {50, 10000, 10, 1<<10, 256}, {70, 30000, 15, 1<<11, 512},
+            {90, 80000, 20, 1<<11, 1024}, {110, 200000, 25, 1<<12, 1024}, {130, 500000, 30, 1<<12, 2048}};
+    private static final int maxDigits = parameters[parameters.length-1][0];
+
+    private final BigInteger base;
+    private final int C;
+    private final BigInteger target;
+    private final TaskExecutor executor;
+
+    public SnfsFactorizer(BigInteger base, int C, BigInteger target, TaskExecutor executor, int primeTestCertainty) {
+        super(primeTestCertainty, executor);
+        this.base = base;
+        this.C = C;
+        this.target = target;
+        this.executor = executor;
+    }
+
+    // composites of base^C - target which are left after other factorizers and have at least minBitLength bits are passed to SNFS
+    public static Factorization factorizeComposites(Factorization factorization, BigInteger base, int C, BigInteger target,
+                                                    int minBitLength, int threadsNumber, int primeTestCertainty)
+    {
+        TaskExecutor executor = null;
+        try {
+            for (BigInteger composite : factorization.composites()) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (composite.bitLength() >= minBitLength) {
+                    if (executor == null) {
+                        executor = TaskExecutor.create(threadsNumber);
+                    }
+                    SnfsFactorizer snfs = new SnfsFactorizer(base, C, target, executor, primeTestCertainty);
+                    factorization = factorization.replaceComposite(composite, snfs.factorize(composite));
+                }
+            }
+        } finally {
+            if (executor != null) {
+                executor.shutdown();
+            }
+        }
+        return factorization;
+    }
+
+    @Override
+    protected Factorization factorizeInternal(BigInteger N) {
+        SnfsPolynomial polynomial = SnfsPolynomial.create(base, C, target);
+        if (polynomial.evaluate(N).signum() != 0) {
+            return Factorization.fromSingleFactor(N, false);
+        }
+        if (CadoNfsProcess.isAvailable()) {
+            List<BigInteger> factors = CadoNfsProcess.factorize(N, polynomial, executor.getThreadsNumber());
+            if ((factors == null) || !Common.multiply(factors.toArray(BigInteger[]::new)).equals(N)) {
+                return Factorization.fromSingleFactor(N, false);
+            }
+            // CADO-NFS returns all prime factors at once
+            try {
+                return Factorization.fromFactors(factors, factors.stream().filter(d -> !isPrime(d)).toList());
+            } catch (CancellationException e) {
+                return Factorization.fromSingleFactor(N, false);
+            }
+        }
+        BigInteger divisor = findDivisor(N);
+        if (divisor == null) {
+            return Factorization.fromSingleFactor(N, false);
+        }
+        return processDivisor(divisor, N, this::factorizeInternal);
+    }
+
+    public BigInteger findDivisor(BigInteger N) {
+        assert N.compareTo(BigInteger.ONE) > 0;
+        if (!N.testBit(0)) {
+            return BigInteger.TWO;
+        }
+        for (int e = 2; e <= N.bitLength(); e++) {
+            BigInteger r = Common.root(N, e);
+            if (r.pow(e).equals(N)) {
+                return r;
+            }
+        }
+        if (N.bitLength() < minBitLength) {
+            return PollardRho.findDivisor(N, null);
+        }
+        double digits = C * Math.log10(base.doubleValue());
+        if (digits > maxDigits) {
+            log.warn("{}^{} - {} has {} digits, in-tree SNFS has parameters up to {} digits only, SNFS is skipped", base, C, target,
+                    (int) Math.ceil(digits), maxDigits);
+            return null;
+        }
+        SnfsPolynomial polynomial = monicPolynomial();
+        if ((polynomial == null) || (polynomial.evaluate(N).signum() != 0)) {
+            log.warn("No irreducible monic polynomial for {}^{} - {}, SNFS is skipped", base, C, target);
+            return null;
+        }
+        // common divisor with m or f'(m) = d*m^(d-1) would break square root step
+        BigInteger g = N.gcd(polynomial.getM().multiply(BigInteger.valueOf(polynomial.getDegree())));
+        if (!g.equals(BigInteger.ONE)) {
+            return g.equals(N) ? null : g;
+        }
+
+        long startTime = System.currentTimeMillis();
+        long factorBaseBound = (long) interpolate(digits, 1);
+        long largePrimeBound = Math.min(factorBaseBound * (long) interpolate(digits, 2), charactersStart);
+        int I = Integer.highestOneBit((int) interpolate(digits, 3));
+        int J = (int) interpolate(digits, 4);
+        Primes primes = new Primes(factorBaseBound);
+        for (int i = 0; i < primes.size(); i++) {
+            BigInteger p = BigInteger.valueOf(primes.get(i));
+            if (N.mod(p).signum() == 0) {
+                return p;
+            }
+        }
+        SnfsSieve sieve = new SnfsSieve(polynomial, primes, factorBaseBound, largePrimeBound, I, J, factorBaseBound / 2);
+        log.debug("SNFS for {}-bit number with {}: factor base {}+{} ideals up to {}, large prime bound {}, I={}, J={}, special-q on {} side",
+                N.bitLength(), polynomial, sieve.factorBaseSize(SnfsSieve.rationalSide), sieve.factorBaseSize(SnfsSieve.algebraicSide),
+                factorBaseBound, largePrimeBound, I, J, (sieve.getSpecialSide() == SnfsSieve.rationalSide) ? "rational" : "algebraic");
+
+        int columnsNumber = sieve.factorBaseSize(SnfsSieve.rationalSide) + sieve.factorBaseSize(SnfsSieve.algebraicSide) + 1 + charactersNumber;
+        Relations relations = new Relations(characters(polynomial), columnsNumber + extraRelations);
+        SpecialQ specialQ = new SpecialQ(sieve, factorBaseBound / 2);
+        SnfsSquareRoot squareRoot = new SnfsSquareRoot(polynomial, N);
+        AtomicBoolean stop = new AtomicBoolean();
+        for (int round = 0; round < maxRounds; round++) {
+            List<Future<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < executor.getThreadsNumber(); t++) {
+                tasks.add(executor.submit(() -> {
+                    while (!stop.get() && !relations.isEnough() && !Thread.currentThread().isInterrupted()) {
+                        long[] qs = specialQ.next();
+                        List<SnfsSieve.Relation> found = (qs != null) ? sieve.sieve(qs[0], qs[1]) : null;
+                        if (found == null) {
+                            break;
+                        }
+                        relations.addAll(found);
+                    }
+                    return null;
+                }));
+            }
+            try {
+                for (Future<Void> task : tasks) {
+                    task.get();
+                }
+            } catch (InterruptedException e) {
+                // factorization is stopped from outside
+                stop.set(true);
+                tasks.forEach(task -> task.cancel(true));
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e);
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+
+            BigInteger d = relations.solve(squareRoot);
+            log.debug("SNFS round {} for {}-bit number: {} relations from {} special-q in {}ms, divisor {}", round, N.bitLength(),
+                    relations.size(), specialQ.count, System.currentTimeMillis() - startTime, d);
+            if (d != null) {
+                return d;
+            }
+            if (!relations.isEnough()) {
+                // special-q are exhausted
+                return null;
+            }
+            relations.increaseTarget();
+        }
+        return null;
+    }
+
+    // degree 3 is better for small numbers, f = x^d - k has to be irreducible, so other degrees are tried as well
+    private SnfsPolynomial monicPolynomial() {
+        double digits = C * Math.log10(base.doubleValue());
+        int preferred = (digits < 70) ? 3 : SnfsPolynomial.degree(base, C);
+        for (int delta = 0; delta <= 3; delta++) {
+            for (int degree : new int[] {preferred + delta, preferred - delta}) {
+                if ((degree >= 2) && (C / degree > 0)) {
+                    SnfsPolynomial polynomial = SnfsPolynomial.createMonic(base, C, target, degree);
+                    if (polynomial.isIrreducible()) {
+                        return polynomial;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    // ideals (q, s) with q above large prime bound, so they don't divide any norm, and f'(s) = d*s^(d-1) != 0 mod q
+    private static long[][] characters(SnfsPolynomial polynomial) {
+        long[][] characters = new long[charactersNumber][];
+        int count = 0;
+        long q = charactersStart;
+        while (count < charactersNumber) {
+            q = BigInteger.valueOf(q).nextProbablePrime().longValueExact();
+            for (long s : polynomial.rootsMod(q)) {
+                if ((count < charactersNumber) && (s != 0)) {
+                    characters[count++] = new long[] {q, s};
+                }
+            }
+        }
+        return characters;
+    }
+
+    private static double interpolate(double digits, int column) {
+        assert digits <= maxDigits;
+        if (digits <= parameters[0][0]) {
+            return parameters[0][column];
+        }
+        for (int i = 1; i < parameters.length; i++) {
+            if (digits <= parameters[i][0]) {
+                double t = (digits - parameters[i-1][0]) / (parameters[i][0] - parameters[i-1][0]);
+                return parameters[i-1][column] + t * (parameters[i][column] - parameters[i-1][column]);
+            }
+        }
+        throw new IllegalArgumentException("No SNFS parameters for " + digits + " digits");
+    }
+
+    // special-q ideals go in ascending order of q from half of factor base bound, the smaller q the higher yield
+    private static class SpecialQ {
+        private final SnfsSieve sieve;
+        private long q;
+        private long[] roots = new long[0];
+        private int rootIdx = 0;
+        private int count = 0;
+
+        private SpecialQ(SnfsSieve sieve, long first) {
+            this.sieve = sieve;
+            this.q = first;
+        }
+
+        private synchronized long[] next() {
+            while (rootIdx >= roots.length) {
+                q = BigInteger.valueOf(q).nextProbablePrime().longValueExact();
+                if (q >= charactersStart) {
+                    return null;
+                }
+                roots = sieve.specialRoots(q);
+                rootIdx = 0;
+            }
+            count++;
+            return new long[] {q, roots[rootIdx++]};
+        }
+    }
+
+    private static class Relations {
+        private final long[][] characters;
+        private final List<SnfsSieve.Relation> full = new ArrayList<>();
+        // bit i is set if i-th character of relation is -1
+        private final List<Long> characterBits = new ArrayList<>();
+        private final Set<List<Long>> points = new HashSet<>();
+        private int target;
+
+        private Relations(long[][] characters, int target) {
+            this.characters = characters;
+            this.target = target;
+        }
+
+        private synchronized void addAll(List<SnfsSieve.Relation> relations) {
+            for (SnfsSieve.Relation relation : relations) {
+                // the same point can be found with different special-q
+                if (points.add(List.of(relation.a, relation.b))) {
+                    full.add(relation);
+                    characterBits.add(characterBits(relation));
+                }
+            }
+        }
+
+        // Legendre symbol of a - b*s modulo q
+        private long characterBits(SnfsSieve.Relation relation) {
+            long bits = 0;
+            for (int i = 0; i < characters.length; i++) {
+                long q = characters[i][0];
+                long value = Math.floorMod(Math.floorMod(relation.a, q) - Math.floorMod(relation.b, q) * characters[i][1], q);
+                if (ModUtils.pow(value, (q-1)/2, q) != 1) {
+                    bits |= 1L << i;
+                }
+            }
+            return bits;
+        }
+
+        private synchronized boolean isEnough() {
+            return full.size() >= target;
+        }
+
+        private synchronized int size() {
+            return full.size();
+        }
+
+        // large primes make more columns than factor base has, so after failed attempt the target grows by tenth
+        private synchronized void increaseTarget() {
+            target = full.size() + full.size() / 10 + extraRelations;
+        }
+
+        // columns: quadratic characters, sign of rational norm, then rational primes and algebraic ideals as they are met
+        private synchronized BigInteger solve(SnfsSquareRoot squareRoot) {
+            Map<Long, Integer> rationalColumns = new HashMap<>();
+            Map<Long, Integer> algebraicColumns = new HashMap<>();
+            int[] columnsNumber = {characters.length + 1};
+            List<int[]> rows = new ArrayList<>(full.size());
+            for (int r = 0; r < full.size(); r++) {
+                SnfsSieve.Relation relation = full.get(r);
+                List<Integer> row = new ArrayList<>();
+                for (int i = 0; i < characters.length; i++) {
+                    if ((characterBits.get(r) & (1L << i)) != 0) {
+                        row.add(i);
+                    }
+                }
+                if (relation.negative) {
+                    row.add(characters.length);
+                }
+                for (long key : oddKeys(relation.rational)) {
+                    row.add(rationalColumns.computeIfAbsent(key, k -> columnsNumber[0]++));
+                }
+                for (long key : oddKeys(relation.algebraic)) {
+                    row.add(algebraicColumns.computeIfAbsent(key, k -> columnsNumber[0]++));
+                }
+                rows.add(row.stream().mapToInt(Integer::intValue).sorted().toArray());
+            }
+
+            for (int[] rowIndices : BinaryMatrix.findDependencies(rows, columnsNumber[0], extraRelations)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return null;
+                }
+                List<SnfsSieve.Relation> dependency = new ArrayList<>();
+                for (int i : rowIndices) {
+                    dependency.add(full.get(i));
+                }
+                BigInteger d = squareRoot.findDivisor(dependency);
+                if (d != null) {
+                    return d;
+                }
+            }
+            return null;
+        }
+
+        private static long[] oddKeys(long[] keys) {
+            long[] sorted = keys.clone();
+            Arrays.sort(sorted);
+            List<Long> odd = new ArrayList<>();
+            for (int i = 0; i < sorted.length; ) {
+                int j = i;
+                while ((j < sorted.length) && (sorted[j] == sorted[i])) {
+                    j++;
+                }
+                if (((j - i) & 1) == 1) {
+                    odd.add(sorted[i]);
+                }
+                i = j;
+            }
+            return odd.stream().mapToLong(Long::longValue).toArray();
+        }
+    }
+}
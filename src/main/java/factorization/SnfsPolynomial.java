@@ -0,0 +1,314 @@
+package factorization;
+
+import common.Common;
+import common.ModUtils;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// Polynomial pair for special number field sieve of divisors of base^C - target: algebraic f(x) = a*x^d - b and rational g(x) = x - m
+// with common root m modulo base^C - target. For C = d*q + r there are two choices:
+// f(x) = base^r * x^d - target with m = base^q, or f(x) = x^d - target * base^(d-r) with m = base^(q+1).
+// The one with smaller product of rational and algebraic norms is taken
+public class SnfsPolynomial {
+    private static final int[] degreeBounds = {110, 200};
+
+    private final int degree;
+    private final BigInteger[] coefficients;
+    private final BigInteger m;
+
+    private SnfsPolynomial(int degree, BigInteger[] coefficients, BigInteger m) {
+        this.degree = degree;
+        this.coefficients = coefficients;
+        this.m = m;
+    }
+
+    public static SnfsPolynomial create(BigInteger base, int C, BigInteger target) {
+        return create(base, C, target, degree(base, C));
+    }
+
+    // degree grows with size of base^C: 4 up to 110 digits, 5 up to 200 digits, 6 above
+    public static int degree(BigInteger base, int C) {
+        double digits = C * log(base) / Math.log(10);
+        int degree = 4;
+        while ((degree - 4 < degreeBounds.length) && (digits > degreeBounds[degree - 4])) {
+            degree++;
+        }
+        return degree;
+    }
+
+    public static SnfsPolynomial create(BigInteger base, int C, BigInteger target, int degree) {
+        assert (base.compareTo(BigInteger.ONE) > 0) && (target.signum() != 0) && (degree >= 2);
+        int q = C / degree;
+        int r = C % degree;
+        SnfsPolynomial first = binomial(degree, base.pow(r), target.negate(), base.pow(q));
+        if (r == 0) {
+            return first;
+        }
+        SnfsPolynomial second = binomial(degree, BigInteger.ONE, target.multiply(base.pow(degree - r)).negate(), base.pow(q + 1));
+        return (first.sizeScore() <= second.sizeScore()) ? first : second;
+    }
+
+    // monic choice only: x^d - target for r = 0, otherwise x^d - target * base^(d-r) with m = base^(q+1).
+    // In-tree sieve needs monic f, then a - b*alpha has norm F(a, b) = b^d * f(a/b) and Z[alpha] is an order of the field
+    public static SnfsPolynomial createMonic(BigInteger base, int C, BigInteger target, int degree) {
+        assert (base.compareTo(BigInteger.ONE) > 0) && (target.signum() != 0) && (degree >= 2);
+        int q = C / degree;
+        int r = C % degree;
+        if (r == 0) {
+            return binomial(degree, BigInteger.ONE, target.negate(), base.pow(q));
+        }
+        return binomial(degree, BigInteger.ONE, target.multiply(base.pow(degree - r)).negate(), base.pow(q + 1));
+    }
+
+    private static SnfsPolynomial binomial(int degree, BigInteger leading, BigInteger constant, BigInteger m) {
+        BigInteger[] coefficients = new BigInteger[degree + 1];
+        Arrays.fill(coefficients, BigInteger.ZERO);
+        coefficients[0] = constant;
+        coefficients[degree] = leading;
+        return new SnfsPolynomial(degree, coefficients, m);
+    }
+
+    public int getDegree() {
+        return degree;
+    }
+
+    public BigInteger getCoefficient(int i) {
+        return coefficients[i];
+    }
+
+    public BigInteger getM() {
+        return m;
+    }
+
+    public boolean isMonic() {
+        return coefficients[degree].equals(BigInteger.ONE);
+    }
+
+    // x^d - k is reducible over rationals only if k = t^p for p dividing d or 4 divides d and k = -4*t^4 (Capelli's theorem)
+    public boolean isIrreducible() {
+        assert isMonic();
+        BigInteger k = coefficients[0].negate();
+        for (int p = 2; p <= degree; p++) {
+            if ((degree % p == 0) && isPower(k, p)) {
+                return false;
+            }
+        }
+        BigInteger four = BigInteger.valueOf(4);
+        return (degree % 4 != 0) || (k.signum() > 0) || (k.mod(four).signum() != 0) || !isPower(k.negate().divide(four), 4);
+    }
+
+    private static boolean isPower(BigInteger k, int p) {
+        if (k.signum() < 0) {
+            return (p % 2 == 1) && isPower(k.negate(), p);
+        }
+        return Common.root(k, p).pow(p).equals(k);
+    }
+
+    // homogeneous F(a, b) = b^d * f(a/b), it's norm of a - b*alpha for monic f
+    public BigInteger norm(long a, long b) {
+        BigInteger A = BigInteger.valueOf(a);
+        BigInteger B = BigInteger.valueOf(b);
+        BigInteger result = BigInteger.ZERO;
+        BigInteger bPow = BigInteger.ONE;
+        for (int i = degree; i >= 0; i--) {
+            if (coefficients[i].signum() != 0) {
+                result = result.add(coefficients[i].multiply(A.pow(i)).multiply(bPow));
+            }
+            bPow = bPow.multiply(B);
+        }
+        return result;
+    }
+
+    // distinct roots of f modulo prime p < 2^31 in ascending order. They are roots of gcd(f, x^p - x), which is split into
+    // linear factors by Cantor-Zassenhaus method, small p are checked one by one
+    public long[] rootsMod(long p) {
+        assert (p > 1) && (p < (1L<<31));
+        BigInteger P = BigInteger.valueOf(p);
+        long[] f = new long[degree + 1];
+        for (int i = 0; i <= degree; i++) {
+            f[i] = coefficients[i].mod(P).longValue();
+        }
+        f = trim(f);
+        if (f.length <= 1) {
+            return new long[0];
+        }
+        List<Long> roots = new ArrayList<>();
+        if (p <= 2*degree + 2) {
+            for (long r = 0; r < p; r++) {
+                if (evaluate(f, r, p) == 0) {
+                    roots.add(r);
+                }
+            }
+        } else {
+            long[] xp = powMod(new long[] {0, 1}, p, f, p);
+            long[] g = gcd(f, subtract(xp, new long[] {0, 1}, p), p);
+            split(g, p, new Random(p), roots);
+        }
+        return roots.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static void split(long[] g, long p, Random random, List<Long> roots) {
+        if (g.length <= 1) {
+            return;
+        }
+        if (g.length == 2) {
+            roots.add(Common.mod(-g[0] * ModUtils.modInverse(g[1], p), p));
+            return;
+        }
+        // gcd with (x+a)^((p-1)/2) - 1 takes roots r for which r+a is quadratic residue, it's about half of them
+        while (true) {
+            long a = random.nextInt((int) p);
+            long[] h = powMod(new long[] {a, 1}, (p - 1) / 2, g, p);
+            h = gcd(g, subtract(h, new long[] {1}, p), p);
+            if ((h.length > 1) && (h.length < g.length)) {
+                split(h, p, random, roots);
+                split(divide(g, h, p), p, random, roots);
+                return;
+            }
+        }
+    }
+
+    private static long evaluate(long[] f, long x, long p) {
+        long result = 0;
+        for (int i = f.length - 1; i >= 0; i--) {
+            result = (result * x + f[i]) % p;
+        }
+        return result;
+    }
+
+    private static long[] trim(long[] a) {
+        int n = a.length;
+        while ((n > 0) && (a[n-1] == 0)) {
+            n--;
+        }
+        return (n == a.length) ? a : Arrays.copyOf(a, n);
+    }
+
+    private static long[] subtract(long[] a, long[] b, long p) {
+        long[] result = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++) {
+            result[i] = Common.mod(result[i] - b[i], p);
+        }
+        return trim(result);
+    }
+
+    private static long[] multiply(long[] a, long[] b, long p) {
+        if ((a.length == 0) || (b.length == 0)) {
+            return new long[0];
+        }
+        long[] result = new long[a.length + b.length - 1];
+        for (int i = 0; i < a.length; i++) {
+            for (int j = 0; j < b.length; j++) {
+                result[i+j] = (result[i+j] + a[i] * b[j]) % p;
+            }
+        }
+        return trim(result);
+    }
+
+    // quotient and remainder of a by b, b is nonzero
+    private static long[][] divideAndRemainder(long[] a, long[] b, long p) {
+        long[] r = Arrays.copyOf(a, a.length);
+        if (a.length < b.length) {
+            return new long[][] {new long[0], trim(r)};
+        }
+        long[] q = new long[a.length - b.length + 1];
+        long inv = ModUtils.modInverse(b[b.length-1], p);
+        for (int i = a.length - 1; i >= b.length - 1; i--) {
+            long t = (r[i] * inv) % p;
+            q[i - b.length + 1] = t;
+            if (t != 0) {
+                for (int j = 0; j < b.length; j++) {
+                    int k = i - b.length + 1 + j;
+                    r[k] = Common.mod(r[k] - t * b[j] % p, p);
+                }
+            }
+        }
+        return new long[][] {trim(q), trim(Arrays.copyOf(r, b.length - 1))};
+    }
+
+    private static long[] divide(long[] a, long[] b, long p) {
+        return divideAndRemainder(a, b, p)[0];
+    }
+
+    private static long[] powMod(long[] base, long e, long[] f, long p) {
+        long[] result = {1};
+        long[] x = divideAndRemainder(base, f, p)[1];
+        while (e > 0) {
+            if ((e & 1) == 1) {
+                result = divideAndRemainder(multiply(result, x, p), f, p)[1];
+            }
+            e >>= 1;
+            if (e > 0) {
+                x = divideAndRemainder(multiply(x, x, p), f, p)[1];
+            }
+        }
+        return result;
+    }
+
+    // monic gcd
+    private static long[] gcd(long[] a, long[] b, long p) {
+        while (b.length > 0) {
+            long[] r = divideAndRemainder(a, b, p)[1];
+            a = b;
+            b = r;
+        }
+        if (a.length == 0) {
+            return a;
+        }
+        long inv = ModUtils.modInverse(a[a.length-1], p);
+        long[] result = new long[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = (a[i] * inv) % p;
+        }
+        return result;
+    }
+
+    // sieve region is skewed to balance x^d and constant term
+    public double getSkew() {
+        return Math.exp((log(coefficients[0].abs()) - log(coefficients[degree])) / degree);
+    }
+
+    // f(m) mod N, zero for every divisor N of base^C - target
+    public BigInteger evaluate(BigInteger N) {
+        BigInteger result = BigInteger.ZERO;
+        for (int i = degree; i >= 0; i--) {
+            result = result.multiply(m).add(coefficients[i]).mod(N);
+        }
+        return result;
+    }
+
+    // polynomial file format of CADO-NFS, rational side is Y1*x + Y0
+    public String toCadoFormat(BigInteger N) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("n: ").append(N).append('\n');
+        sb.append("skew: ").append(String.format(Locale.ROOT, "%.3f", getSkew())).append('\n');
+        sb.append("type: snfs\n");
+        for (int i = 0; i <= degree; i++) {
+            sb.append('c').append(i).append(": ").append(coefficients[i]).append('\n');
+        }
+        sb.append("Y0: ").append(m.negate()).append('\n');
+        sb.append("Y1: 1\n");
+        return sb.toString();
+    }
+
+    // log of rational norm m plus log of algebraic norm sqrt(|a*b|) of balanced region
+    private double sizeScore() {
+        return log(m) + (log(coefficients[0].abs()) + log(coefficients[degree])) / 2;
+    }
+
+    // natural logarithm of positive number which may not fit double
+    private static double log(BigInteger x) {
+        int shift = Math.max(0, x.bitLength() - 64);
+        return Math.log(x.shiftRight(shift).doubleValue()) + shift * Math.log(2);
+    }
+
+    @Override
+    public String toString() {
+        return coefficients[degree] + "*x^" + degree + ((coefficients[0].signum() < 0) ? " - " : " + ") + coefficients[0].abs() + ", m = " + m;
+    }
+}
@@ -0,0 +1,326 @@
+package factorization;
+
+import common.ModUtils;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.LongStream;
+
+// Lattice siever of special number field sieve with monic f and g(x) = x - m. Special-q ideal (q, s) on one side gives lattice
+// of (a, b) with a = b*s (mod q), its reduced basis u, v turns sieve region into points (a, b) = i*u + j*v for i in [-I; I)
+// and j in [1; J]. Factor base ideal (p, r) divides norm of (a, b) if a = b*r (mod p), that is i = j*R (mod p) in lattice
+// coordinates, so every row j is sieved like line. Rational side has ideal (p, m mod p) for every prime p, algebraic side
+// has (p, r) for every root r of f mod p. Points where logs of both sides are big enough are factorized by trial division,
+// one large prime per side is allowed. Sieve is stateless, so different special-q are sieved concurrently
+class SnfsSieve {
+    static final int rationalSide = 0;
+    static final int algebraicSide = 1;
+
+    // primes below it aren't sieved, only trial divided
+    private static final int smallPrimeBound = 32;
+    private static final int thresholdMargin = 8;
+    // rows are split into segments with own thresholds, because norms change along the row
+    private static final int segmentLength = 64;
+    private static final int maxLogBits = 240;
+
+    private final SnfsPolynomial polynomial;
+    private final BigInteger m;
+    private final double mDouble;
+    private final double[] coefficients;
+    private final int I;
+    private final int J;
+    private final long largePrimeBound;
+    private final int specialSide;
+    private final FactorBase[] factorBases;
+    private final double[] logScale = new double[2];
+
+    SnfsSieve(SnfsPolynomial polynomial, Primes primes, long factorBaseBound, long largePrimeBound, int I, int J, long firstSpecialQ) {
+        assert polynomial.isMonic() && (largePrimeBound < (1L<<31));
+        this.polynomial = polynomial;
+        this.m = polynomial.getM();
+        this.mDouble = m.doubleValue();
+        this.coefficients = new double[polynomial.getDegree() + 1];
+        for (int i = 0; i <= polynomial.getDegree(); i++) {
+            coefficients[i] = polynomial.getCoefficient(i).doubleValue();
+        }
+        this.I = I;
+        this.J = J;
+        this.largePrimeBound = largePrimeBound;
+        this.factorBases = new FactorBase[] {new FactorBase(rationalSide, primes, factorBaseBound), new FactorBase(algebraicSide, primes, factorBaseBound)};
+
+        // special-q goes to the side with bigger norms, typical point has coordinates about I*sqrt(q)
+        double typical = I * Math.sqrt(firstSpecialQ);
+        double[] bits = {log2(normEstimate(rationalSide, typical, typical)), log2(normEstimate(algebraicSide, typical, typical))};
+        this.specialSide = (bits[rationalSide] >= bits[algebraicSide]) ? rationalSide : algebraicSide;
+        for (int side = 0; side < 2; side++) {
+            logScale[side] = Math.min(1, maxLogBits / Math.max(1, bits[side] + 8));
+            factorBases[side].initLogs(logScale[side]);
+        }
+    }
+
+    int getSpecialSide() {
+        return specialSide;
+    }
+
+    int factorBaseSize(int side) {
+        return factorBases[side].size;
+    }
+
+    // roots of special-q side modulo q
+    long[] specialRoots(long q) {
+        return (specialSide == rationalSide) ? new long[] {m.mod(BigInteger.valueOf(q)).longValue()} : polynomial.rootsMod(q);
+    }
+
+    static long idealKey(long p, long r) {
+        return (p << 32) | r;
+    }
+
+    // relation (a, b) with factorization of both norms: primes of rational norm a - b*m and ideals of algebraic norm F(a, b),
+    // every prime or ideal is repeated as many times as it divides the norm
+    static class Relation {
+        final long a;
+        final long b;
+        final boolean negative;
+        final long[] rational;
+        final long[] algebraic;
+
+        private Relation(long a, long b, boolean negative, long[] rational, long[] algebraic) {
+            this.a = a;
+            this.b = b;
+            this.negative = negative;
+            this.rational = rational;
+            this.algebraic = algebraic;
+        }
+    }
+
+    private class FactorBase {
+        private final int side;
+        private final int size;
+        private final int[] p;
+        private final int[] r;
+        private final byte[] logp;
+
+        private FactorBase(int side, Primes primes, long bound) {
+            List<long[]> ideals = new ArrayList<>();
+            for (int i = 0; (i < primes.size()) && (primes.get(i) <= bound); i++) {
+                long q = primes.get(i);
+                long[] roots = (side == rationalSide) ? new long[] {m.mod(BigInteger.valueOf(q)).longValue()} : polynomial.rootsMod(q);
+                for (long root : roots) {
+                    ideals.add(new long[] {q, root});
+                }
+            }
+            this.side = side;
+            this.size = ideals.size();
+            this.p = new int[size];
+            this.r = new int[size];
+            this.logp = new byte[size];
+            for (int i = 0; i < size; i++) {
+                p[i] = (int) ideals.get(i)[0];
+                r[i] = (int) ideals.get(i)[1];
+            }
+        }
+
+        private void initLogs(double scale) {
+            for (int i = 0; i < size; i++) {
+                logp[i] = (byte) Math.round(log2(p[i]) * scale);
+            }
+        }
+    }
+
+    // relations of special-q ideal (q, s), null if thread is interrupted
+    List<Relation> sieve(long q, long s) {
+        long[] basis = reduceBasis(q, s);
+        long a0 = basis[0], b0 = basis[1], a1 = basis[2], b1 = basis[3];
+        int[][] roots = new int[2][];
+        int[][] starts = new int[2][];
+        for (int side = 0; side < 2; side++) {
+            FactorBase fb = factorBases[side];
+            roots[side] = new int[fb.size];
+            starts[side] = new int[fb.size];
+            for (int k = 0; k < fb.size; k++) {
+                long p = fb.p[k];
+                long r = fb.r[k];
+                long U = Math.floorMod(Math.floorMod(a0, p) - Math.floorMod(b0, p) * r, p);
+                long V = Math.floorMod(Math.floorMod(a1, p) - Math.floorMod(b1, p) * r, p);
+                // ideal divides all points with j = 0 (mod p) or it's special-q itself, such primes are trial divided only
+                roots[side][k] = ((U == 0) || ((p == q) && (side == specialSide))) ? -1 : (int) ((p - V) * ModUtils.modInverse(U, p) % p);
+                // position of i = 0 in row j = 0, it moves by root from row to row
+                starts[side][k] = I % (int) p;
+            }
+        }
+
+        List<Relation> relations = new ArrayList<>();
+        byte[][] sieve = {new byte[2*I], new byte[2*I]};
+        int segments = (2*I + segmentLength - 1) / segmentLength;
+        int[][] thresholds = new int[2][segments];
+        double specialBits = log2(q);
+        double largePrimeBits = log2(largePrimeBound);
+        for (int j = 1; j <= J; j++) {
+            if (((j & 15) == 0) && Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+            for (int side = 0; side < 2; side++) {
+                FactorBase fb = factorBases[side];
+                byte[] row = sieve[side];
+                Arrays.fill(row, (byte) 0);
+                int[] root = roots[side];
+                int[] start = starts[side];
+                for (int k = 0; k < fb.size; k++) {
+                    if (root[k] < 0) {
+                        continue;
+                    }
+                    int p = fb.p[k];
+                    int idx = start[k] + root[k];
+                    if (idx >= p) {
+                        idx -= p;
+                    }
+                    start[k] = idx;
+                    if (p < smallPrimeBound) {
+                        continue;
+                    }
+                    byte lp = fb.logp[k];
+                    for (; idx < 2*I; idx += p) {
+                        row[idx] += lp;
+                    }
+                }
+                // threshold is set by the biggest norm at segment ends, large prime and not sieved small primes are subtracted
+                double special = (side == specialSide) ? specialBits : 0;
+                for (int seg = 0; seg < segments; seg++) {
+                    double bits = 0;
+                    for (int i : new int[] {seg * segmentLength - I, Math.min(2*I, (seg + 1) * segmentLength) - 1 - I}) {
+                        bits = Math.max(bits, log2(normEstimate(side, (double) i * a0 + (double) j * a1, (double) i * b0 + (double) j * b1)));
+                    }
+                    thresholds[side][seg] = (int) Math.max(0, Math.min(255, (bits - special - largePrimeBits - thresholdMargin) * logScale[side]));
+                }
+            }
+            byte[] rationalRow = sieve[rationalSide];
+            byte[] algebraicRow = sieve[algebraicSide];
+            for (int idx = 0; idx < 2*I; idx++) {
+                int seg = idx / segmentLength;
+                if (((rationalRow[idx] & 0xFF) >= thresholds[rationalSide][seg]) && ((algebraicRow[idx] & 0xFF) >= thresholds[algebraicSide][seg])) {
+                    long i = idx - I;
+                    Relation relation = checkCandidate(i*a0 + j*a1, i*b0 + j*b1, q, s, idx, roots, starts);
+                    if (relation != null) {
+                        relations.add(relation);
+                    }
+                }
+            }
+        }
+        return relations;
+    }
+
+    private Relation checkCandidate(long a, long b, long q, long s, int idx, int[][] roots, int[][] starts) {
+        if (b < 0) {
+            a = -a;
+            b = -b;
+        }
+        if ((b == 0) || (BigInteger.valueOf(a).gcd(BigInteger.valueOf(b)).compareTo(BigInteger.ONE) != 0)) {
+            return null;
+        }
+        BigInteger rationalNorm = BigInteger.valueOf(a).subtract(BigInteger.valueOf(b).multiply(m));
+        BigInteger algebraicNorm = polynomial.norm(a, b);
+        if ((rationalNorm.signum() == 0) || (algebraicNorm.signum() == 0)) {
+            return null;
+        }
+        long[] rational = factorize(rationalSide, rationalNorm.abs(), a, b, q, s, idx, roots, starts);
+        if (rational == null) {
+            return null;
+        }
+        long[] algebraic = factorize(algebraicSide, algebraicNorm.abs(), a, b, q, s, idx, roots, starts);
+        if (algebraic == null) {
+            return null;
+        }
+        return new Relation(a, b, rationalNorm.signum() < 0, rational, algebraic);
+    }
+
+    // primes (or ideal keys for algebraic side) of norm, null if cofactor is bigger than large prime bound
+    private long[] factorize(int side, BigInteger norm, long a, long b, long q, long s, int idx, int[][] roots, int[][] starts) {
+        LongStream.Builder factors = LongStream.builder();
+        if (side == specialSide) {
+            BigInteger[] qr = norm.divideAndRemainder(BigInteger.valueOf(q));
+            assert qr[1].signum() == 0;
+            norm = qr[0];
+            factors.add((side == rationalSide) ? q : idealKey(q, s));
+        }
+        FactorBase fb = factorBases[side];
+        for (int k = 0; k < fb.size; k++) {
+            int p = fb.p[k];
+            boolean hit;
+            if ((roots[side][k] >= 0) && (p >= smallPrimeBound)) {
+                hit = ((idx - starts[side][k]) % p == 0);
+            } else {
+                hit = (Math.floorMod(Math.floorMod(a, p) - Math.floorMod(b, p) * fb.r[k], (long) p) == 0);
+            }
+            if (!hit) {
+                continue;
+            }
+            BigInteger P = BigInteger.valueOf(p);
+            BigInteger[] qr = norm.divideAndRemainder(P);
+            while (qr[1].signum() == 0) {
+                factors.add((side == rationalSide) ? p : idealKey(p, fb.r[k]));
+                norm = qr[0];
+                qr = norm.divideAndRemainder(P);
+            }
+        }
+        if (norm.bitLength() >= 63) {
+            return null;
+        }
+        long rest = norm.longValue();
+        if (rest >= largePrimeBound) {
+            return null;
+        }
+        if (rest > 1) {
+            // all primes below factor base bound are divided out, so rest below its square is prime
+            factors.add((side == rationalSide) ? rest : idealKey(rest, Math.floorMod(Math.floorMod(a, rest) * ModUtils.modInverse(Math.floorMod(b, rest), rest), rest)));
+        }
+        return factors.build().toArray();
+    }
+
+    // Gauss reduction of basis (q, 0), (s, 1) with b scaled by skew of polynomial
+    private long[] reduceBasis(long q, long s) {
+        double skew = Math.max(1, polynomial.getSkew());
+        double w = skew * skew;
+        long ua = q, ub = 0, va = s, vb = 1;
+        while (true) {
+            double uu = (double) ua * ua + w * ub * ub;
+            double vv = (double) va * va + w * vb * vb;
+            if (vv < uu) {
+                long ta = ua, tb = ub;
+                ua = va;
+                ub = vb;
+                va = ta;
+                vb = tb;
+                double t = uu;
+                uu = vv;
+                vv = t;
+            }
+            long mu = Math.round(((double) ua * va + w * ub * vb) / uu);
+            if (mu == 0) {
+                break;
+            }
+            va -= mu * ua;
+            vb -= mu * ub;
+        }
+        return new long[] {ua, ub, va, vb};
+    }
+
+    private double normEstimate(int side, double a, double b) {
+        if (side == rationalSide) {
+            return Math.abs(a - b * mDouble);
+        }
+        double result = 0;
+        double bPow = 1;
+        for (int i = 0; i < coefficients.length; i++) {
+            result = result * a + coefficients[coefficients.length - 1 - i] * bPow;
+            bPow *= b;
+        }
+        return Math.abs(result);
+    }
+
+    private static double log2(double x) {
+        return (x >= 1) ? Math.log(x) / Math.log(2) : 0;
+    }
+}
@@ -0,0 +1,255 @@
+package factorization;
+
+import common.ModUtils;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Square root step of special number field sieve for monic f. Dependency of relations (a, b) gives square Y^2 of product
+// of rational norms a - b*m and (supposedly) square of product of a - b*alpha, so gamma^2 = delta = f'(alpha)^2 * prod(a - b*alpha)
+// has gamma in Z[alpha]. delta is computed exactly modulo f by product tree. Modulo prime p where f has d distinct roots r_i
+// square roots of delta(r_i) give gamma mod p up to signs, for every choice of signs inverse square root is lifted to p^k
+// by Newton iterations and gamma = delta / sqrt(delta) is checked by squaring. Then f'(m)*Y and gamma(m) are square roots of
+// the same number modulo N
+class SnfsSquareRoot {
+    private static final long firstPrime = 1L<<30;
+    private static final int precisionMargin = 64;
+
+    private final SnfsPolynomial polynomial;
+    private final BigInteger N;
+    private final int d;
+    private final BigInteger[] f;
+
+    SnfsSquareRoot(SnfsPolynomial polynomial, BigInteger N) {
+        assert polynomial.isMonic();
+        this.polynomial = polynomial;
+        this.N = N;
+        this.d = polynomial.getDegree();
+        this.f = new BigInteger[d + 1];
+        for (int i = 0; i <= d; i++) {
+            f[i] = polynomial.getCoefficient(i);
+        }
+    }
+
+    // rational primes of every relation are listed with multiplicity, their product is positive in dependency
+    BigInteger findDivisor(List<SnfsSieve.Relation> dependency) {
+        Map<Long, Integer> exponents = new HashMap<>();
+        for (SnfsSieve.Relation relation : dependency) {
+            for (long p : relation.rational) {
+                exponents.merge(p, 1, Integer::sum);
+            }
+        }
+        BigInteger Y = derivativeAt(polynomial.getM()).mod(N);
+        for (Map.Entry<Long, Integer> e : exponents.entrySet()) {
+            assert (e.getValue() & 1) == 0;
+            Y = Y.multiply(BigInteger.valueOf(e.getKey()).modPow(BigInteger.valueOf(e.getValue() / 2), N)).mod(N);
+        }
+
+        BigInteger[] delta = product(dependency, 0, dependency.size());
+        BigInteger[] derivative = derivative();
+        delta = multiply(delta, multiply(derivative, derivative, null), null);
+        BigInteger[] gamma = squareRoot(delta);
+        if (gamma == null) {
+            return null;
+        }
+        BigInteger X = BigInteger.ZERO;
+        for (int i = d - 1; i >= 0; i--) {
+            X = X.multiply(polynomial.getM()).add(gamma[i]).mod(N);
+        }
+        BigInteger divisor = N.gcd(X.subtract(Y));
+        return (divisor.equals(BigInteger.ONE) || divisor.equals(N)) ? null : divisor;
+    }
+
+    // product of a - b*x modulo f
+    private BigInteger[] product(List<SnfsSieve.Relation> relations, int from, int to) {
+        if (to - from == 1) {
+            BigInteger[] result = zero();
+            SnfsSieve.Relation relation = relations.get(from);
+            result[0] = BigInteger.valueOf(relation.a);
+            if (d > 1) {
+                result[1] = BigInteger.valueOf(-relation.b);
+            }
+            return result;
+        }
+        int mid = (from + to) >>> 1;
+        return multiply(product(relations, from, mid), product(relations, mid, to), null);
+    }
+
+    // gamma with gamma^2 = delta modulo f, null if delta isn't square or p^k precision isn't enough
+    private BigInteger[] squareRoot(BigInteger[] delta) {
+        long p = firstPrime;
+        long[] roots;
+        do {
+            p = BigInteger.valueOf(p).nextProbablePrime().longValueExact();
+            roots = polynomial.rootsMod(p);
+        } while ((roots.length < d) || anyZero(delta, roots, p));
+
+        long[] s = new long[d];
+        for (int i = 0; i < d; i++) {
+            long value = evaluate(delta, roots[i], p);
+            s[i] = ModUtils.sqrtMod(value, p);
+            if (s[i] < 0) {
+                return null;
+            }
+        }
+
+        // coefficients of gamma are estimated by its size in complex embeddings, |alpha| is about skew
+        double skewBits = Math.log(Math.max(1, polynomial.getSkew())) / Math.log(2);
+        double deltaBits = 0;
+        for (int i = 0; i < d; i++) {
+            deltaBits = Math.max(deltaBits, delta[i].bitLength() + i * skewBits);
+        }
+        int precisionBits = (int) (deltaBits / 2) + d * (int) skewBits + precisionMargin;
+        int k = 1;
+        BigInteger P = BigInteger.valueOf(p);
+        while (P.pow(k).bitLength() <= precisionBits) {
+            k <<= 1;
+        }
+
+        // gamma and -gamma are the same, so sign of the first root is fixed
+        for (int signs = 0; signs < (1 << (d - 1)); signs++) {
+            long[] values = new long[d];
+            for (int i = 0; i < d; i++) {
+                long root = (((signs << 1) >> i) & 1) == 0 ? s[i] : p - s[i];
+                values[i] = ModUtils.modInverse(root, p);
+            }
+            BigInteger[] y = interpolate(roots, values, p);
+            BigInteger modulus = P;
+            for (int e = 1; e < k; e <<= 1) {
+                modulus = modulus.multiply(modulus);
+                // y = y * (3 - delta*y^2) / 2
+                BigInteger[] t = multiply(reduce(delta, modulus), multiply(y, y, modulus), modulus);
+                t[0] = BigInteger.valueOf(3).subtract(t[0]);
+                for (int i = 1; i < d; i++) {
+                    t[i] = t[i].negate();
+                }
+                y = multiply(y, t, modulus);
+                BigInteger half = BigInteger.TWO.modInverse(modulus);
+                for (int i = 0; i < d; i++) {
+                    y[i] = y[i].multiply(half).mod(modulus);
+                }
+            }
+            BigInteger[] gamma = multiply(reduce(delta, modulus), y, modulus);
+            BigInteger halfModulus = modulus.shiftRight(1);
+            for (int i = 0; i < d; i++) {
+                if (gamma[i].compareTo(halfModulus) > 0) {
+                    gamma[i] = gamma[i].subtract(modulus);
+                }
+            }
+            BigInteger[] square = multiply(gamma, gamma, null);
+            boolean equal = true;
+            for (int i = 0; i < d; i++) {
+                equal &= square[i].equals(delta[i]);
+            }
+            if (equal) {
+                return gamma;
+            }
+        }
+        return null;
+    }
+
+    private boolean anyZero(BigInteger[] a, long[] roots, long p) {
+        for (long root : roots) {
+            if (evaluate(a, root, p) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Lagrange polynomial with values[i] at roots[i] modulo p
+    private BigInteger[] interpolate(long[] roots, long[] values, long p) {
+        long[] result = new long[d];
+        for (int i = 0; i < d; i++) {
+            long[] basis = {1};
+            long denominator = 1;
+            for (int j = 0; j < d; j++) {
+                if (j != i) {
+                    long[] next = new long[basis.length + 1];
+                    for (int t = 0; t < basis.length; t++) {
+                        next[t + 1] = (next[t + 1] + basis[t]) % p;
+                        next[t] = Math.floorMod(next[t] - basis[t] * roots[j] % p, p);
+                    }
+                    basis = next;
+                    denominator = denominator * Math.floorMod(roots[i] - roots[j], p) % p;
+                }
+            }
+            long c = values[i] * ModUtils.modInverse(denominator, p) % p;
+            for (int t = 0; t < d; t++) {
+                result[t] = (result[t] + basis[t] * c) % p;
+            }
+        }
+        BigInteger[] poly = zero();
+        for (int i = 0; i < d; i++) {
+            poly[i] = BigInteger.valueOf(result[i]);
+        }
+        return poly;
+    }
+
+    // a(x) mod p for x < p
+    private static long evaluate(BigInteger[] a, long x, long p) {
+        BigInteger P = BigInteger.valueOf(p);
+        long result = 0;
+        for (int i = a.length - 1; i >= 0; i--) {
+            result = (result * x + a[i].mod(P).longValue()) % p;
+        }
+        return result;
+    }
+
+    private BigInteger derivativeAt(BigInteger x) {
+        BigInteger result = BigInteger.ZERO;
+        for (int i = d; i >= 1; i--) {
+            result = result.multiply(x).add(f[i].multiply(BigInteger.valueOf(i)));
+        }
+        return result;
+    }
+
+    private BigInteger[] derivative() {
+        BigInteger[] result = zero();
+        for (int i = 1; i <= d; i++) {
+            result[i - 1] = f[i].multiply(BigInteger.valueOf(i));
+        }
+        // f is monic, so x^(d-1) coefficient d is fine without reduction
+        return result;
+    }
+
+    private BigInteger[] zero() {
+        BigInteger[] result = new BigInteger[d];
+        Arrays.fill(result, BigInteger.ZERO);
+        return result;
+    }
+
+    private static BigInteger[] reduce(BigInteger[] a, BigInteger modulus) {
+        BigInteger[] result = new BigInteger[a.length];
+        for (int i = 0; i < a.length; i++) {
+            result[i] = a[i].mod(modulus);
+        }
+        return result;
+    }
+
+    // a*b modulo monic f and modulus (if not null)
+    private BigInteger[] multiply(BigInteger[] a, BigInteger[] b, BigInteger modulus) {
+        BigInteger[] c = new BigInteger[2*d - 1];
+        Arrays.fill(c, BigInteger.ZERO);
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j < d; j++) {
+                c[i + j] = c[i + j].add(a[i].multiply(b[j]));
+            }
+        }
+        for (int k = 2*d - 2; k >= d; k--) {
+            if (c[k].signum() != 0) {
+                for (int i = 0; i < d; i++) {
+                    c[k - d + i] = c[k - d + i].subtract(c[k].multiply(f[i]));
+                }
+            }
+        }
+        BigInteger[] result = new BigInteger[d];
+        for (int i = 0; i < d; i++) {
+            result[i] = (modulus != null) ? c[i].mod(modulus) : c[i];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,36 @@
+package factorization;
+
+import java.math.BigInteger;
+
+// First stage (P-1, rho, ECM...) strips small factors, composites left after it with bit length in [siqsMinBitLength; siqsMaxBitLength]
+// are usually balanced products of big primes, so they are passed to SIQS whose running time doesn't depend on size of factors
+public class StagedFactorizer extends Factorizer {
+
+    private final Factorizer first;
+    private final SiqsFactorizer siqs;
+    private final int siqsMinBitLength;
+    private final int siqsMaxBitLength;
+
+    public StagedFactorizer(Factorizer first, SiqsFactorizer siqs, int siqsMinBitLength, int siqsMaxBitLength, int primeTestCertainty) {
+        super(primeTestCertainty);
+        this.first = first;
+        this.siqs = siqs;
+        this.siqsMinBitLength = siqsMinBitLength;
+        this.siqsMaxBitLength = siqsMaxBitLength;
+    }
+
+    @Override
+    protected Factorization factorizeInternal(BigInteger N) {
+        Factorization result = first.factorize(N);
+        for (BigInteger composite : result.composites()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            int bitLength = composite.bitLength();
+            if ((bitLength >= siqsMinBitLength) && (bitLength <= siqsMaxBitLength)) {
+                result = result.replaceComposite(composite, siqs.factorize(composite));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+package factorization;
+
+import common.MontgomeryMod;
+import org.apache.commons.math3.util.Pair;
+
+import java.math.BigInteger;
+
+// Williams P+1: for Lucas sequence V_k(P0) and prime p it holds V_M(P0) = 2 (mod p) if p - (D/p) divides M, where D = P0^2 - 4.
+// So p is found if p+1 is smooth (or p-1, if D is quadratic residue modulo p) and different seeds P0 give different D.
+// Exponent of the first stage and second stage tables are taken from PollardPm1, only b^M is replaced by V_M(b)
+public class WilliamsPp1 {
+    // 2/7 and 6/5 make group order divisible by 6 and 4 respectively, next seeds are 3, 4, 5...
+    private static final long[][] fractionSeeds = {{2, 7}, {6, 5}};
+    private static final PollardPm1.Power lucas = WilliamsPp1::lucasV;
+
+    private final PollardPm1 pollardPm1;
+
+    public WilliamsPp1(PollardPm1 pollardPm1) {
+        this.pollardPm1 = pollardPm1;
+    }
+
+    public BigInteger findDivisor(BigInteger N, int tries) {
+        return findDivisor(N, 0, tries);
+    }
+
+    // i-th try uses i-th seed
+    public BigInteger findDivisor(BigInteger N, int firstTry, int tries) {
+        assert N.compareTo(BigInteger.ONE) > 0;
+        if (!N.testBit(0)) {
+            return N.equals(BigInteger.TWO) ? null : BigInteger.TWO;
+        }
+        BigInteger V = null;
+        for (int i = firstTry; i < firstTry + tries; i++) {
+            BigInteger denominator = BigInteger.valueOf((i < fractionSeeds.length) ? fractionSeeds[i][1] : 1);
+            BigInteger gcd = N.gcd(denominator);
+            if (!gcd.equals(BigInteger.ONE)) {
+                return N.equals(gcd) ? null : gcd;
+            }
+            BigInteger seed = (i < fractionSeeds.length)
+                    ? BigInteger.valueOf(fractionSeeds[i][0]).multiply(denominator.modInverse(N)).mod(N)
+                    : BigInteger.valueOf(i - fractionSeeds.length + 3).mod(N);
+
+            Pair<BigInteger, BigInteger> firstStage = pollardPm1.runFirstStage(N, seed, lucas, BigInteger.TWO);
+            if (firstStage == null) {
+                return null;
+            }
+            if (firstStage.getFirst() != null) {
+                return firstStage.getFirst();
+            }
+            V = firstStage.getSecond();
+            if (V.signum() != 0) {
+                break;
+            }
+        }
+        return ((V != null) && (V.signum() != 0)) ? pollardPm1.runSecondStageLucas(N, V) : null;
+    }
+
+    static BigInteger lucasV(BigInteger P, BigInteger k, BigInteger N) {
+        MontgomeryMod mod = new MontgomeryMod(N);
+        long[] result = mod.create();
+        mod.lucasV(mod.toMontgomery(P), k, result);
+        return mod.fromMontgomery(result);
+    }
+}
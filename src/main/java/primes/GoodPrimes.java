@@ -13,6 +13,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.concurrent.Future;
 import java.util.stream.LongStream;
 
@@ -51,6 +52,11 @@ public class GoodPrimes {
         return goodPrimes.length;
     }
 
+    public int floorIdx(long n) {
+        int idx = Arrays.binarySearch(goodPrimes, n);
+        return (idx >= 0) ? idx : -(idx+1) - 1;
+    }
+
     public static GoodPrimes generate(long limit, long base, long target, Primes primes, TaskExecutor executor) {
         long startTime = System.currentTimeMillis();
         log.info("Start generating good primes up to {}...", limit);
@@ -1,6 +1,7 @@
 package primes;
 
 import com.carrotsearch.hppc.BitSet;
+import common.Common;
 
 import java.util.Arrays;
 import java.util.stream.LongStream;
@@ -9,8 +10,10 @@ public class Primes {
 
     private final long[] primes;
     private final BitSet isPrime;
+    private final long limit;
 
     public Primes(long limit) {
+        this.limit = limit;
         if (limit < 2) {
             this.primes = new long[0];
             this.isPrime = new BitSet();
@@ -54,6 +57,30 @@ public class Primes {
         return (idx >= 0) ? idx : -(idx+1) - 1;
     }
 
+    // bit i is set if from+i is prime; primes are needed up to sqrt(from+length) at least
+    public java.util.BitSet segment(long from, int length) {
+        assert (from >= 0) && (length >= 0);
+        long to = from + length;
+        if (limit < Common.sqrt(Math.max(0, to - 1))) {
+            throw new IllegalArgumentException("Primes are generated up to " + limit + ", it's not enough to sieve up to " + to);
+        }
+        java.util.BitSet result = new java.util.BitSet(length);
+        result.set(0, length);
+        for (long n = from; n < Math.min(to, 2); n++) {
+            result.clear((int) (n - from));
+        }
+        for (long p : primes) {
+            if (p > to / p) {
+                break;
+            }
+            long start = Math.max(p*p, ((from + p - 1) / p) * p);
+            for (long m = start; m < to; m += p) {
+                result.clear((int) (m - from));
+            }
+        }
+        return result;
+    }
+
     public long[] factorize(long n) {
         assert n > 0;
         long lastPrime = (primes.length > 0) ? primes[primes.length-1] : 1;
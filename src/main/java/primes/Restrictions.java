@@ -87,6 +87,12 @@ public class Restrictions {
     }
 
     public static BigInteger[] merge(long base, long targetRemainder, long C, long A, long B, long p, long a, long b) {
+        try {
+            long[] AB = mergeExact(base, targetRemainder, C, A, B, p, a, b);
+            return (AB != null) ? new BigInteger[] {BigInteger.valueOf(AB[0]), BigInteger.valueOf(AB[1])} : null;
+        } catch (ArithmeticException e) {
+            // some of intermediate values don't fit into long, fallback to BigInteger
+        }
         return merge(BigInteger.valueOf(base), BigInteger.valueOf(targetRemainder),
                 BigInteger.valueOf(C), BigInteger.valueOf(A), BigInteger.valueOf(B),
                 BigInteger.valueOf(p), BigInteger.valueOf(a), BigInteger.valueOf(b));
@@ -124,4 +130,61 @@ public class Restrictions {
             return null;
         }
     }
+
+    // same as merge() but all calculations are done in long
+    // throws ArithmeticException if some of values don't fit into long
+    public static long[] mergeExact(long base, long targetRemainder, long C, long A, long B, long p, long a, long b) {
+        long[] result = new long[2];
+        return mergeExact(base, targetRemainder, C, A, B, p, a, b, result) ? result : null;
+    }
+
+    // writes new {A, B} to result without allocations, returns false if restrictions are incompatible.
+    // C*p fits long if merge succeeds
+    public static boolean mergeExact(long base, long targetRemainder, long C, long A, long B, long p, long a, long b, long[] result) {
+        assert base > 1;
+        if (!mergeCongruences(C, A, B, p, a, b, result)) {
+            return false;
+        }
+        long N = Math.multiplyExact(C, p);
+
+        // base^((B+A)*N) is calculated as (base^(B+A))^N to avoid overflow of exponent
+        long r = ModUtils.pow(Common.mod(base, N), Math.addExact(result[1], result[0]), N);
+        r = ModUtils.pow(r, N, N);
+        return r == Common.mod(targetRemainder, N);
+    }
+
+    // first part of mergeExact(): writes {A, B} to result, they are restrictions of C*p only if check of merge passes
+    public static boolean mergeCongruences(long C, long A, long B, long p, long a, long b, long[] result) {
+        if (!ModUtils.divideLinearSum(A, B, p, result)) {
+            return false;
+        }
+        if (!ModUtils.merge(Math.multiplyExact(result[0], C), Math.multiplyExact(result[1], C), a, b, result)) {
+            return false;
+        }
+        result[0] /= C;
+        result[1] /= C;
+        return true;
+    }
+
+    // check of mergeExact() for {A, B} written by mergeCongruences() when C*p is squarefree: base^e = target modulo prime q
+    // iff e = b_q modulo a_q for restriction (a_q, b_q) of q, so base^((B+A)*N) = target modulo N is checked for every prime
+    // of N = C*p without exponentiation. qa[j] and qb[j] for j < count are restrictions of primes of C
+    public static boolean checkSquarefree(long C, long A, long B, long p, long a, long b, long[] qa, long[] qb, int count) {
+        long e = Math.addExact(A, B);
+        if (!checkPrime(e, C, p, a, b)) {
+            return false;
+        }
+        for (int j = 0; j < count; j++) {
+            if (!checkPrime(e, C, p, qa[j], qb[j])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // e*C*p = b modulo a
+    private static boolean checkPrime(long e, long C, long p, long a, long b) {
+        long n = ModUtils.multiplyMod(C%a, p%a, a);
+        return ModUtils.multiplyMod(e%a, n, a) == b;
+    }
 }
@@ -0,0 +1,148 @@
+package scan;
+
+import common.TaskExecutor;
+import org.apache.commons.math3.util.Pair;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+// Collects small scans and runs them as batches: each batch is split into groups of similar total length,
+// every group is scanned sequentially in one thread of executor. Results are handed to callbacks
+// in the thread which calls poll() or flush(), so callbacks don't need any synchronization.
+// Callbacks get result of scan and CPU time spent on it in nanoseconds
+public class ScanBatcher {
+    private final Scanner scanner;
+    private final TaskExecutor executor;
+    private final int batchSize;
+    private final long maxLength;
+    private final int maxRunningGroups;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+
+    private final List<Request> pending = new ArrayList<>();
+    private final Deque<Future<List<Request>>> running = new ArrayDeque<>();
+
+    public ScanBatcher(Scanner scanner, TaskExecutor executor, int batchSize, long maxLength) {
+        assert batchSize > 0;
+        this.scanner = scanner;
+        this.executor = executor;
+        this.batchSize = batchSize;
+        this.maxLength = Math.min(maxLength, Integer.MAX_VALUE);
+        this.maxRunningGroups = 2 * executor.getThreadsNumber();
+    }
+
+    // returns false if scan is too long for batching, in that case it should be done by caller
+    public boolean submit(BigInteger C, List<BigInteger> primesOfC, BigInteger A, BigInteger B, long from, long length, boolean checkCandidates,
+                          BiConsumer<Pair<BigInteger[], Long>, Long> callback)
+    {
+        if (length > maxLength) {
+            return false;
+        }
+        pending.add(new Request(C, primesOfC, A, B, from, length, checkCandidates, callback));
+        if (pending.size() >= batchSize) {
+            dispatch();
+        }
+        poll();
+        return true;
+    }
+
+    // hands results of already finished groups to callbacks
+    public void poll() {
+        while (!running.isEmpty() && running.peekFirst().isDone()) {
+            deliver(running.pollFirst());
+        }
+    }
+
+    // runs all pending scans and waits for all results
+    public void flush() {
+        dispatch();
+        while (!running.isEmpty()) {
+            deliver(running.pollFirst());
+        }
+    }
+
+    private void dispatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        int groupsNumber = Math.min(executor.getThreadsNumber(), pending.size());
+        List<List<Request>> groups = new ArrayList<>();
+        long[] groupLength = new long[groupsNumber];
+        for (int i = 0; i < groupsNumber; i++) {
+            groups.add(new ArrayList<>());
+        }
+        pending.sort(Comparator.comparingLong((Request r) -> r.length).reversed());
+        for (Request request : pending) {
+            int g = 0;
+            for (int i = 1; i < groupsNumber; i++) {
+                if (groupLength[i] < groupLength[g]) {
+                    g = i;
+                }
+            }
+            groups.get(g).add(request);
+            groupLength[g] += request.length;
+        }
+        pending.clear();
+
+        for (List<Request> group : groups) {
+            while (running.size() >= maxRunningGroups) {
+                deliver(running.pollFirst());
+            }
+            running.addLast(executor.submit(() -> {
+                long cpu = threadMXBean.getCurrentThreadCpuTime();
+                for (Request r : group) {
+                    r.result = scanner.scanSequentially(r.C, r.primesOfC, r.A, r.B, r.from, r.length, r.checkCandidates);
+                    long now = threadMXBean.getCurrentThreadCpuTime();
+                    r.cpuNanos = now - cpu;
+                    cpu = now;
+                }
+                return group;
+            }));
+        }
+    }
+
+    private void deliver(Future<List<Request>> future) {
+        List<Request> group;
+        try {
+            group = future.get();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+        for (Request r : group) {
+            r.callback.accept(r.result, r.cpuNanos);
+        }
+    }
+
+    private static class Request {
+        private final BigInteger C;
+        private final List<BigInteger> primesOfC;
+        private final BigInteger A;
+        private final BigInteger B;
+        private final long from;
+        private final long length;
+        private final boolean checkCandidates;
+        private final BiConsumer<Pair<BigInteger[], Long>, Long> callback;
+        private Pair<BigInteger[], Long> result;
+        private long cpuNanos;
+
+        private Request(BigInteger C, List<BigInteger> primesOfC, BigInteger A, BigInteger B, long from, long length, boolean checkCandidates,
+                        BiConsumer<Pair<BigInteger[], Long>, Long> callback)
+        {
+            this.C = C;
+            this.primesOfC = primesOfC;
+            this.A = A;
+            this.B = B;
+            this.from = from;
+            this.length = length;
+            this.checkCandidates = checkCandidates;
+            this.callback = callback;
+        }
+    }
+}
@@ -89,6 +89,31 @@ public class ScanSieve {
                 startBuf.build().toArray(), stepBuf.build().toArray(), invBuf.build().toArray(), toSkip);
     }
 
+    // estimates share of numbers start+step*x (x in [0; length)) which are left after sieve; only first sampleLength numbers are sieved,
+    // primes which are used by sieve of whole range but not by sieve of sample are taken into account by Mertens' theorem
+    public double estimateDensity(BigInteger start, BigInteger step, long length, boolean oddPower, int sampleLength) {
+        int sample = (int) Math.min(length, sampleLength);
+        BitSet bits = createBitSetGenerator(start, step, sample, oddPower).generate(0, sample);
+        if (bits == null) {
+            return 0;
+        }
+        double density = (sample - bits.cardinality()) / (double) sample;
+        if ((sample < length) && (primes.size() > 0)) {
+            double sampleBound = Math.min(maxSievePrime(start.add(step.multiply(BigInteger.valueOf(sample-1))), sample), primes.get(primes.size()-1));
+            double fullBound = Math.min(maxSievePrime(start.add(step.multiply(BigInteger.valueOf(length-1))), length), primes.get(primes.size()-1));
+            if (sampleBound >= 2) {
+                density *= Math.log(sampleBound) / Math.log(fullBound);
+            }
+        }
+        return density;
+    }
+
+    // the biggest prime which can be used by bit set generator for numbers up to maxValue and given length
+    private double maxSievePrime(BigInteger maxValue, long length) {
+        double bound = Math.sqrt(maxValue.doubleValue());
+        return (length < primes.size()) ? Math.min(bound, primes.get((int) length)) : bound;
+    }
+
     private int getInv(int r, int p) {
         assert r >= 0;
         assert r < p;
@@ -3,13 +3,17 @@ package scan;
 import com.carrotsearch.hppc.IntObjectHashMap;
 import com.carrotsearch.hppc.IntObjectMap;
 import common.Common;
+import common.SolutionVerifier;
 import common.TaskExecutor;
 import org.apache.commons.math3.util.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.math.BigInteger;
 import java.util.BitSet;
+import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
@@ -28,8 +32,11 @@ public class Scanner {
 
     private final ScanSieve scanSieve;
     private final ModPowCalculatorFactory modPowCalculatorFactory;
+    private final SolutionVerifier solutionVerifier;
 
     private final AtomicLong solutionCheckCount = new AtomicLong(0);
+    private final AtomicLong scanCpuNanos = new AtomicLong(0);
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
 
     public Scanner(BigInteger base, long target, ScanSieve scanSieve, TaskExecutor executor, int maxLengthPerTask, int minParallelLength) {
         assert base.compareTo(BigInteger.TWO) >= 0;
@@ -45,15 +52,27 @@ public class Scanner {
 
         this.scanSieve = scanSieve;
         this.modPowCalculatorFactory = new ModPowCalculatorFactory(base);
+        this.solutionVerifier = new SolutionVerifier(base.longValueExact(), target);
     }
 
     public Pair<BigInteger[], Long> scan(BigInteger C, BigInteger A, BigInteger B, long length, boolean checkCandidates) {
+        return scan(C, null, A, B, 0, length, checkCandidates);
+    }
+
+    // scans C*(Ax+B) for x in [from; from+length); if prime factors of C are known, candidates are verified with them
+    public Pair<BigInteger[], Long> scan(BigInteger C, List<BigInteger> primesOfC, BigInteger A, BigInteger B, long from, long length,
+                                         boolean checkCandidates)
+    {
         assert length > 0;
+        assert from >= 0;
         assert C.signum() > 0;
         assert A.signum() > 0;
         if (B.signum() == 0) {
             B = A;
         }
+        if (from > 0) {
+            B = B.add(A.multiply(BigInteger.valueOf(from)));
+        }
         assert B.signum() > 0;
 
         int threadsNumber = executor.getThreadsNumber();
@@ -79,7 +98,7 @@ public class Scanner {
         long shift = 0;
         for (int i = 0; i < tasksNumber; i++) {
             int curLength = (i < plusOne) ? taskLength+1 : taskLength;
-            tasks[i] = new Task(C, start, A, shift, curLength, bitSetGenerator, modPowCalculator, checkCandidates);
+            tasks[i] = new Task(C, primesOfC, start, A, shift, curLength, bitSetGenerator, modPowCalculator, checkCandidates, true);
             start = start.add((i < plusOne) ? biggerStep : smallerStep);
             shift += curLength;
         }
@@ -110,8 +129,46 @@ public class Scanner {
         return Pair.create(solutions.build().toArray(BigInteger[]::new), counter);
     }
 
+    // same as scan() but everything is done in current thread, used for running many small scans in parallel
+    public Pair<BigInteger[], Long> scanSequentially(BigInteger C, List<BigInteger> primesOfC, BigInteger A, BigInteger B, long from, long length,
+                                                     boolean checkCandidates)
+    {
+        assert length > 0;
+        assert length <= Integer.MAX_VALUE;
+        assert from >= 0;
+        if (B.signum() == 0) {
+            B = A;
+        }
+        if (from > 0) {
+            B = B.add(A.multiply(BigInteger.valueOf(from)));
+        }
+
+        ScanSieve.BitSetGenerator bitSetGenerator = scanSieve.createBitSetGenerator(B, A, length, C.testBit(0));
+        ModPowCalculator modPowCalculator = modPowCalculatorFactory.createCalculator(C);
+        Pair<BigInteger[], Long> result = new Task(C, primesOfC, B, A, 0, (int) length, bitSetGenerator, modPowCalculator, checkCandidates, false).get();
+        if (result == null) {
+            return Pair.create(new BigInteger[0], 0L);
+        }
+        return (result.getFirst() != null) ? result : Pair.create(new BigInteger[0], result.getSecond());
+    }
+
+    // estimates number of candidates left after sieve in C*(Ax+B) for x in [from; from+length) without checking them
+    public double estimateCandidates(BigInteger C, BigInteger A, BigInteger B, long from, long length, int sampleLength) {
+        if (length <= 0) {
+            return 0;
+        }
+        if (B.signum() == 0) {
+            B = A;
+        }
+        if (from > 0) {
+            B = B.add(A.multiply(BigInteger.valueOf(from)));
+        }
+        return length * scanSieve.estimateDensity(B, A, length, C.testBit(0), sampleLength);
+    }
+
     private class Task implements Supplier<Pair<BigInteger[], Long>> {
         private final BigInteger multiplier;
+        private final List<BigInteger> multiplierPrimes;
         private final BigInteger start;
         private final BigInteger step;
         private final long from;
@@ -119,11 +176,13 @@ public class Scanner {
         private final ScanSieve.BitSetGenerator bitSetGenerator;
         private final ModPowCalculator modPowCalculator;
         private final boolean checkCandidates;
+        private final boolean countCpu;
 
-        private Task(BigInteger multiplier, BigInteger start, BigInteger step, long from, int length, ScanSieve.BitSetGenerator bitSetGenerator,
-                     ModPowCalculator modPowCalculator, boolean checkCandidates)
+        private Task(BigInteger multiplier, List<BigInteger> multiplierPrimes, BigInteger start, BigInteger step, long from, int length, ScanSieve.BitSetGenerator bitSetGenerator,
+                     ModPowCalculator modPowCalculator, boolean checkCandidates, boolean countCpu)
         {
             this.multiplier = multiplier;
+            this.multiplierPrimes = multiplierPrimes;
             this.start = start;
             this.step = step;
             this.from = from;
@@ -131,10 +190,23 @@ public class Scanner {
             this.bitSetGenerator = bitSetGenerator;
             this.modPowCalculator = modPowCalculator;
             this.checkCandidates = checkCandidates;
+            this.countCpu = countCpu;
         }
 
         @Override
         public Pair<BigInteger[], Long> get() {
+            if (!countCpu) {
+                return scan();
+            }
+            long startCpu = threadMXBean.getCurrentThreadCpuTime();
+            try {
+                return scan();
+            } finally {
+                scanCpuNanos.addAndGet(threadMXBean.getCurrentThreadCpuTime() - startCpu);
+            }
+        }
+
+        private Pair<BigInteger[], Long> scan() {
             BitSet bits = bitSetGenerator.generate(from, length);
             if (bits == null) {
                 return null;
@@ -158,8 +230,7 @@ public class Scanner {
                         long m = startLong + stepLong*i;
                         if (modPowCalculator.calculate(m) == Common.mod(targetLong, m)) {
                             BigInteger M = BigInteger.valueOf(m);
-                            BigInteger candidate = M.multiply(multiplier);
-                            if (base.modPow(candidate, candidate).equals(Common.mod(target, candidate))) {
+                            if (isSolution(M)) {
                                 if (result == null) {
                                     result = Stream.builder();
                                 }
@@ -195,8 +266,7 @@ public class Scanner {
 
                         solutionCheckCount.incrementAndGet();
                         if (modPowCalculator.calculate(M).equals(Common.mod(target, M))) {
-                            BigInteger candidate = M.multiply(multiplier);
-                            if (base.modPow(candidate, candidate).equals(Common.mod(target, candidate))) {
+                            if (isSolution(M)) {
                                 if (result == null) {
                                     result = Stream.builder();
                                 }
@@ -209,6 +279,20 @@ public class Scanner {
 
             return Pair.create((result != null) ? result.build().toArray(BigInteger[]::new) : null, counter);
         }
+
+        private boolean isSolution(BigInteger M) {
+            BigInteger candidate = M.multiply(multiplier);
+            // verification by prime powers of C requires M to be coprime with C
+            if ((multiplierPrimes != null) && M.gcd(multiplier).equals(BigInteger.ONE)) {
+                return solutionVerifier.verify(candidate, multiplierPrimes, M);
+            }
+            return base.modPow(candidate, candidate).equals(Common.mod(target, candidate));
+        }
+    }
+
+    // CPU time of all threads spent in scan() calls, scanSequentially() isn't counted
+    public long getScanCpuNanos() {
+        return scanCpuNanos.get();
     }
 
     public void logScanStats() {
@@ -0,0 +1,38 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class BatchRunnerTest {
+
+    @Test
+    public void testBatch() {
+        List<BatchRunner.Equation> equations = new ArrayList<>();
+        long[][] params = {{2, 3, 100000}, {3, -5, 300000}, {2, -7, 200000}, {5, 4, 100000}};
+        for (long[] p : params) {
+            equations.add(new BatchRunner.Equation(p[0], p[1], BigInteger.ZERO, BigInteger.valueOf(p[2])));
+        }
+        BatchRunner runner = new BatchRunner(() -> Launch.solverSimple(100, 10000L, 100000L, 100, 20), 3, 20, null, 1<<16, 4,
+                100, 1<<12, 2, 10000, true, false, null, Long.MAX_VALUE, Long.MAX_VALUE, false);
+        Map<BatchRunner.Equation, List<BigInteger>> result = runner.run(equations);
+
+        // jobs are run from the biggest one
+        Assertions.assertEquals(equations.get(1), result.keySet().iterator().next());
+        for (int i = 0; i < params.length; i++) {
+            BigInteger base = BigInteger.valueOf(params[i][0]);
+            TreeSet<BigInteger> expected = new TreeSet<>();
+            for (long n = 1; n <= params[i][2]; n++) {
+                BigInteger N = BigInteger.valueOf(n);
+                if (base.modPow(N, N).equals(BigInteger.valueOf(params[i][1]).mod(N))) {
+                    expected.add(N);
+                }
+            }
+            TreeSet<BigInteger> actual = new TreeSet<>(result.get(equations.get(i)));
+            Assertions.assertEquals(expected, actual.headSet(BigInteger.valueOf(params[i][2]), true), "equation " + equations.get(i));
+        }
+    }
+}
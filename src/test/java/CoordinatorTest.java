@@ -0,0 +1,112 @@
+import common.TaskExecutor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import primes.GoodPrimes;
+import primes.Primes;
+import scan.ScanBatcher;
+import scan.ScanSieve;
+import scan.Scanner;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+public class CoordinatorTest {
+
+    private final TaskExecutor executor = TaskExecutor.create(1);
+
+    @Test
+    public void testCoordinator() throws Exception {
+        int base = 2;
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        ExecutorService threads = Executors.newFixedThreadPool(3);
+        for (int t = -20; t <= 20; t += 10) {
+            int target = t;
+            // long scans are split into ranges only if they aren't replaced with factorizations
+            boolean factorize = (t % 20 == 0);
+            GoodPrimes goodPrimes = GoodPrimes.generate(launch(factorize).getGoodPrimesBound(BigInteger.valueOf(ceil)), base, t, primes, executor);
+            ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(t), primes, null);
+            Scanner scanner = new Scanner(BigInteger.valueOf(base), t, scanSieve, executor, 1<<23, 4);
+
+            Launch fullLaunch = launch(factorize);
+            new Solver(base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), fullLaunch, executor, goodPrimes, fullLaunch.getFactorizer(primes),
+                    scanner, new Solver.Options()).solve();
+            NavigableSet<BigInteger> expected = new TreeSet<>(fullLaunch.getSolutions()).headSet(BigInteger.valueOf(ceil), true);
+
+            Path dir = Files.createTempDirectory("coordinator");
+            try {
+                Coordinator coordinator = new Coordinator(dir, 500);
+                Launch planLaunch = launch(factorize);
+                Plan plan = new Solver(base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), planLaunch, executor, goodPrimes,
+                        planLaunch.getFactorizer(primes), scanner, new Solver.Options()).plan(1, 1000);
+                coordinator.createUnits(plan, 5000);
+                try (Stream<Path> units = Files.list(dir.resolve("units"))) {
+                    Assertions.assertTrue(factorize || (units.count() > plan.getUnits().size()), "long scans are split into ranges");
+                }
+
+                // unit which is leased by dead worker
+                Path lease = Files.writeString(dir.resolve("leases").resolve("0"), "dead 1");
+                Files.createFile(dir.resolve("journals").resolve("0.1"));
+                Files.setLastModifiedTime(lease, FileTime.fromMillis(System.currentTimeMillis() - 3600000));
+
+                Function<Path, Journal> journalFactory = path -> Journal.open(path, base, target, BigInteger.ZERO, BigInteger.valueOf(ceil), 100);
+                List<Future<Integer>> workers = new ArrayList<>();
+                for (int i = 0; i < 2; i++) {
+                    String id = "worker" + i;
+                    workers.add(threads.submit(() -> new Worker(dir, id, journal -> {
+                        Launch launch = launch(factorize);
+                        ScanBatcher scanBatcher = new ScanBatcher(scanner, executor, 10, 1<<12);
+                        return new Solver(base, target, BigInteger.ZERO, BigInteger.valueOf(ceil), launch, executor, goodPrimes,
+                                launch.getFactorizer(primes), scanner, new Solver.Options().scanBatcher(scanBatcher).journal(journal));
+                    }, journalFactory, 50).run()));
+                }
+                coordinator.await(20);
+                int solved = 0;
+                for (Future<Integer> worker : workers) {
+                    solved += worker.get();
+                }
+                try (Stream<Path> units = Files.list(dir.resolve("units"))) {
+                    Assertions.assertEquals(units.count(), solved);
+                }
+                // the unit is taken over with the next lease generation
+                String done = Files.readString(dir.resolve("done").resolve("0"));
+                Assertions.assertTrue(done.startsWith("worker") && done.endsWith(" 2"), done);
+
+                Path merged = dir.resolve("merged.txt");
+                List<BigInteger> solutions = coordinator.merge(merged, journalFactory);
+                Assertions.assertEquals(expected, new TreeSet<>(solutions).headSet(BigInteger.valueOf(ceil), true), "target=" + t);
+                Journal journal = journalFactory.apply(merged);
+                Assertions.assertEquals(factorize, !journal.getFactorizations().isEmpty());
+                journal.close();
+            } finally {
+                deleteRecursively(dir);
+            }
+        }
+        threads.shutdown();
+    }
+
+    private static Launch launch(boolean factorize) {
+        return Launch.solverSimple(factorize ? 100 : 0, 10000L, 100000L, 100, 20);
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CostModelTest {
+
+    @Test
+    public void testPreferFactorization() {
+        CostModel costModel = new CostModel();
+        // nothing is known yet
+        Assertions.assertTrue(costModel.preferFactorization(100, 1000));
+
+        // 1% of numbers survive sieve, 1000ns per candidate => 10ns per number
+        for (int i = 0; i < 10; i++) {
+            costModel.registerScan(100000, 1000, 1000000);
+        }
+        Assertions.assertEquals(1e6, costModel.scanCost(100000), 1e-6);
+        // no factorizations are observed yet
+        Assertions.assertTrue(costModel.preferFactorization(100, 1000));
+
+        // 1ms for 100-bit numbers, half of them are factorized completely
+        for (int i = 0; i < 4; i++) {
+            costModel.registerFactorization(100, 1000000, i%2 == 0);
+        }
+        Assertions.assertEquals(1e6, costModel.factorizationCost(100), 1e-6);
+        Assertions.assertEquals(0.5, costModel.completeFactorizationRate(100), 1e-9);
+        Assertions.assertFalse(costModel.preferFactorization(100, 100000));
+        Assertions.assertFalse(costModel.preferFactorization(100, 200000));
+        Assertions.assertTrue(costModel.preferFactorization(100, 300000));
+
+        // bigger numbers are estimated optimistically by smaller ones, small scan is never replaced with factorization
+        Assertions.assertEquals(1e6, costModel.factorizationCost(1000), 1e-6);
+        Assertions.assertFalse(costModel.preferFactorization(1000, 1000));
+        Assertions.assertTrue(costModel.preferFactorization(1000, 1000000));
+    }
+}
@@ -0,0 +1,53 @@
+import common.Common;
+import common.TaskExecutor;
+import factorization.EcmFactorizer;
+import factorization.Factorization;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+public class EcmFactorizerTest {
+
+    @Test
+    public void testFactorize() {
+        Primes primes = new Primes((long) 1e6);
+        testFactorize(primes, 5, 2000, (long) 1e5, 30, 1, 10, 20, 30, 40, 50);
+        testFactorize(primes, 5, 2000, (long) 1e5, 200, 4, 32, 40, 48, 120);
+        testFactorize(primes, 5, 500, 50000, 100, 1, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 33, 34);
+    }
+
+    @Test
+    public void testFindDivisor() {
+        Primes primes = new Primes(10000);
+        Random random = new Random(42);
+        TaskExecutor executor = TaskExecutor.create(4);
+        EcmFactorizer factorizer = new EcmFactorizer(primes, 500, 10000, 50, executor, 20);
+        for (int i = 0; i < 10; i++) {
+            BigInteger p = new BigInteger(36, random).nextProbablePrime();
+            BigInteger q = new BigInteger(100, random).nextProbablePrime();
+            BigInteger d = factorizer.findDivisor(p.multiply(q));
+            Assertions.assertTrue((d == null) || d.equals(p) || d.equals(q));
+        }
+        executor.shutdown();
+    }
+
+    private void testFactorize(Primes primes, int testsCount, long B1, long B2, int curves, int threads, int... bitSize) {
+        Random random = new Random(Objects.hash(B1, B2, Arrays.hashCode(bitSize)));
+        TaskExecutor executor = TaskExecutor.create(threads);
+        EcmFactorizer factorizer = new EcmFactorizer(primes, B1, B2, curves, executor, 20);
+        for (int i = 0; i < testsCount; i++) {
+            BigInteger[] p = IntStream.of(bitSize).mapToObj(bs -> new BigInteger(bs, random).nextProbablePrime()).toArray(BigInteger[]::new);
+            Factorization f = factorizer.factorize(Common.multiply(p));
+            Assertions.assertEquals(Factorization.fromPrimeFactors(List.of(p)), f);
+        }
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,79 @@
+import common.Common;
+import factorization.Factorization;
+import factorization.FactorizationQueue;
+import factorization.PollardFactorizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+public class FactorizationQueueTest {
+
+    @Test
+    public void testFactorize() {
+        Random random = new Random(321);
+        FactorizationQueue queue = new FactorizationQueue(new PollardFactorizer(null, 0, 1000000, 20), 3, 60000);
+        Map<BigInteger, Factorization> expected = new HashMap<>();
+        Map<BigInteger, Factorization> actual = new HashMap<>();
+        try {
+            for (int i = 0; i < 50; i++) {
+                BigInteger[] p = random.ints(3, 2, 25).mapToObj(bs -> new BigInteger(bs, random).nextProbablePrime()).toArray(BigInteger[]::new);
+                BigInteger N = Common.multiply(p);
+                expected.put(N, Factorization.fromPrimeFactors(List.of(p)));
+                queue.submit(N, (f, time) -> actual.put(N, f));
+            }
+            queue.flush();
+        } finally {
+            queue.shutdown();
+        }
+        Assertions.assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testTimeBudget() {
+        Random random = new Random(123);
+        FactorizationQueue queue = new FactorizationQueue(new PollardFactorizer(null, 0, 100000000L, 20), 2, 500);
+        BigInteger p = new BigInteger(20, random).nextProbablePrime();
+        BigInteger q = new BigInteger(90, random).nextProbablePrime();
+        BigInteger r = new BigInteger(90, random).nextProbablePrime();
+        List<Factorization> result = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        try {
+            queue.submit(p.multiply(q).multiply(r), (f, time) -> result.add(f));
+            queue.flush();
+        } finally {
+            queue.shutdown();
+        }
+        Assertions.assertTrue(System.currentTimeMillis() - startTime < 10000);
+        // small factor is found before budget is exceeded, the rest stays composite
+        Assertions.assertEquals(1, result.size());
+        Assertions.assertEquals(Factorization.fromFactors(List.of(p, q.multiply(r)), List.of(q.multiply(r))), result.get(0));
+        Assertions.assertEquals(1, result.get(0).compositeCount());
+    }
+
+    @Test
+    public void testSubmitTimeBudget() {
+        Random random = new Random(123);
+        // budget of single factorization is smaller than budget of queue
+        FactorizationQueue queue = new FactorizationQueue(new PollardFactorizer(null, 0, 100000000L, 20), 2, 600000);
+        BigInteger p = new BigInteger(20, random).nextProbablePrime();
+        BigInteger q = new BigInteger(90, random).nextProbablePrime();
+        BigInteger r = new BigInteger(90, random).nextProbablePrime();
+        List<Factorization> result = new ArrayList<>();
+        long startTime = System.currentTimeMillis();
+        try {
+            queue.submit(p.multiply(q).multiply(r), 500, (f, time) -> result.add(f));
+            queue.flush();
+        } finally {
+            queue.shutdown();
+        }
+        Assertions.assertTrue(System.currentTimeMillis() - startTime < 10000);
+        Assertions.assertEquals(1, result.size());
+        Assertions.assertEquals(1, result.get(0).compositeCount());
+    }
+}
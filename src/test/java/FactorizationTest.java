@@ -0,0 +1,71 @@
+import common.TaskExecutor;
+import factorization.Factorization;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.LongStream;
+
+public class FactorizationTest {
+
+    @Test
+    public void testBoundedDivisors() {
+        Random random = new Random(888);
+        TaskExecutor executor = TaskExecutor.create(4);
+        try {
+            for (int i = 0; i < 300; i++) {
+                List<BigInteger> primes = new ArrayList<>();
+                for (int j = random.nextInt(8); j >= 0; j--) {
+                    BigInteger p = BigInteger.valueOf(random.nextInt(1000)).nextProbablePrime();
+                    for (int k = random.nextInt(3); k >= 0; k--) {
+                        primes.add(p);
+                    }
+                }
+                Factorization factorization = Factorization.fromPrimeFactors(primes);
+                TreeSet<BigInteger> all = new TreeSet<>();
+                factorization.forEachDivisor(all::add);
+
+                BigInteger limit = new BigInteger(1 + random.nextInt(all.last().bitLength() + 1), random);
+                List<BigInteger> bounded = new ArrayList<>();
+                factorization.forEachDivisor(limit, bounded::add);
+                Assertions.assertEquals(new ArrayList<>(all.headSet(limit, true)), sorted(bounded), "primes=" + primes + ", limit=" + limit);
+
+                List<BigInteger> parallel = Collections.synchronizedList(new ArrayList<>());
+                factorization.forEachDivisorWithFactors(limit, executor, (d, factors) -> {
+                    Assertions.assertEquals(d, factors.stream().reduce(BigInteger.ONE, BigInteger::multiply));
+                    parallel.add(d);
+                });
+                Assertions.assertEquals(new ArrayList<>(all.headSet(limit, true)), sorted(parallel), "primes=" + primes + ", limit=" + limit);
+
+                if (all.last().bitLength() < 63) {
+                    long[] primesLong = primes.stream().mapToLong(BigInteger::longValueExact).sorted().toArray();
+                    LongStream.Builder buf = LongStream.builder();
+                    Factorization.forEachDivisor(primesLong, limit.longValueExact(), buf::add);
+                    Assertions.assertArrayEquals(all.headSet(limit, true).stream().mapToLong(BigInteger::longValueExact).toArray(),
+                            buf.build().sorted().toArray());
+                }
+
+                // unbounded enumeration can't skip divisors that don't fit long
+                long[] primesLong = primes.stream().mapToLong(BigInteger::longValueExact).sorted().toArray();
+                if (all.last().bitLength() < 64) {
+                    Assertions.assertArrayEquals(all.stream().mapToLong(BigInteger::longValueExact).toArray(), Factorization.generateDivisors(primesLong));
+                } else {
+                    Assertions.assertThrows(ArithmeticException.class, () -> Factorization.generateDivisors(primesLong));
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<BigInteger> sorted(List<BigInteger> list) {
+        List<BigInteger> result = new ArrayList<>(list);
+        Collections.sort(result);
+        return result;
+    }
+}
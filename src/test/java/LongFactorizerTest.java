@@ -0,0 +1,85 @@
+import factorization.LongFactorizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LongFactorizerTest {
+
+    @Test
+    public void testIsPrime() {
+        for (long n = 0; n < 100000; n++) {
+            long x = n;
+            Assertions.assertEquals(BigInteger.valueOf(n).isProbablePrime(50), LongFactorizer.isPrime(n), () -> String.valueOf(x));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            long n = random.nextLong() >>> (1 + random.nextInt(40));
+            Assertions.assertEquals(BigInteger.valueOf(n).isProbablePrime(50), LongFactorizer.isPrime(n), () -> String.valueOf(n));
+        }
+        // strong pseudoprimes to several first prime bases and Carmichael numbers
+        long[] pseudoprimes = {2047, 1373653, 25326001, 3215031751L, 2152302898747L, 3474749660383L, 341550071728321L,
+                3825123056546413051L, 561, 41041, 825265, 321197185, 5394826801L, 232250619601L, 9746347772161L};
+        for (long n : pseudoprimes) {
+            Assertions.assertFalse(LongFactorizer.isPrime(n), String.valueOf(n));
+        }
+        Assertions.assertTrue(LongFactorizer.isPrime(Long.MAX_VALUE - 24));
+        Assertions.assertFalse(LongFactorizer.isPrime(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testIsPrimeBig() {
+        Random random = new Random(777);
+        for (int i = 0; i < 20000; i++) {
+            BigInteger n = new BigInteger(63 + random.nextInt(19), random);
+            if (n.compareTo(LongFactorizer.deterministicBound) >= 0) {
+                continue;
+            }
+            Assertions.assertEquals(n.isProbablePrime(50), LongFactorizer.isPrime(n), n::toString);
+        }
+        for (int i = 0; i < 1000; i++) {
+            BigInteger p = BigInteger.probablePrime(32 + random.nextInt(8), random);
+            BigInteger q = BigInteger.probablePrime(32 + random.nextInt(8), random);
+            Assertions.assertTrue(LongFactorizer.isPrime(p.multiply(BigInteger.TWO.shiftLeft(35)).add(BigInteger.ONE))
+                    == p.multiply(BigInteger.TWO.shiftLeft(35)).add(BigInteger.ONE).isProbablePrime(50));
+            Assertions.assertFalse(LongFactorizer.isPrime(p.multiply(q)));
+        }
+        // strong pseudoprime to bases 2..37
+        Assertions.assertFalse(LongFactorizer.isPrime(new BigInteger("318665857834031151167461")));
+    }
+
+    @Test
+    public void testFactorize() {
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long n = 1 + (random.nextLong() >>> (1 + random.nextInt(62)));
+            check(n);
+        }
+        for (int bitLength = 10; bitLength <= 31; bitLength++) {
+            // balanced semiprimes and squares
+            for (int t = 0; t < 20; t++) {
+                long p = BigInteger.probablePrime(bitLength, random).longValueExact();
+                long q = BigInteger.probablePrime(bitLength + random.nextInt(2), random).longValueExact();
+                Assertions.assertArrayEquals(new long[] {Math.min(p, q), Math.max(p, q)}, LongFactorizer.factorize(p*q), () -> p + " * " + q);
+                Assertions.assertArrayEquals(new long[] {p, p, p}, (3*bitLength < 63) ? LongFactorizer.factorize(p*p*p) : new long[] {p, p, p});
+            }
+        }
+        check(Long.MAX_VALUE);
+        check(1);
+    }
+
+    private static void check(long n) {
+        long[] factors = LongFactorizer.factorize(n);
+        long product = 1;
+        for (long p : factors) {
+            Assertions.assertTrue(BigInteger.valueOf(p).isProbablePrime(50), () -> n + ": " + Arrays.toString(factors));
+            product *= p;
+        }
+        Assertions.assertEquals(n, product);
+        for (int i = 1; i < factors.length; i++) {
+            Assertions.assertTrue(factors[i-1] <= factors[i]);
+        }
+    }
+}
@@ -27,6 +27,9 @@ class ModUtilsTest {
             tests.add(BigInteger.valueOf((1L<<lowBitLength)-1));
             tests.add(BigInteger.valueOf((1L<<lowBitLength)));
         }
+        // the biggest odd moduli for 64-bit Montgomery multiplication
+        tests.add(BigInteger.valueOf(Long.MAX_VALUE));
+        tests.add(BigInteger.valueOf(Long.MAX_VALUE - 2));
 
         long startTime = System.currentTimeMillis();
         for (BigInteger b : tests) {
@@ -167,6 +170,40 @@ class ModUtilsTest {
         }
     }
 
+    @Test
+    public void testLongVersions() {
+        long startTime = System.currentTimeMillis();
+        Random random = new Random(777);
+        int tests = 200000;
+        for (int i = 0; i < tests; i++) {
+            long A0 = 1 + random.nextInt(1 << (1 + random.nextInt(30)));
+            long A1 = 1 + random.nextInt(1 << (1 + random.nextInt(30)));
+            long B0 = random.nextInt((int) Math.min(A0, Integer.MAX_VALUE));
+            long B1 = random.nextInt((int) Math.min(A1, Integer.MAX_VALUE));
+            long p = Primes.nextPrime(2 + random.nextInt(1 << (1 + random.nextInt(29))));
+            String msg = "A0=" + A0 + ", B0=" + B0 + ", A1=" + A1 + ", B1=" + B1 + ", p=" + p;
+
+            BigInteger[] expMerge = ModUtils.merge(BigInteger.valueOf(A0), BigInteger.valueOf(B0), BigInteger.valueOf(A1), BigInteger.valueOf(B1));
+            Assertions.assertEquals(toString(expMerge), toString(ModUtils.merge(A0, B0, A1, B1)), msg);
+
+            BigInteger[] expDivide = ModUtils.divideLinearSum(BigInteger.valueOf(A0), BigInteger.valueOf(B0), BigInteger.valueOf(p));
+            Assertions.assertEquals(toString(expDivide), toString(ModUtils.divideLinearSum(A0, B0, p)), msg);
+
+            long gcd = BigInteger.valueOf(A0).gcd(BigInteger.valueOf(A1)).longValueExact();
+            BigInteger[] expRebalance = ModUtils.rebalanceDivisors(BigInteger.valueOf(A0), BigInteger.valueOf(A1), BigInteger.valueOf(gcd));
+            Assertions.assertEquals(toString(expRebalance), toString(ModUtils.rebalanceDivisors(A0, A1, gcd)), msg);
+        }
+        log.info("OK - tested for {} random tests in {}ms", tests, System.currentTimeMillis() - startTime);
+    }
+
+    private static String toString(Object array) {
+        if (array instanceof long[]) {
+            return Arrays.toString((long[]) array);
+        } else {
+            return Arrays.toString((Object[]) array);
+        }
+    }
+
     @Test
     public void testRebalanceDivisors() {
         long startTime = System.currentTimeMillis();
@@ -256,4 +293,27 @@ class ModUtilsTest {
         }
     }
 
+    @Test
+    public void testSqrtMod() {
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            long p = BigInteger.valueOf(3 + random.nextInt(Integer.MAX_VALUE - 3)).nextProbablePrime().longValueExact();
+            if (p >= Integer.MAX_VALUE) {
+                continue;
+            }
+            long a = random.nextInt((int) p);
+            long x = ModUtils.sqrtMod(a, p);
+            if (x < 0) {
+                Assertions.assertEquals(p-1, ModUtils.pow(a, (p-1)/2, p), () -> a + " mod " + p);
+            } else {
+                Assertions.assertEquals(a, (x*x) % p, () -> a + " mod " + p);
+            }
+        }
+        // p-1 divisible by big power of 2
+        long p = 998244353;
+        for (long a = 1; a < 1000; a++) {
+            long x = ModUtils.sqrtMod(a*a, p);
+            Assertions.assertEquals((a*a) % p, (x*x) % p);
+        }
+    }
 }
@@ -0,0 +1,69 @@
+import common.MontgomeryMod;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class MontgomeryModTest {
+
+    @Test
+    public void testArithmetic() {
+        Random random = new Random(777);
+        for (int bitLength = 2; bitLength <= 400; bitLength += (bitLength < 130) ? 1 : 17) {
+            for (int t = 0; t < 20; t++) {
+                BigInteger N = new BigInteger(bitLength, random).setBit(0).setBit(bitLength-1);
+                if (t == 0) {
+                    // all limbs are filled with ones
+                    N = BigInteger.ONE.shiftLeft(bitLength).subtract(BigInteger.ONE);
+                }
+                MontgomeryMod mod = new MontgomeryMod(N);
+                BigInteger a = new BigInteger(bitLength + 5, random).mod(N);
+                BigInteger b = (t == 1) ? N.subtract(BigInteger.ONE) : new BigInteger(bitLength + 5, random).mod(N);
+                long[] x = mod.toMontgomery(a);
+                long[] y = mod.toMontgomery(b);
+                long[] z = mod.create();
+                String msg = a + ", " + b + " mod " + N;
+
+                Assertions.assertEquals(a, mod.fromMontgomery(x), msg);
+                mod.multiply(x, y, z);
+                Assertions.assertEquals(a.multiply(b).mod(N), mod.fromMontgomery(z), msg);
+                mod.add(x, y, z);
+                Assertions.assertEquals(a.add(b).mod(N), mod.fromMontgomery(z), msg);
+                mod.subtract(x, y, z);
+                Assertions.assertEquals(a.subtract(b).mod(N), mod.fromMontgomery(z), msg);
+                mod.multiply(x, x, x);
+                Assertions.assertEquals(a.multiply(a).mod(N), mod.fromMontgomery(x), msg);
+            }
+        }
+    }
+
+    @Test
+    public void testLucasV() {
+        Random random = new Random(42);
+        for (int bitLength = 2; bitLength <= 300; bitLength += 7) {
+            BigInteger N = new BigInteger(bitLength, random).setBit(0).setBit(bitLength-1);
+            MontgomeryMod mod = new MontgomeryMod(N);
+            BigInteger P = new BigInteger(bitLength + 5, random).mod(N);
+            long[] PM = mod.toMontgomery(P);
+            long[] result = mod.create();
+            BigInteger prev = BigInteger.TWO.mod(N);
+            BigInteger cur = P;
+            for (int k = 0; k < 100; k++) {
+                mod.lucasV(PM, BigInteger.valueOf(k), result);
+                Assertions.assertEquals(prev, mod.fromMontgomery(result), "V_" + k + "(" + P + ") mod " + N);
+                BigInteger next = P.multiply(cur).subtract(prev).mod(N);
+                prev = cur;
+                cur = next;
+            }
+            // V_mn(P) = V_m(V_n(P))
+            BigInteger m = new BigInteger(100, random);
+            BigInteger n = new BigInteger(100, random);
+            long[] vn = mod.create();
+            mod.lucasV(PM, n, vn);
+            mod.lucasV(vn, m, vn);
+            mod.lucasV(PM, m.multiply(n), result);
+            Assertions.assertEquals(mod.fromMontgomery(result), mod.fromMontgomery(vn));
+        }
+    }
+}
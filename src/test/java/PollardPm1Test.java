@@ -1,4 +1,5 @@
 import factorization.PollardPm1;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import primes.Primes;
@@ -19,4 +20,73 @@ public class PollardPm1Test {
         System.out.println("First done in " + (System.currentTimeMillis() - startTime) + "ms");
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSecondStage() {
+        testSecondStage(100, 10000, 40);
+        testSecondStage(1000, 1000000, 40);
+        testSecondStage(2000, 200000000, 4);
+    }
+
+    @Test
+    public void testStreaming() {
+        long B1 = 100000;
+        long B2 = 1000000;
+        PollardPm1 materialized = new PollardPm1(new Primes(PollardPm1.primesBound(B1, B2)), B1, B2);
+        PollardPm1 streaming = new PollardPm1(new Primes(PollardPm1.primesBound(B1, B2, true)), B1, B2, 4096);
+        Random random = new Random(777);
+        for (int i = 0; i < 100; i++) {
+            // products of several smaller primes are often found by the same chunk, so backtracking is checked too
+            BigInteger N = BigInteger.ONE;
+            for (int j = 0; j < 1 + random.nextInt(4); j++) {
+                N = N.multiply(BigInteger.probablePrime(10 + random.nextInt(60), random));
+            }
+            N = N.multiply(BigInteger.probablePrime(100, random));
+            // chunks differ from precalculated blocks, so backtracking can find another divisor
+            BigInteger d1 = materialized.findDivisor(N, 1);
+            BigInteger d2 = streaming.findDivisor(N, 1);
+            Assertions.assertEquals(d1 == null, d2 == null, N.toString());
+            if (d2 != null) {
+                Assertions.assertTrue((d2.compareTo(BigInteger.ONE) > 0) && (d2.compareTo(N) < 0) && (N.mod(d2).signum() == 0), N.toString());
+            }
+        }
+    }
+
+    // p-1 = 2 * (product of primes up to B1) * q, so p is found iff q <= B2
+    private void testSecondStage(long B1, long B2, int tests) {
+        Primes primes = new Primes(PollardPm1.primesBound(B1, B2));
+        PollardPm1 pollardPm1 = new PollardPm1(primes, B1, B2);
+        Random random = new Random(B1 + B2);
+        int found = 0;
+        int notFound = 0;
+        while (found + notFound < tests) {
+            BigInteger k = BigInteger.TWO;
+            for (int i = 0; i < 3; i++) {
+                // distinct odd primes, so their powers are covered by the first stage
+                BigInteger s = BigInteger.valueOf(primes.get(1 + random.nextInt(primes.floorIdx(B1))));
+                if (k.mod(s).signum() != 0) {
+                    k = k.multiply(s);
+                }
+            }
+            boolean inRange = random.nextBoolean();
+            long q = inRange ? B1 + 1 + (long) (random.nextDouble() * (B2 - B1)) : B2 + 1 + random.nextInt(1000000);
+            BigInteger Q = BigInteger.valueOf(q).nextProbablePrime();
+            if (inRange && (Q.longValueExact() > B2)) {
+                continue;
+            }
+            BigInteger p = k.multiply(Q).add(BigInteger.ONE);
+            if (!p.isProbablePrime(30)) {
+                continue;
+            }
+            BigInteger r = BigInteger.probablePrime(120, random);
+            BigInteger d = pollardPm1.findDivisor(p.multiply(r), 1);
+            if (inRange) {
+                Assertions.assertEquals(p, d, () -> "p=" + p + ", q=" + Q);
+                found++;
+            } else {
+                Assertions.assertNull(d, "p=" + p + ", q=" + Q);
+                notFound++;
+            }
+        }
+    }
+}
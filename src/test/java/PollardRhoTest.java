@@ -0,0 +1,32 @@
+import common.Common;
+import factorization.PollardRho;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class PollardRhoTest {
+
+    @Test
+    public void testFindDivisor() {
+        Random random = new Random(777);
+        for (int bitLength = 2; bitLength <= 36; bitLength++) {
+            for (int t = 0; t < 10; t++) {
+                BigInteger p = new BigInteger(bitLength, random).nextProbablePrime();
+                BigInteger q = new BigInteger(bitLength + random.nextInt(150), random).nextProbablePrime();
+                BigInteger N = Common.multiply(p, q);
+                BigInteger d = PollardRho.findDivisor(N, null);
+                Assertions.assertNotNull(d, N.toString());
+                Assertions.assertTrue(d.compareTo(BigInteger.ONE) > 0 && d.compareTo(N) < 0 && N.mod(d).signum() == 0, N::toString);
+            }
+        }
+    }
+
+    @Test
+    public void testIterationsLimit() {
+        BigInteger p = BigInteger.ONE.shiftLeft(100).nextProbablePrime();
+        BigInteger q = BigInteger.ONE.shiftLeft(120).nextProbablePrime();
+        Assertions.assertNull(PollardRho.findDivisor(p.multiply(q), 1000L));
+    }
+}
@@ -0,0 +1,96 @@
+import common.TaskExecutor;
+import factorization.LongFactorizer;
+import factorization.PrimalityTest;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+public class PrimalityTestTest {
+
+    @Test
+    public void testIsPrime() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            BigInteger N = new BigInteger(2 + random.nextInt(300), random);
+            Assertions.assertEquals(N.isProbablePrime(50), PrimalityTest.isPrime(N), N::toString);
+        }
+        for (int bitLength = 82; bitLength <= 1000; bitLength += 46) {
+            for (int i = 0; i < 10; i++) {
+                BigInteger p = BigInteger.probablePrime(bitLength, random);
+                BigInteger q = BigInteger.probablePrime(bitLength, random);
+                Assertions.assertTrue(PrimalityTest.isPrime(p), p::toString);
+                Assertions.assertTrue(PrimalityTest.isPrime(p, 10, null), p::toString);
+                Assertions.assertFalse(PrimalityTest.isPrime(p.multiply(q)));
+                Assertions.assertFalse(PrimalityTest.isPrime(p.multiply(p)));
+            }
+        }
+    }
+
+    @Test
+    public void testPseudoprimes() {
+        // Carmichael numbers (6k+1)(12k+1)(18k+1) pass Fermat test to all coprime bases
+        Random random = new Random(1);
+        int found = 0;
+        while (found < 20) {
+            BigInteger k = new BigInteger(30 + random.nextInt(40), random);
+            BigInteger[] p = {k.multiply(BigInteger.valueOf(6)).add(BigInteger.ONE), k.multiply(BigInteger.valueOf(12)).add(BigInteger.ONE),
+                    k.multiply(BigInteger.valueOf(18)).add(BigInteger.ONE)};
+            if (p[0].isProbablePrime(50) && p[1].isProbablePrime(50) && p[2].isProbablePrime(50)) {
+                BigInteger N = p[0].multiply(p[1]).multiply(p[2]);
+                Assertions.assertFalse(PrimalityTest.isPrime(N), N::toString);
+                found++;
+            }
+        }
+        // strong pseudoprime to all prime bases up to 37, first one above LongFactorizer.deterministicBound is tested by BPSW
+        Assertions.assertFalse(PrimalityTest.isPrime(new BigInteger("318665857834031151167461")));
+        BigInteger N = new BigInteger("3317044064679887385961981");
+        Assertions.assertTrue(N.compareTo(LongFactorizer.deterministicBound) >= 0);
+        Assertions.assertFalse(PrimalityTest.isPrime(N));
+    }
+
+    @Test
+    public void testParallel() {
+        TaskExecutor executor = TaskExecutor.create(2);
+        Random random = new Random(7);
+        for (int i = 0; i < 3; i++) {
+            BigInteger p = BigInteger.probablePrime(2100 + 100*i, random);
+            BigInteger q = BigInteger.probablePrime(2100 + 100*i, random);
+            Assertions.assertTrue(PrimalityTest.isPrime(p, 0, executor));
+            // cached
+            Assertions.assertTrue(PrimalityTest.isPrime(p, 0, executor));
+            Assertions.assertFalse(PrimalityTest.isPrime(p.multiply(q), 0, executor));
+            Assertions.assertFalse(PrimalityTest.isPrime(p.multiply(q).add(BigInteger.TWO), 0, executor));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testInterrupted() {
+        Random random = new Random(3);
+        TaskExecutor executor = TaskExecutor.create(2);
+        BigInteger q = BigInteger.probablePrime(2100, random);
+        int cancelled = 0;
+        Thread.currentThread().interrupt();
+        try {
+            // interrupted test may finish with true, but never calls prime composite
+            for (int i = 0; i < 10; i++) {
+                BigInteger p = BigInteger.probablePrime(1000, random);
+                try {
+                    Assertions.assertTrue(PrimalityTest.isPrime(p), p::toString);
+                } catch (CancellationException e) {
+                    cancelled++;
+                }
+            }
+            Assertions.assertThrows(CancellationException.class, () -> PrimalityTest.isPrime(q, 0, executor));
+            Assertions.assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+        Assertions.assertTrue(cancelled > 0);
+        Assertions.assertTrue(PrimalityTest.isPrime(q, 0, executor));
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,89 @@
+import common.Common;
+import common.TaskExecutor;
+import factorization.EcmFactorizer;
+import factorization.Factorization;
+import factorization.PollardPm1;
+import factorization.PollardRho;
+import factorization.RacingFactorizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+public class RacingFactorizerTest {
+
+    @Test
+    public void testFactorize() {
+        Primes primes = new Primes(100000);
+        for (int threads : new int[] {1, 4}) {
+            TaskExecutor executor = TaskExecutor.create(threads);
+            PollardPm1 pollardPm1 = new PollardPm1(primes, 1000, 100000L);
+            EcmFactorizer ecm = new EcmFactorizer(primes, 500, 50000, 100, executor, 20);
+            List<RacingFactorizer.Attempt> attempts = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                int base = i;
+                long seed = i;
+                attempts.add(new RacingFactorizer.Attempt("P-1 " + i, N -> pollardPm1.findDivisor(N, base, 1)));
+                attempts.add(new RacingFactorizer.Attempt("rho " + i, N -> PollardRho.findDivisor(N, 100000L, new Random(seed))));
+                attempts.add(new RacingFactorizer.Attempt("ECM " + i, N -> ecm.findDivisor(N, 50*base, 50)));
+            }
+            RacingFactorizer factorizer = new RacingFactorizer(executor, attempts, 20);
+
+            Random random = new Random(777);
+            for (int i = 0; i < 10; i++) {
+                BigInteger[] p = IntStream.of(20, 30, 36, 40, 100).mapToObj(bs -> new BigInteger(bs, random).nextProbablePrime()).toArray(BigInteger[]::new);
+                Factorization f = factorizer.factorize(Common.multiply(p));
+                Assertions.assertEquals(Factorization.fromPrimeFactors(List.of(p)), f);
+            }
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCancellation() {
+        TaskExecutor executor = TaskExecutor.create(2);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch slowStarted = new CountDownLatch(1);
+        BigInteger p = BigInteger.valueOf(1000003);
+        BigInteger q = BigInteger.ONE.shiftLeft(100).nextProbablePrime();
+        RacingFactorizer factorizer = new RacingFactorizer(executor, List.of(
+                new RacingFactorizer.Attempt("slow", N -> {
+                    slowStarted.countDown();
+                    try {
+                        Thread.sleep(60000);
+                    } catch (InterruptedException e) {
+                        interrupted.set(true);
+                    }
+                    return null;
+                }),
+                // winner waits for the slow attempt to start, otherwise it may be cancelled in queue and never interrupted
+                new RacingFactorizer.Attempt("fast", N -> {
+                    try {
+                        slowStarted.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return N.mod(p).signum() == 0 ? p : null;
+                })), 20);
+
+        long startTime = System.currentTimeMillis();
+        Assertions.assertEquals(p, factorizer.race(p.multiply(q)));
+        Assertions.assertTrue(System.currentTimeMillis() - startTime < 10000);
+        Assertions.assertEquals(0, slowStarted.getCount());
+        // the slow attempt is interrupted by the winner, not by shutdown
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!interrupted.get() && (System.currentTimeMillis() < deadline)) {
+            Thread.onSpinWait();
+        }
+        Assertions.assertTrue(interrupted.get());
+        executor.shutdown();
+    }
+}
@@ -12,6 +12,7 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static org.apache.commons.math3.primes.Primes.isPrime;
 
@@ -105,6 +106,102 @@ public class RestrictionsTest {
         log.info("Checked merge for baseLimit={}, nLimit={} in {}ms", bLimit, nLimit, System.currentTimeMillis() - startTime);
     }
 
+    @Test
+    public void testMergeExact() {
+        long startTime = System.currentTimeMillis();
+        Random random = new Random(777);
+        Primes primes = new Primes(5000);
+        int tests = 20000;
+        int merged = 0;
+        for (int i = 0; i < tests; i++) {
+            long base = 2 + random.nextInt(10);
+            long target = random.nextInt(100) - 50;
+            long C = 1;
+            long A = 1;
+            long B = 0;
+            for (int depth = 0; depth < 5; depth++) {
+                long p = primes.get(random.nextInt(primes.size()));
+                long[] ab = Restrictions.calculateRestriction(base, p, target);
+                if (ab == null) {
+                    continue;
+                }
+                BigInteger[] expected = Restrictions.merge(BigInteger.valueOf(base), BigInteger.valueOf(target),
+                        BigInteger.valueOf(C), BigInteger.valueOf(A), BigInteger.valueOf(B),
+                        BigInteger.valueOf(p), BigInteger.valueOf(ab[0]), BigInteger.valueOf(ab[1]));
+                long[] actual;
+                try {
+                    actual = Restrictions.mergeExact(base, target, C, A, B, p, ab[0], ab[1]);
+                } catch (ArithmeticException e) {
+                    break;
+                }
+                String msg = "base=" + base + ", target=" + target + ", C=" + C + ", A=" + A + ", B=" + B
+                        + ", p=" + p + ", a=" + ab[0] + ", b=" + ab[1];
+                if (expected == null) {
+                    Assertions.assertNull(actual, msg);
+                    break;
+                }
+                Assertions.assertArrayEquals(new long[] {expected[0].longValueExact(), expected[1].longValueExact()}, actual, msg);
+                C *= p;
+                A = actual[0];
+                B = actual[1];
+                merged++;
+            }
+        }
+        log.info("Checked mergeExact on {} random chains ({} merged) in {}ms", tests, merged, System.currentTimeMillis() - startTime);
+    }
+
+    @Test
+    public void testCheckSquarefree() {
+        long startTime = System.currentTimeMillis();
+        Random random = new Random(778);
+        Primes primes = new Primes(5000);
+        int tests = 20000;
+        int failed = 0;
+        for (int i = 0; i < tests; i++) {
+            long base = 2 + random.nextInt(10);
+            long target = random.nextInt(100) - 50;
+            long C = 1;
+            long A = 1;
+            long B = 0;
+            long[] qa = new long[5];
+            long[] qb = new long[5];
+            int count = 0;
+            for (int depth = 0; depth < 5; depth++) {
+                long p = primes.get(random.nextInt(primes.size()));
+                long[] ab = Restrictions.calculateRestriction(base, p, target);
+                if ((ab == null) || (C%p == 0)) {
+                    continue;
+                }
+                long[] expected = new long[2];
+                long[] actual = new long[2];
+                boolean merged;
+                try {
+                    merged = Restrictions.mergeExact(base, target, C, A, B, p, ab[0], ab[1], expected);
+                } catch (ArithmeticException e) {
+                    break;
+                }
+                String msg = "base=" + base + ", target=" + target + ", C=" + C + ", A=" + A + ", B=" + B
+                        + ", p=" + p + ", a=" + ab[0] + ", b=" + ab[1];
+                boolean checked = Restrictions.mergeCongruences(C, A, B, p, ab[0], ab[1], actual)
+                        && Restrictions.checkSquarefree(C, actual[0], actual[1], p, ab[0], ab[1], qa, qb, count);
+                Assertions.assertEquals(merged, checked, msg);
+                if (!merged) {
+                    failed++;
+                    break;
+                }
+                Assertions.assertArrayEquals(expected, actual, msg);
+                qa[count] = ab[0];
+                qb[count] = ab[1];
+                count++;
+                C *= p;
+                A = actual[0];
+                B = actual[1];
+            }
+        }
+        Assertions.assertTrue(failed > 0, "some checks fail");
+        log.info("Checked checkSquarefree on {} random chains ({} failed checks) in {}ms", tests, failed, System.currentTimeMillis() - startTime);
+    }
+
     @Test
     @Disabled
     public void testMergeDebug() {
@@ -0,0 +1,74 @@
+import common.Common;
+import common.TaskExecutor;
+import factorization.Factorization;
+import factorization.PollardFactorizer;
+import factorization.PollardPm1;
+import factorization.SiqsFactorizer;
+import factorization.StagedFactorizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+
+public class SiqsFactorizerTest {
+
+    @Test
+    public void testFindDivisor() {
+        Primes primes = new Primes(SiqsFactorizer.primesBound(200));
+        testFindDivisor(primes, 1, 5, 40, 50, 60, 70, 80, 100);
+        testFindDivisor(primes, 4, 3, 120, 140, 160);
+    }
+
+    @Test
+    public void testFactorize() {
+        Primes primes = new Primes(SiqsFactorizer.primesBound(130));
+        Random random = new Random(777);
+        TaskExecutor executor = TaskExecutor.create(2);
+        SiqsFactorizer factorizer = new SiqsFactorizer(primes, executor, 20);
+        for (int i = 0; i < 5; i++) {
+            BigInteger[] p = {BigInteger.valueOf(3), new BigInteger(30, random).nextProbablePrime(),
+                    new BigInteger(40, random).nextProbablePrime(), new BigInteger(50, random).nextProbablePrime()};
+            Factorization f = factorizer.factorize(Common.multiply(p));
+            Assertions.assertEquals(Factorization.fromPrimeFactors(List.of(p)), f);
+        }
+        BigInteger p = new BigInteger(40, random).nextProbablePrime();
+        Assertions.assertEquals(p, factorizer.findDivisor(p.pow(3)));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testStaged() {
+        Primes primes = new Primes(SiqsFactorizer.primesBound(140));
+        Random random = new Random(42);
+        TaskExecutor executor = TaskExecutor.create(1);
+        PollardFactorizer pollard = new PollardFactorizer(new PollardPm1(primes, 1000, 10000L), 1, 100000, 20);
+        StagedFactorizer factorizer = new StagedFactorizer(pollard, new SiqsFactorizer(primes, executor, 20), 100, 140, 20);
+        for (int i = 0; i < 3; i++) {
+            // 70-bit primes are out of reach of P-1 and rho with these bounds
+            BigInteger[] p = {new BigInteger(16, random).nextProbablePrime(), new BigInteger(70, random).nextProbablePrime(),
+                    new BigInteger(70, random).nextProbablePrime()};
+            Factorization f = factorizer.factorize(Common.multiply(p));
+            Assertions.assertEquals(Factorization.fromPrimeFactors(List.of(p)), f);
+            Assertions.assertEquals(1, pollard.factorize(Common.multiply(p)).compositeCount());
+        }
+        executor.shutdown();
+    }
+
+    private void testFindDivisor(Primes primes, int threads, int testsCount, int... bitLength) {
+        Random random = new Random(threads);
+        TaskExecutor executor = TaskExecutor.create(threads);
+        SiqsFactorizer factorizer = new SiqsFactorizer(primes, executor, 20);
+        for (int bits : bitLength) {
+            for (int i = 0; i < testsCount; i++) {
+                BigInteger p = new BigInteger(bits/2, random).nextProbablePrime();
+                BigInteger q = new BigInteger(bits - bits/2, random).nextProbablePrime();
+                BigInteger d = factorizer.findDivisor(p.multiply(q));
+                Assertions.assertTrue(p.equals(d) || q.equals(d), () -> p + " * " + q + ": " + d);
+            }
+        }
+        executor.shutdown();
+    }
+}
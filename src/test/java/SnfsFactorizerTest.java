@@ -0,0 +1,61 @@
+import common.Common;
+import common.TaskExecutor;
+import factorization.Factorization;
+import factorization.SnfsFactorizer;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.List;
+import java.util.Random;
+
+public class SnfsFactorizerTest {
+
+    @Test
+    public void testFactorize() {
+        TaskExecutor executor = TaskExecutor.create(1);
+        BigInteger three = BigInteger.valueOf(3);
+        SnfsFactorizer factorizer = new SnfsFactorizer(BigInteger.TWO, 120, three, executor, 20);
+        List<BigInteger> primes = List.of(BigInteger.valueOf(240092917), BigInteger.valueOf(7330622487659L), BigInteger.valueOf(755230075972091L));
+        Assertions.assertEquals(Factorization.fromPrimeFactors(primes), factorizer.factorize(BigInteger.TWO.pow(120).subtract(three)));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testFindDivisor() {
+        TaskExecutor executor = TaskExecutor.create(2);
+        BigInteger base = BigInteger.valueOf(7);
+        BigInteger target = BigInteger.TWO;
+        BigInteger N = base.pow(50).subtract(target);
+        // factors below factor base bound are found by trial division, so they are removed to get to the sieve
+        for (long p = 2; p < 100000; p++) {
+            while (N.mod(BigInteger.valueOf(p)).signum() == 0) {
+                N = N.divide(BigInteger.valueOf(p));
+            }
+        }
+        BigInteger d = new SnfsFactorizer(base, 50, target, executor, 20).findDivisor(N);
+        BigInteger M = N;
+        Assertions.assertTrue((d != null) && (d.compareTo(BigInteger.ONE) > 0) && (d.compareTo(N) < 0) && (N.mod(d).signum() == 0), () -> M + ": " + d);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testOtherNumbers() {
+        TaskExecutor executor = TaskExecutor.create(1);
+        SnfsFactorizer factorizer = new SnfsFactorizer(BigInteger.TWO, 120, BigInteger.valueOf(3), executor, 20);
+        Random random = new Random(5);
+        BigInteger N = Common.multiply(new BigInteger(50, random).nextProbablePrime(), new BigInteger(50, random).nextProbablePrime());
+        Assertions.assertEquals(Factorization.fromSingleFactor(N, false), factorizer.factorize(N));
+        executor.shutdown();
+    }
+
+    @Test
+    public void testTooBig() {
+        TaskExecutor executor = TaskExecutor.create(1);
+        // 2^500 - 3 has 151 digits, it's beyond parameter table, so it's left unfactorized instead of sieving with wrong parameters
+        BigInteger three = BigInteger.valueOf(3);
+        BigInteger N = BigInteger.TWO.pow(500).subtract(three);
+        Assertions.assertNull(new SnfsFactorizer(BigInteger.TWO, 500, three, executor, 20).findDivisor(N));
+        executor.shutdown();
+    }
+}
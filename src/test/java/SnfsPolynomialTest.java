@@ -0,0 +1,126 @@
+import factorization.SnfsPolynomial;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.stream.LongStream;
+
+public class SnfsPolynomialTest {
+
+    @Test
+    public void testCommonRoot() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200; i++) {
+            BigInteger base = BigInteger.valueOf(2 + random.nextInt(20));
+            BigInteger target = BigInteger.valueOf(random.nextInt(2001) - 1000);
+            if (target.signum() == 0) {
+                continue;
+            }
+            int C = 50 + random.nextInt(500);
+            BigInteger F = base.pow(C).subtract(target).abs();
+            for (int degree = 3; degree <= 6; degree++) {
+                SnfsPolynomial polynomial = SnfsPolynomial.create(base, C, target, degree);
+                Assertions.assertEquals(degree, polynomial.getDegree());
+                Assertions.assertEquals(BigInteger.ZERO, polynomial.evaluate(F), polynomial::toString);
+                Assertions.assertEquals(BigInteger.ZERO, polynomial.evaluate(F.divide(F.gcd(BigInteger.valueOf(720720)))), polynomial::toString);
+            }
+        }
+    }
+
+    @Test
+    public void testDegree() {
+        BigInteger three = BigInteger.valueOf(3);
+        BigInteger target = BigInteger.valueOf(-5);
+        Assertions.assertEquals(4, SnfsPolynomial.create(three, 200, target).getDegree());
+        Assertions.assertEquals(5, SnfsPolynomial.create(three, 300, target).getDegree());
+        Assertions.assertEquals(6, SnfsPolynomial.create(three, 500, target).getDegree());
+    }
+
+    @Test
+    public void testChoice() {
+        // 2^301 - 3: 2^1*x^5 - 3 with m = 2^60 is better than x^5 - 3*2^4 with m = 2^61
+        SnfsPolynomial a = SnfsPolynomial.create(BigInteger.TWO, 301, BigInteger.valueOf(3), 5);
+        Assertions.assertEquals(BigInteger.TWO.pow(60), a.getM());
+        Assertions.assertEquals(BigInteger.TWO, a.getCoefficient(5));
+        Assertions.assertEquals(BigInteger.valueOf(-3), a.getCoefficient(0));
+        // 2^304 - 3: x^5 - 3*2 with m = 2^61 is better than 2^4*x^5 - 3 with m = 2^60
+        SnfsPolynomial b = SnfsPolynomial.create(BigInteger.TWO, 304, BigInteger.valueOf(3), 5);
+        Assertions.assertEquals(BigInteger.TWO.pow(61), b.getM());
+        Assertions.assertEquals(BigInteger.ONE, b.getCoefficient(5));
+        Assertions.assertEquals(BigInteger.valueOf(-6), b.getCoefficient(0));
+        String poly = b.toCadoFormat(BigInteger.TWO.pow(304).subtract(BigInteger.valueOf(3)));
+        Assertions.assertTrue(poly.contains("c5: 1\n") && poly.contains("c0: -6\n") && poly.contains("Y0: -" + BigInteger.TWO.pow(61) + "\n"), poly);
+    }
+
+    @Test
+    public void testMonic() {
+        Random random = new Random(7);
+        for (int i = 0; i < 100; i++) {
+            BigInteger base = BigInteger.valueOf(2 + random.nextInt(20));
+            BigInteger target = BigInteger.valueOf(random.nextInt(201) - 100);
+            if (target.signum() == 0) {
+                continue;
+            }
+            int C = 30 + random.nextInt(200);
+            BigInteger F = base.pow(C).subtract(target).abs();
+            for (int degree = 2; degree <= 6; degree++) {
+                SnfsPolynomial polynomial = SnfsPolynomial.createMonic(base, C, target, degree);
+                Assertions.assertTrue(polynomial.isMonic(), polynomial::toString);
+                Assertions.assertEquals(BigInteger.ZERO, polynomial.evaluate(F), polynomial::toString);
+            }
+        }
+    }
+
+    @Test
+    public void testIrreducible() {
+        Assertions.assertTrue(monic(3, -3).isIrreducible());
+        Assertions.assertTrue(monic(4, -2).isIrreducible());
+        Assertions.assertTrue(monic(5, 6).isIrreducible());
+        Assertions.assertTrue(monic(4, 4*81+4).isIrreducible());
+        Assertions.assertFalse(monic(3, -8).isIrreducible());
+        Assertions.assertFalse(monic(3, 27).isIrreducible());
+        Assertions.assertFalse(monic(4, -16).isIrreducible());
+        Assertions.assertFalse(monic(6, -9).isIrreducible());
+        // x^4 + 4*t^4 = (x^2 + 2tx + 2t^2)(x^2 - 2tx + 2t^2)
+        Assertions.assertFalse(monic(4, 4).isIrreducible());
+        Assertions.assertFalse(monic(4, 4*81).isIrreducible());
+    }
+
+    @Test
+    public void testRootsMod() {
+        Random random = new Random(11);
+        for (int i = 0; i < 50; i++) {
+            SnfsPolynomial polynomial = monic(2 + random.nextInt(5), (1 + random.nextInt(1000)) * (random.nextBoolean() ? 1 : -1));
+            for (long p = 2; p < 500; p = BigInteger.valueOf(p).nextProbablePrime().longValue()) {
+                BigInteger P = BigInteger.valueOf(p);
+                long[] expected = LongStream.range(0, p).filter(x -> polynomial.norm(x, 1).mod(P).signum() == 0).toArray();
+                Assertions.assertArrayEquals(expected, polynomial.rootsMod(p), polynomial + " mod " + p);
+            }
+            for (int j = 0; j < 20; j++) {
+                long p = BigInteger.valueOf(1 + random.nextInt(Integer.MAX_VALUE - 1)).nextProbablePrime().longValue();
+                if (p >= Integer.MAX_VALUE) {
+                    continue;
+                }
+                long[] roots = polynomial.rootsMod(p);
+                Assertions.assertTrue(roots.length <= polynomial.getDegree());
+                for (int k = 0; k < roots.length; k++) {
+                    Assertions.assertTrue((k == 0) || (roots[k-1] < roots[k]));
+                    Assertions.assertEquals(0, polynomial.norm(roots[k], 1).mod(BigInteger.valueOf(p)).signum());
+                }
+                // x^d - k has d roots modulo p = 1 (mod d) if k is d-th power residue
+                long k = polynomial.getCoefficient(0).negate().mod(BigInteger.valueOf(p)).longValue();
+                int d = polynomial.getDegree();
+                if ((k != 0) && ((p - 1) % d == 0) && (BigInteger.valueOf(k).modPow(BigInteger.valueOf((p - 1) / d), BigInteger.valueOf(p)).equals(BigInteger.ONE))) {
+                    Assertions.assertEquals(d, roots.length, polynomial + " mod " + p);
+                }
+            }
+        }
+    }
+
+    // x^degree + constant, m = 2 isn't used here
+    private static SnfsPolynomial monic(int degree, long constant) {
+        BigInteger target = BigInteger.valueOf(-constant);
+        return SnfsPolynomial.createMonic(BigInteger.TWO, degree, target, degree);
+    }
+}
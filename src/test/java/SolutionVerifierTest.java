@@ -0,0 +1,59 @@
+import common.SolutionVerifier;
+import org.apache.commons.math3.primes.Primes;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SolutionVerifierTest {
+
+    @Test
+    public void testVerify() {
+        int solutions = 0;
+        for (int base = 2; base <= 7; base++) {
+            for (int t = -30; t <= 30; t++) {
+                SolutionVerifier verifier = new SolutionVerifier(base, t);
+                BigInteger B = BigInteger.valueOf(base);
+                BigInteger T = BigInteger.valueOf(t);
+                for (int n = 2; n <= 3000; n++) {
+                    BigInteger N = BigInteger.valueOf(n);
+                    List<BigInteger> factors = Primes.primeFactors(n).stream().map(BigInteger::valueOf).toList();
+                    boolean expected = B.modPow(N, N).equals(T.mod(N));
+                    solutions += expected ? 1 : 0;
+                    Assertions.assertEquals(expected, verifier.verify(N, factors), "base=" + base + ", t=" + t + ", n=" + n);
+
+                    // the biggest prime with all its copies is left as cofactor
+                    BigInteger p = factors.get(factors.size()-1);
+                    List<BigInteger> known = factors.stream().filter(f -> !f.equals(p)).toList();
+                    BigInteger cofactor = factors.stream().filter(f -> f.equals(p)).reduce(BigInteger.ONE, BigInteger::multiply);
+                    Assertions.assertEquals(expected, verifier.verify(N, known, cofactor), "base=" + base + ", t=" + t + ", n=" + n);
+                }
+            }
+        }
+        Assertions.assertTrue(solutions > 100);
+    }
+
+    @Test
+    public void testBigPrimes() {
+        Random random = new Random(555);
+        for (int i = 0; i < 1000; i++) {
+            int base = 2 + random.nextInt(10);
+            List<BigInteger> factors = new ArrayList<>();
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                BigInteger p = new BigInteger(2 + random.nextInt(80), random).nextProbablePrime();
+                for (int k = random.nextInt(3); k >= 0; k--) {
+                    factors.add(p);
+                }
+            }
+            BigInteger N = factors.stream().reduce(BigInteger.ONE, BigInteger::multiply);
+            // target is chosen so that N is solution in half of tests
+            BigInteger T = BigInteger.valueOf(base).modPow(N, N);
+            long t = ((i%2 == 0) && (T.bitLength() < 63)) ? T.longValueExact() : random.nextInt(100) - 50;
+            boolean expected = BigInteger.valueOf(base).modPow(N, N).equals(BigInteger.valueOf(t).mod(N));
+            Assertions.assertEquals(expected, new SolutionVerifier(base, t).verify(N, factors), "base=" + base + ", t=" + t + ", N=" + factors);
+        }
+    }
+}
@@ -1,16 +1,27 @@
 import common.ModUtils;
 import common.TaskExecutor;
+import factorization.FactorizationQueue;
+import factorization.Factorizer;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import primes.GoodPrimes;
 import primes.Primes;
+import scan.ScanBatcher;
 import scan.ScanSieve;
 import scan.Scanner;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.Set;
 import java.util.TreeSet;
 
 public class SolverTest {
@@ -48,8 +59,8 @@ public class SolverTest {
             GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(BigInteger.valueOf(ceil)), base, t, primes, executor);
             ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(t), primes, Math.abs(t) <= 15);
             Scanner scanner = new Scanner(BigInteger.valueOf(base), t, scanSieve, executor, 1<<23, 4);
-            Solver solver = new Solver(base, t, BigInteger.valueOf(ceil), launch, goodPrimes,
-                    null, launch.getFactorizer(primes), scanner, Long.MAX_VALUE, false);
+            Solver solver = new Solver(base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), launch, executor, goodPrimes,
+                    launch.getFactorizer(primes), scanner, new Solver.Options());
             solver.solve();
 
             BigInteger T = BigInteger.valueOf(t);
@@ -60,4 +71,328 @@ public class SolverTest {
                     "base=" + base + ", target=" + t);
         }
     }
+
+    @Test
+    public void testResume() throws IOException {
+        int base = 2;
+        int ceil = 2000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        Path path = Files.createTempFile("journal", ".txt");
+        try {
+            for (int t = -15; t <= 15; t += 5) {
+                Files.deleteIfExists(path);
+                List<BigInteger> expected = solve(base, t, ceil, primes, openJournal(path, base, t, ceil, 1000));
+
+                // emulate crash: keep first half of journal and cut the next record in the middle of writing
+                List<String> lines = Files.readAllLines(path);
+                List<String> half = new ArrayList<>(lines.subList(0, lines.size()/2));
+                Files.write(path, half);
+                openJournal(path, base, t, ceil, 1000).close();
+                Set<String> loaded = new HashSet<>(Files.readAllLines(path));
+                String cut = lines.subList(lines.size()/2, lines.size()).stream()
+                        .map(line -> line.substring(0, line.lastIndexOf(" #") - 1))
+                        .filter(record -> loaded.stream().noneMatch(line -> line.startsWith(record + " #"))).findFirst().orElseThrow();
+                Files.write(path, half);
+                Files.writeString(path, cut, StandardOpenOption.APPEND);
+                openJournal(path, base, t, ceil, 1000).close();
+                Assertions.assertEquals(loaded, new HashSet<>(Files.readAllLines(path)), "target=" + t + ", cut record: " + cut);
+                Assertions.assertEquals(expected, solve(base, t, ceil, primes, openJournal(path, base, t, ceil, 1000)), "target=" + t);
+
+                // finished journal is compacted to one record about root subtree
+                Journal journal = openJournal(path, base, t, ceil, 1000);
+                Assertions.assertTrue(journal.isCompleted("1"), "target=" + t);
+                Assertions.assertEquals(expected, solve(base, t, ceil, primes, journal), "target=" + t);
+                Assertions.assertEquals(1, Files.readAllLines(path).stream().filter(line -> line.startsWith("D") || line.startsWith("N")).count());
+
+                // journal of another run isn't resumed
+                int target = t;
+                Assertions.assertThrows(IllegalStateException.class, () -> openJournal(path, base, target, 2 * ceil, 1000));
+                Assertions.assertThrows(IllegalStateException.class, () -> openJournal(path, base, target + 1, ceil, 1000));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testWindows() {
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        for (int base = 2; base <= 3; base++) {
+            for (int t = -20; t <= 20; t += 4) {
+                NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null));
+                int[] bounds = new int[] {0, 1000, 54321, 1000000, ceil};
+                for (int i = 1; i < bounds.length; i++) {
+                    BigInteger L = BigInteger.valueOf(bounds[i-1]);
+                    BigInteger U = BigInteger.valueOf(bounds[i]);
+                    NavigableSet<BigInteger> actual = new TreeSet<>(solve(base, t, bounds[i-1], bounds[i], primes, null));
+                    Assertions.assertEquals(expected.subSet(L, false, U, true), actual.subSet(L, false, U, true),
+                            "base=" + base + ", target=" + t + ", window=(" + L + "; " + U + "]");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testBatchedScans() {
+        int ceil = 2000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        TaskExecutor parallelExecutor = TaskExecutor.create(4);
+        try {
+            for (int base = 2; base <= 3; base++) {
+                for (int t = -20; t <= 20; t += 5) {
+                    // solutions above ceil depend on found factorizations, so only numbers up to ceil are compared
+                    NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null)).headSet(BigInteger.valueOf(ceil), true);
+                    for (int batchSize : new int[] {1, 7, 1000}) {
+                        NavigableSet<BigInteger> actual = new TreeSet<>(solveAsync(base, t, ceil, primes, parallelExecutor, batchSize, null, null, null));
+                        Assertions.assertEquals(expected, actual.headSet(BigInteger.valueOf(ceil), true),
+                                "base=" + base + ", target=" + t + ", batchSize=" + batchSize);
+                    }
+                }
+            }
+        } finally {
+            parallelExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsyncFactorization() throws IOException {
+        int base = 2;
+        int ceil = 2000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        TaskExecutor parallelExecutor = TaskExecutor.create(4);
+        Path path = Files.createTempFile("journal", ".txt");
+        try {
+            for (int t = -20; t <= 20; t += 5) {
+                NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null)).headSet(BigInteger.valueOf(ceil), true);
+                // tiny time budget stops most of factorizations, so their nodes are scanned
+                for (long timeBudget : new long[] {1, 60000}) {
+                    Files.deleteIfExists(path);
+                    Journal journal = openJournal(path, base, t, ceil, 1000);
+                    FactorizationQueue queue = new FactorizationQueue(launchForTests().getFactorizer(primes), 2, timeBudget);
+                    try {
+                        NavigableSet<BigInteger> actual = new TreeSet<>(solveAsync(base, t, ceil, primes, parallelExecutor, 50, queue, null, journal));
+                        Assertions.assertEquals(expected, actual.headSet(BigInteger.valueOf(ceil), true), "target=" + t + ", timeBudget=" + timeBudget);
+                    } finally {
+                        journal.close();
+                        queue.shutdown();
+                    }
+                    Assertions.assertTrue(openJournal(path, base, t, ceil, 1000).isCompleted("1"), "target=" + t + ", timeBudget=" + timeBudget);
+                }
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            parallelExecutor.shutdown();
+        }
+    }
+
+    @Test
+    public void testCostModel() {
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        for (int base = 2; base <= 3; base++) {
+            for (int t = -20; t <= 20; t += 5) {
+                NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null)).headSet(BigInteger.valueOf(ceil), true);
+                CostModel costModel = new CostModel();
+                NavigableSet<BigInteger> actual = new TreeSet<>(solveAsync(base, t, ceil, primes, executor, 1, null, costModel, null));
+                Assertions.assertEquals(expected, actual.headSet(BigInteger.valueOf(ceil), true), "base=" + base + ", target=" + t);
+            }
+        }
+    }
+
+    @Test
+    public void testAnytime() throws IOException {
+        int base = 2;
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        Path path = Files.createTempFile("journal", ".txt");
+        try {
+            for (int t = -20; t <= 20; t += 5) {
+                NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null)).headSet(BigInteger.valueOf(ceil), true);
+
+                Launch launch = launchForTests();
+                Coverage coverage = anytimeSolver(base, t, ceil, primes, launch, null).solveAnytime(Long.MAX_VALUE, 1000);
+                Assertions.assertEquals(expected, new TreeSet<>(launch.getSolutions()).headSet(BigInteger.valueOf(ceil), true), "target=" + t);
+                Assertions.assertTrue(coverage.getSkipped().isEmpty());
+                Assertions.assertTrue(coverage.getCovered().stream().anyMatch(r -> !r.isSubtree()));
+
+                // run is stopped by time budget and then finished with the same journal
+                Files.deleteIfExists(path);
+                Journal journal = openJournal(path, base, t, ceil, Long.MAX_VALUE);
+                coverage = anytimeSolver(base, t, ceil, primes, launchForTests(), journal).solveAnytime(5, 1000);
+                journal.close();
+                Assertions.assertEquals(coverage.getSkipped().isEmpty(), openJournal(path, base, t, ceil, Long.MAX_VALUE).isCompleted("1"));
+
+                launch = launchForTests();
+                journal = openJournal(path, base, t, ceil, Long.MAX_VALUE);
+                coverage = anytimeSolver(base, t, ceil, primes, launch, journal).solveAnytime(Long.MAX_VALUE, 1000);
+                journal.close();
+                Assertions.assertTrue(coverage.getSkipped().isEmpty());
+                Assertions.assertEquals(expected, new TreeSet<>(launch.getSolutions()).headSet(BigInteger.valueOf(ceil), true), "target=" + t);
+                Assertions.assertTrue(openJournal(path, base, t, ceil, Long.MAX_VALUE).isCompleted("1"));
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testScanBounds() {
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        for (int base = 2; base <= 5; base++) {
+            for (int t = -20; t <= 20; t += 4) {
+                NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null)).headSet(BigInteger.valueOf(ceil), true);
+                for (int i = 0; i < 2; i++) {
+                    // without factorizations and with factorizations which leave composites
+                    Launch launch = (i == 0) ? Launch.solverSimple(0, null, null, 0, 20) : Launch.solverSimple(100, null, null, 1, 20);
+                    anytimeSolver(base, t, ceil, primes, launch, null).solve();
+                    Assertions.assertEquals(expected, new TreeSet<>(launch.getSolutions()).headSet(BigInteger.valueOf(ceil), true),
+                            "base=" + base + ", target=" + t + ", launch=" + i);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testPlan() throws IOException {
+        int base = 2;
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        Path path = Files.createTempFile("journal", ".txt");
+        try {
+            for (int t = -20; t <= 20; t += 5) {
+                long[] candidates = new long[1];
+                Launch launch = scanOnlyLaunch(candidates);
+                Plan plan = anytimeSolver(base, t, ceil, primes, launch, null).plan(3, 1000);
+                Files.deleteIfExists(path);
+                Journal journal = openJournal(path, base, t, ceil, 100);
+                anytimeSolver(base, t, ceil, primes, launch, journal).solve();
+                journal.close();
+
+                double estimated = plan.getUnits().stream().mapToDouble(Plan.Unit::getCandidates).sum();
+                Assertions.assertTrue(Math.abs(estimated - candidates[0]) <= candidates[0] * 0.2, "target=" + t + ": " + estimated + " vs " + candidates[0]);
+                Assertions.assertTrue(plan.getUnits().stream().anyMatch(Plan.Unit::isSubtree));
+                Assertions.assertEquals(plan.getUnits().size(), plan.getShards().stream().mapToInt(s -> s.getUnits().size()).sum());
+                double maxUnitCost = plan.getUnits().stream().mapToDouble(Plan.Unit::cost).max().orElse(0);
+                for (Plan.Shard shard : plan.getShards()) {
+                    Assertions.assertTrue(shard.getCost() <= plan.getCost() / 3 + maxUnitCost);
+                }
+
+                // nothing is left after finished run
+                journal = openJournal(path, base, t, ceil, 100);
+                plan = anytimeSolver(base, t, ceil, primes, launch, journal).plan(3, 1000);
+                journal.close();
+                Assertions.assertTrue(plan.getUnits().isEmpty());
+            }
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    @Test
+    public void testProfiler() throws IOException {
+        int ceil = 3000000;
+        Primes primes = new Primes((int) Math.sqrt(ceil) + 1);
+        Path path = Files.createTempFile("profile", ".txt");
+        TaskExecutor parallelExecutor = TaskExecutor.create(3);
+        try {
+            for (int base = 2; base <= 3; base++) {
+                for (int t = -20; t <= 20; t += 10) {
+                    NavigableSet<BigInteger> expected = new TreeSet<>(solve(base, t, 0, ceil, primes, null)).headSet(BigInteger.valueOf(ceil), true);
+                    long[] candidates = new long[1];
+                    Launch launch = scanOnlyLaunch(candidates);
+                    GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(BigInteger.valueOf(ceil)), base, t, primes, parallelExecutor);
+                    ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(t), primes, null);
+                    Scanner scanner = new Scanner(BigInteger.valueOf(base), t, scanSieve, parallelExecutor, 1<<16, 4);
+                    ScanBatcher scanBatcher = new ScanBatcher(scanner, parallelExecutor, 100, 1<<12);
+                    Profiler profiler = new Profiler();
+                    new Solver(base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), launch, parallelExecutor, goodPrimes, null, scanner,
+                            new Solver.Options().scanBatcher(scanBatcher).profiler(profiler).scanLogThreshold(100000)).solve();
+                    Assertions.assertEquals(expected, new TreeSet<>(launch.getSolutions()).headSet(BigInteger.valueOf(ceil), true));
+
+                    Assertions.assertEquals(candidates[0], profiler.total(Profiler.Metric.CANDIDATES));
+                    Assertions.assertTrue(profiler.total(Profiler.Metric.SCAN_CPU_NANOS) > 0);
+                    Assertions.assertTrue(profiler.total(Profiler.Metric.MERGES) >= profiler.total(Profiler.Metric.FAILED_MERGES));
+                    for (Profiler.Metric metric : Profiler.Metric.values()) {
+                        profiler.writeCollapsed(path, metric);
+                        long sum = 0;
+                        for (String line : Files.readAllLines(path)) {
+                            Assertions.assertTrue(line.matches("pognali(;[^; ]+( [0-9]+)?)*(;[a-z]+)? [0-9]+"), line);
+                            sum += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+                        }
+                        Assertions.assertEquals(profiler.total(metric), sum, metric.name());
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            parallelExecutor.shutdown();
+        }
+    }
+
+    private static Launch scanOnlyLaunch(long[] candidates) {
+        return new Launch() {
+            @Override
+            public Factorizer getFactorizer(Primes primes) {
+                return null;
+            }
+            @Override
+            public boolean tryFactorize(int bitLength) {
+                return false;
+            }
+            @Override
+            public void registerScan(BigInteger N, long count) {
+                candidates[0] += count;
+            }
+        };
+    }
+
+    private Solver anytimeSolver(int base, int t, int ceil, Primes primes, Launch launch, Journal journal) {
+        GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(BigInteger.valueOf(ceil)), base, t, primes, executor);
+        ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(t), primes, null);
+        Scanner scanner = new Scanner(BigInteger.valueOf(base), t, scanSieve, executor, 1<<23, 4);
+        return new Solver(base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), launch, executor, goodPrimes,
+                launch.getFactorizer(primes), scanner, new Solver.Options().costModel(new CostModel()).journal(journal));
+    }
+
+    private List<BigInteger> solveAsync(int base, int t, int ceil, Primes primes, TaskExecutor executor, int batchSize,
+                                        FactorizationQueue factorizationQueue, CostModel costModel, Journal journal)
+    {
+        Launch launch = launchForTests();
+        GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(BigInteger.valueOf(ceil)), base, t, primes, executor);
+        ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(t), primes, null);
+        Scanner scanner = new Scanner(BigInteger.valueOf(base), t, scanSieve, executor, 1<<23, 4);
+        ScanBatcher scanBatcher = new ScanBatcher(scanner, executor, batchSize, 1<<12);
+        Solver solver = new Solver(base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), launch, executor, goodPrimes,
+                launch.getFactorizer(primes), scanner, new Solver.Options().factorizationQueue(factorizationQueue).costModel(costModel)
+                .scanBatcher(scanBatcher).journal(journal));
+        solver.solve();
+        return launch.getSolutions();
+    }
+
+    private static Journal openJournal(Path path, int base, int t, int ceil, long threshold) {
+        return Journal.open(path, base, t, BigInteger.ZERO, BigInteger.valueOf(ceil), threshold);
+    }
+
+    private static Launch launchForTests() {
+        return Launch.solverSimple(100, 10000L, 100000L, 100, 20);
+    }
+
+    private List<BigInteger> solve(int base, int t, int ceil, Primes primes, Journal journal) {
+        List<BigInteger> result = solve(base, t, 0, ceil, primes, journal);
+        journal.close();
+        return result;
+    }
+
+    private List<BigInteger> solve(int base, int t, int floor, int ceil, Primes primes, Journal journal) {
+        Launch launch = Launch.solverSimple(100, 10000L, 100000L, 100, 20);
+        GoodPrimes goodPrimes = GoodPrimes.generate(launch.getGoodPrimesBound(BigInteger.valueOf(ceil)), base, t, primes, executor);
+        ScanSieve scanSieve = new ScanSieve(BigInteger.valueOf(base), BigInteger.valueOf(t), primes, null);
+        Scanner scanner = new Scanner(BigInteger.valueOf(base), t, scanSieve, executor, 1<<23, 4);
+        Solver solver = new Solver(base, t, BigInteger.valueOf(floor), BigInteger.valueOf(ceil), launch, executor, goodPrimes,
+                launch.getFactorizer(primes), scanner, new Solver.Options().journal(journal));
+        solver.solve();
+        return launch.getSolutions();
+    }
 }
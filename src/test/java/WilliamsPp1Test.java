@@ -0,0 +1,71 @@
+import factorization.PollardPm1;
+import factorization.WilliamsPp1;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import primes.Primes;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+public class WilliamsPp1Test {
+    private static final BigInteger[][] seeds = {{BigInteger.TWO, BigInteger.valueOf(7)}, {BigInteger.valueOf(6), BigInteger.valueOf(5)},
+            {BigInteger.valueOf(3), BigInteger.ONE}, {BigInteger.valueOf(4), BigInteger.ONE}};
+
+    @Test
+    public void testFindDivisor() {
+        testFindDivisor(100, 10000, 40, null);
+        testFindDivisor(1000, 1000000, 40, null);
+        testFindDivisor(1000, 1000000, 20, 1024);
+    }
+
+    // p+1 = 2 * (product of primes up to B1) * q, so p is found iff q <= B2 by seed P0 such that P0^2 - 4 isn't quadratic residue mod p
+    private void testFindDivisor(long B1, long B2, int tests, Integer streamingChunkBits) {
+        Primes primes = new Primes(PollardPm1.primesBound(B1, B2, streamingChunkBits != null));
+        PollardPm1 pollardPm1 = new PollardPm1(primes, B1, B2, streamingChunkBits);
+        WilliamsPp1 williamsPp1 = new WilliamsPp1(pollardPm1);
+        Random random = new Random(B1 + B2);
+        int found = 0;
+        int notFound = 0;
+        while (found + notFound < tests) {
+            BigInteger k = BigInteger.TWO;
+            for (int i = 0; i < 3; i++) {
+                BigInteger s = BigInteger.valueOf(primes.get(1 + random.nextInt(primes.floorIdx(B1))));
+                if (k.mod(s).signum() != 0) {
+                    k = k.multiply(s);
+                }
+            }
+            boolean inRange = random.nextBoolean();
+            long q = inRange ? B1 + 1 + (long) (random.nextDouble() * (B2 - B1)) : B2 + 1 + random.nextInt(1000000);
+            BigInteger Q = BigInteger.valueOf(q).nextProbablePrime();
+            if (inRange && (Q.longValueExact() > B2)) {
+                continue;
+            }
+            BigInteger p = k.multiply(Q).subtract(BigInteger.ONE);
+            if (!p.isProbablePrime(30)) {
+                continue;
+            }
+            int seed = 0;
+            while ((seed < seeds.length) && isResidue(seeds[seed], p)) {
+                seed++;
+            }
+            if (seed == seeds.length) {
+                continue;
+            }
+            BigInteger r = BigInteger.probablePrime(120, random);
+            BigInteger d = williamsPp1.findDivisor(p.multiply(r), seed, 1);
+            if (inRange) {
+                Assertions.assertEquals(p, d, "p=" + p + ", q=" + Q);
+                found++;
+            } else {
+                Assertions.assertNull(d, "p=" + p + ", q=" + Q);
+                notFound++;
+            }
+        }
+    }
+
+    private static boolean isResidue(BigInteger[] seed, BigInteger p) {
+        BigInteger P0 = seed[0].multiply(seed[1].modInverse(p)).mod(p);
+        BigInteger D = P0.multiply(P0).subtract(BigInteger.valueOf(4)).mod(p);
+        return !D.modPow(p.subtract(BigInteger.ONE).shiftRight(1), p).equals(p.subtract(BigInteger.ONE));
+    }
+}